@@ -4,7 +4,6 @@ import subprocess
 import glob
 import os
 import sys
-import pandas as pd
 import shutil
 
 project_name = str(sys.argv[1])
@@ -20,44 +19,15 @@ def pausePrg():
         print("Try again")
         ext = int(input())
         
-# Returns the Human-written and wpi-generated stats as a dataframe 
-def readOutput():
-    annotationStats = pd.DataFrame(columns=['Annotation', 'Original count', 'Inferred', 'Original inferred count', 'Original inferred %'])
-    resultSection = False
-    f = open("Human-written.txt", "r")
-    for x in f:
-        if resultSection == True and x=='\n':
-            resultSection = False
-            break
-        if "Found annotations:" in x:
-            resultSection = True
-            continue
-        if resultSection:
-            info = x.split("\t")
-            annot = info[0].replace(' ', '')
-            count = info[-1].replace('\n', '')
-            annotationStats.loc[-1] = [annot, count, '0', '0', '0']
-            annotationStats.index = annotationStats.index + 1
-            annotationStats = annotationStats.sort_index()
-        
-    resultSection = False
-    f = open("Generated.txt", "r")
-    for x in f:
-        if "====== COMBINED RESULTS =======" in x:
-            resultSection = True
-            continue
-        if resultSection:
-            info = x.split("\t")
-            annot = info[0]
-            count = info[1].replace('\n', '')
-            if annotationStats.loc[annotationStats["Annotation"]==annot].empty:
-                annotationStats.loc[-1] = [annot, '0', count, '0', '0']
-                annotationStats.index = annotationStats.index + 1
-                annotationStats = annotationStats.sort_index()
-            else:
-                annotationStats.loc[annotationStats["Annotation"]==annot, "Inferred"] = int(count) + int(annotationStats.loc[annotationStats["Annotation"]==annot, "Inferred"].values[0])
-                      
-    return annotationStats
+# Writes the Human-written and wpi-generated stats to the given AnnotationStats.csv file.
+# inferred-annos-counter reads "Human-written.txt" and "Generated.txt" and combines the rows of each annotation.
+def writeAnnotationStats(outputFile):
+    sys.path.append(wpidir + "/experiments/inferred-annos-counter")
+    from iac_client import IacClient
+    iac = IacClient()
+    iac.run(["--summary=" + os.path.abspath(outputFile),
+             "--annotation-stats=" + os.path.abspath("Human-written.txt") + "," + os.path.abspath("Generated.txt")])
+    iac.close()
 
 # Get original annotation status and remove annotations
 def part1():
@@ -207,10 +177,9 @@ def part3():
     '''
     Create Annotations Stats csv file
     '''
-    df = readOutput()
     if os.path.exists(wpidir + "/experiments/inferred-annos-counter/inputExamples/"+project_name) == 0:
         os.system("mkdir " + wpidir + "/experiments/inferred-annos-counter/inputExamples/"+project_name)
-    df.to_csv(wpidir+"/experiments/inferred-annos-counter/inputExamples/"+project_name+"/AnnotationStats.csv", index=False)
+    writeAnnotationStats(wpidir+"/experiments/inferred-annos-counter/inputExamples/"+project_name+"/AnnotationStats.csv")
 
     process = subprocess.run("git add compute-annos-inferred.sh ; git commit -m \"inference output summarization script\" ; git push origin wpi-annotations", shell=True)
 
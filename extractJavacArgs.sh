@@ -3,6 +3,8 @@
 # This script extracts the javac args of a maven project.
 # It may be useful when annotation statistics swallows expected output 
 # and the project has to be run manually as explained in maven.md
+# The WPI driver in inferred-annos-counter captures the javac args of Maven and
+# Gradle projects in the same way when it is given --javac.
 
 if [ "${JAVA_HOME}" = "" ]; then
   echo "Must set the JAVA_HOME environment variable."
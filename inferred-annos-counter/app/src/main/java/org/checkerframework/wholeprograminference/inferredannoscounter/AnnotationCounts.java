@@ -0,0 +1,367 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The per-annotation results of running the inferred annos counter on one human-written file, or
+ * on a whole source tree. For each kind of annotation (e.g., "@NonNull"), this class records how
+ * many annotations of that kind the human wrote, how many of those were found in at least one
+ * .ajava file, and how many of them should be ignored because they are within the scope of a
+ * SuppressWarnings annotation. For each checker whose .ajava files were examined, it also records
+ * how many annotations of each kind were found in at least one .ajava file of that checker.
+ */
+public class AnnotationCounts {
+
+  /** The name of the types of annotation and their numbers in the human-written file(s). */
+  private final Map<String, Integer> annoCount;
+
+  /**
+   * The name of the types of annotations and their "correct" numbers (meaning the number of
+   * annotations of that type not missed by computer-written files).
+   */
+  private final Map<String, Integer> annoSimilar;
+
+  /** The name of the types of annotations and the number of them that should be ignored. */
+  private final Map<String, Integer> annoIgnored;
+
+  /**
+   * For each checker whose .ajava files were examined, the name of the types of annotations and
+   * the number of them found in at least one of the .ajava files of that checker. The checkers are
+   * in alphabetical order.
+   */
+  private final Map<String, Map<String, Integer>> annoInferredByChecker;
+
+  /**
+   * Creates an empty set of counts. The results will be printed in hash order, which is what the
+   * inferred annos counter has always done for a single file.
+   */
+  public AnnotationCounts() {
+    this.annoCount = new HashMap<>();
+    this.annoSimilar = new HashMap<>();
+    this.annoIgnored = new HashMap<>();
+    this.annoInferredByChecker = new TreeMap<>();
+  }
+
+  /**
+   * Creates an empty set of counts for totals that combine the results of more than one file.
+   * Several threads may add to it at the same time, and its results will be printed in
+   * alphabetical order of the annotation names.
+   *
+   * @return an empty, thread-safe, sorted set of counts
+   */
+  public static AnnotationCounts forTotals() {
+    return new AnnotationCounts(
+        new ConcurrentSkipListMap<>(),
+        new ConcurrentSkipListMap<>(),
+        new ConcurrentSkipListMap<>(),
+        new ConcurrentSkipListMap<>());
+  }
+
+  /**
+   * Creates a set of counts backed by the given maps.
+   *
+   * @param annoCount the map to use for the number of annotations written by the human
+   * @param annoSimilar the map to use for the number of annotations found by WPI
+   * @param annoIgnored the map to use for the number of annotations to ignore
+   * @param annoInferredByChecker the map to use for the number of annotations found by each checker
+   */
+  private AnnotationCounts(
+      Map<String, Integer> annoCount,
+      Map<String, Integer> annoSimilar,
+      Map<String, Integer> annoIgnored,
+      Map<String, Map<String, Integer>> annoInferredByChecker) {
+    this.annoCount = annoCount;
+    this.annoSimilar = annoSimilar;
+    this.annoIgnored = annoIgnored;
+    this.annoInferredByChecker = annoInferredByChecker;
+  }
+
+  /**
+   * Records that the human-written file contains one more annotation of the given kind.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   */
+  public void addOriginal(String anno) {
+    add(annoCount, anno, 1);
+    add(annoSimilar, anno, 0);
+  }
+
+  /**
+   * Records that one more annotation of the given kind was found in at least one .ajava file.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   */
+  public void addSimilar(String anno) {
+    add(annoSimilar, anno, 1);
+  }
+
+  /**
+   * Records how many annotations of the given kind should be ignored, because they are within the
+   * scope of a SuppressWarnings annotation.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   * @param count the number of annotations of that kind to ignore
+   */
+  public void addIgnored(String anno, int count) {
+    add(annoIgnored, anno, count);
+  }
+
+  /**
+   * Records that the .ajava files of the given checker were examined, so that the results for that
+   * checker are reported even if it found no annotations.
+   *
+   * @param checker the checker, e.g., "org.checkerframework.checker.nullness.NullnessChecker"
+   */
+  public void addChecker(String checker) {
+    inferredBy(checker);
+  }
+
+  /**
+   * Records that one more annotation of the given kind was found in at least one .ajava file of the
+   * given checker.
+   *
+   * @param checker the checker, e.g., "org.checkerframework.checker.nullness.NullnessChecker"
+   * @param anno the annotation, e.g., "@NonNull"
+   */
+  public void addInferredBy(String checker, String anno) {
+    add(inferredBy(checker), anno, 1);
+  }
+
+  /**
+   * Returns the map of the number of annotations of each kind found by the given checker, creating
+   * it if necessary.
+   *
+   * @param checker a checker
+   * @return the number of annotations of each kind found by the checker
+   */
+  private Map<String, Integer> inferredBy(String checker) {
+    return annoInferredByChecker.computeIfAbsent(
+        checker,
+        k ->
+            annoInferredByChecker instanceof ConcurrentMap
+                ? new ConcurrentSkipListMap<>()
+                : new TreeMap<>());
+  }
+
+  /**
+   * Adds all of the counts in the given object to this one. If this object was created by {@link
+   * #forTotals}, this method may be called by several threads at once.
+   *
+   * @param other the counts to add to this object
+   */
+  public void addAll(AnnotationCounts other) {
+    other.annoCount.forEach((anno, count) -> add(annoCount, anno, count));
+    other.annoSimilar.forEach((anno, count) -> add(annoSimilar, anno, count));
+    other.annoIgnored.forEach((anno, count) -> add(annoIgnored, anno, count));
+    other.annoInferredByChecker.forEach(
+        (checker, inferred) -> {
+          Map<String, Integer> map = inferredBy(checker);
+          inferred.forEach((anno, count) -> add(map, anno, count));
+        });
+  }
+
+  /**
+   * Adds the given amount to the value of a key in a map. Concurrent maps are updated atomically
+   * with {@link Map#merge}. Other maps deliberately use put instead: HashMap.merge inserts new keys
+   * at a different position in their bucket than put does, which would change the order in which
+   * the results are printed.
+   *
+   * @param map the map to update
+   * @param anno the key to update
+   * @param amount the amount to add to the value of the key
+   */
+  private static void add(Map<String, Integer> map, String anno, int amount) {
+    if (map instanceof ConcurrentMap) {
+      map.merge(anno, amount, Integer::sum);
+    } else {
+      map.put(anno, map.getOrDefault(anno, 0) + amount);
+    }
+  }
+
+  /**
+   * Returns these counts as lines of text, from which {@link #fromLines} can recreate them. Each
+   * line has the form "map anno value", where map is "C", "S" or "I" for the number of annotations
+   * written by the human, found by WPI, or ignored. The lines for each map are in its iteration
+   * order, so that the recreated counts are printed in the same order. The number of annotations
+   * found by each checker are on lines of the form "K checker anno value", after a line "K checker"
+   * for each checker.
+   *
+   * @return the counts, as lines of text
+   */
+  public List<String> toLines() {
+    List<String> lines = new ArrayList<>();
+    annoCount.forEach((anno, count) -> lines.add("C " + anno + " " + count));
+    annoSimilar.forEach((anno, count) -> lines.add("S " + anno + " " + count));
+    annoIgnored.forEach((anno, count) -> lines.add("I " + anno + " " + count));
+    annoInferredByChecker.forEach(
+        (checker, inferred) -> {
+          lines.add("K " + checker);
+          inferred.forEach((anno, count) -> lines.add("K " + checker + " " + anno + " " + count));
+        });
+    return lines;
+  }
+
+  /**
+   * Recreates a set of counts from the result of {@link #toLines}.
+   *
+   * @param lines the counts, as lines of text
+   * @return the counts
+   * @throws IllegalArgumentException if the lines are not in the format produced by {@link
+   *     #toLines}
+   */
+  public static AnnotationCounts fromLines(List<String> lines) {
+    AnnotationCounts counts = new AnnotationCounts();
+    for (String line : lines) {
+      // The limit keeps the empty name of the checker of an .ajava file with an unusual name.
+      String[] fields = line.split(" ", -1);
+      if (fields[0].equals("K") && (fields.length == 2 || fields.length == 4)) {
+        Map<String, Integer> inferred = counts.inferredBy(fields[1]);
+        if (fields.length == 4) {
+          inferred.put(fields[2], Integer.parseInt(fields[3]));
+        }
+        continue;
+      }
+      if (fields.length != 3) {
+        throw new IllegalArgumentException("Malformed line: " + line);
+      }
+      Map<String, Integer> map;
+      switch (fields[0]) {
+        case "C":
+          map = counts.annoCount;
+          break;
+        case "S":
+          map = counts.annoSimilar;
+          break;
+        case "I":
+          map = counts.annoIgnored;
+          break;
+        default:
+          throw new IllegalArgumentException("Malformed line: " + line);
+      }
+      // Integer.parseInt throws a NumberFormatException, which is an IllegalArgumentException.
+      map.put(fields[1], Integer.parseInt(fields[2]));
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the kinds of annotations that the human wrote, in alphabetical order.
+   *
+   * @return the kinds of annotations that the human wrote, e.g., "@NonNull"
+   */
+  public List<String> getAnnotations() {
+    List<String> annotations = new ArrayList<>(annoCount.keySet());
+    Collections.sort(annotations);
+    return annotations;
+  }
+
+  /**
+   * Returns the number of annotations of the given kind that the human wrote, including those that
+   * should be ignored.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   * @return the number of annotations of that kind written by the human
+   */
+  public int getWrittenCount(String anno) {
+    return annoCount.getOrDefault(anno, 0);
+  }
+
+  /**
+   * Returns the number of annotations of the given kind that should be ignored, because they are
+   * within the scope of a SuppressWarnings annotation.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   * @return the number of annotations of that kind to ignore
+   */
+  public int getIgnoredCount(String anno) {
+    return annoIgnored.getOrDefault(anno, 0);
+  }
+
+  /**
+   * Returns the number of annotations of the given kind that should be counted, i.e., the number
+   * the human wrote minus the number of them that should be ignored.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   * @return the number of annotations of that kind to count
+   */
+  public int getTotalCount(String anno) {
+    return annoCount.getOrDefault(anno, 0) - annoIgnored.getOrDefault(anno, 0);
+  }
+
+  /**
+   * Returns the number of annotations of the given kind that were found in at least one .ajava
+   * file.
+   *
+   * @param anno the annotation, e.g., "@NonNull"
+   * @return the number of annotations of that kind found by WPI
+   */
+  public int getCorrectCount(String anno) {
+    return annoSimilar.getOrDefault(anno, 0);
+  }
+
+  /**
+   * Returns the checkers whose .ajava files were examined, in alphabetical order.
+   *
+   * @return the checkers whose .ajava files were examined
+   */
+  public List<String> getCheckers() {
+    return new ArrayList<>(annoInferredByChecker.keySet());
+  }
+
+  /**
+   * Returns the number of annotations of the given kind that were found in at least one .ajava file
+   * of the given checker.
+   *
+   * @param checker the checker, e.g., "org.checkerframework.checker.nullness.NullnessChecker"
+   * @param anno the annotation, e.g., "@NonNull"
+   * @return the number of annotations of that kind found by the checker
+   */
+  public int getInferredCount(String checker, String anno) {
+    Map<String, Integer> inferred = annoInferredByChecker.get(checker);
+    return inferred == null ? 0 : inferred.getOrDefault(anno, 0);
+  }
+
+  /**
+   * Prints the results in the format "@Anno got correct/total", one annotation per line. An
+   * annotation is skipped if all of its occurrences are within the scope of some SuppressWarnings.
+   *
+   * @param out where to print the results
+   */
+  public void print(PrintStream out) {
+    print(out, false);
+  }
+
+  /**
+   * Prints the results in the format "@Anno got correct/total", one annotation per line, like
+   * {@link #print(PrintStream)}. If perChecker is true, each annotation is followed by an indented
+   * line for each checker, in the format "Checker got correct/total", where correct is the number
+   * of annotations that the checker inferred.
+   *
+   * @param out where to print the results
+   * @param perChecker true if the results for each checker should be printed
+   */
+  public void print(PrintStream out, boolean perChecker) {
+    List<String> checkers = perChecker ? getCheckers() : Collections.emptyList();
+    for (String anno : annoCount.keySet()) {
+      int totalCount = getTotalCount(anno);
+      // totalCount being equal to 0 meaning that all of the annotations with this type are within
+      // the bound of some SuppressWarnings
+      if (totalCount != 0) {
+        out.println(anno + " got " + getCorrectCount(anno) + "/" + totalCount);
+        for (String checker : checkers) {
+          String simpleName = checker.substring(checker.lastIndexOf('.') + 1);
+          out.println(
+              "  " + simpleName + " got " + getInferredCount(checker, anno) + "/" + totalCount);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.util.Objects;
+
+/**
+ * The structural position of an annotation in a Java file, together with the annotation itself.
+ * Two annotations in different versions of the same file (e.g., a human-written file and an .ajava
+ * file produced by WPI for it) are considered to be the same if their sites are equal.
+ *
+ * <p>For example, the {@literal @}Nullable annotation in
+ *
+ * <pre>{@code
+ * class Foo {
+ *   void bar(int x, List<@Nullable String> y) { ... }
+ * }
+ * }</pre>
+ *
+ * has the declaration path "Foo.bar(int,List)", the element kind "PARAMETER#1", the type-use
+ * location "&lt;0&gt;" (i.e., the first type argument of the parameter's type) and the annotation
+ * "@Nullable".
+ */
+public final class AnnotationSite {
+
+  /**
+   * The kinds of program element an annotation can be attached to. The annotations on a method
+   * and on its return type share the METHOD kind, and similarly for the other declarations that
+   * have a type, because Google Java Format and WPI do not always place such an annotation on the
+   * same side of the modifiers as the human did.
+   */
+  public enum ElementKind {
+    /** A class, interface, enum, record, or annotation declaration. */
+    TYPE,
+    /** A type in the extends clause of a type declaration. */
+    EXTENDS,
+    /** A type in the implements clause of a type declaration. */
+    IMPLEMENTS,
+    /** A type parameter of a type or method declaration. */
+    TYPE_PARAMETER,
+    /** A field. */
+    FIELD,
+    /** A method, constructor, or annotation element, including its return type. */
+    METHOD,
+    /** A formal parameter of a method, constructor, lambda, or record. */
+    PARAMETER,
+    /** The receiver parameter of a method. */
+    RECEIVER,
+    /** A type in the throws clause of a method. */
+    THROWS,
+    /** A local variable, including resources and catch parameters. */
+    LOCAL_VARIABLE,
+    /** An enum constant. */
+    ENUM_CONSTANT,
+    /** The package declaration. */
+    PACKAGE,
+    /** A type that is written inside an expression, such as in a cast. */
+    EXPRESSION
+  }
+
+  /**
+   * The path of the innermost declaration that contains the annotation, e.g.,
+   * "Outer.Inner.method(int,String[])".
+   */
+  public final String declarationPath;
+
+  /** The kind of element the annotation is attached to. */
+  public final ElementKind elementKind;
+
+  /**
+   * Distinguishes elements of the same kind within the same declaration: the index of a parameter,
+   * the name of a field, the name and ordinal of a local variable, and so on. Empty if there is
+   * only one element of that kind, such as the return type of a method.
+   */
+  public final String elementIndex;
+
+  /**
+   * The location of the annotated type within the type of the element, written as a sequence of
+   * steps from the outermost type: "[]" for an array's component type, "&lt;i&gt;" for the i-th
+   * type argument, "^" for the enclosing type of an inner class, "+" and "-" for the bounds of a
+   * wildcard, "&amp;i" for the i-th bound of a type parameter, "|i" for the i-th alternative of a
+   * union type and "*i" for the i-th element of an intersection type. Empty if the annotation is on
+   * the outermost type or on a declaration that has no type.
+   */
+  public final String typeLocation;
+
+  /**
+   * The annotation, in a canonical form that has no package names, no redundant braces and no
+   * whitespace, e.g., "@EnsuresNonNull(\"tz1\")".
+   */
+  public final String annotation;
+
+  /**
+   * Creates a new annotation site.
+   *
+   * @param declarationPath the path of the innermost declaration that contains the annotation
+   * @param elementKind the kind of element the annotation is attached to
+   * @param elementIndex distinguishes elements of the same kind within the same declaration
+   * @param typeLocation the location of the annotated type within the type of the element
+   * @param annotation the annotation, in canonical form
+   */
+  public AnnotationSite(
+      String declarationPath,
+      ElementKind elementKind,
+      String elementIndex,
+      String typeLocation,
+      String annotation) {
+    this.declarationPath = declarationPath;
+    this.elementKind = elementKind;
+    this.elementIndex = elementIndex;
+    this.typeLocation = typeLocation;
+    this.annotation = annotation;
+  }
+
+  /**
+   * Returns the name of the annotation without its arguments, e.g., "@EnsuresNonNull". This is the
+   * name under which the annotation is counted.
+   *
+   * @return the name of the annotation
+   */
+  public String getAnnotationName() {
+    int indexOfParen = annotation.indexOf('(');
+    return indexOfParen == -1 ? annotation : annotation.substring(0, indexOfParen);
+  }
+
+  /**
+   * Returns the position of this site without its annotation, i.e., a site with the empty string
+   * as its annotation, which is equal to that of every annotation at the same position.
+   *
+   * @return the position of this site
+   */
+  public AnnotationSite withoutAnnotation() {
+    return new AnnotationSite(declarationPath, elementKind, elementIndex, typeLocation, "");
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof AnnotationSite)) {
+      return false;
+    }
+    AnnotationSite other = (AnnotationSite) o;
+    return declarationPath.equals(other.declarationPath)
+        && elementKind == other.elementKind
+        && elementIndex.equals(other.elementIndex)
+        && typeLocation.equals(other.typeLocation)
+        && annotation.equals(other.annotation);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(declarationPath, elementKind, elementIndex, typeLocation, annotation);
+  }
+
+  @Override
+  public String toString() {
+    return declarationPath
+        + " "
+        + elementKind
+        + (elementIndex.isEmpty() ? "" : "#" + elementIndex)
+        + (typeLocation.isEmpty() ? "" : " " + typeLocation)
+        + " "
+        + annotation;
+  }
+}
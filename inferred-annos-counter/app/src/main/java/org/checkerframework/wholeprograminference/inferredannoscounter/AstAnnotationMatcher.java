@@ -0,0 +1,738 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.AnnotationMemberDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumConstantDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.ReceiverParameter;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.ArrayInitializerExpr;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.expr.MemberValuePair;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithExtends;
+import com.github.javaparser.ast.nodeTypes.NodeWithImplements;
+import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
+import com.github.javaparser.ast.type.ArrayType;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.IntersectionType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.TypeParameter;
+import com.github.javaparser.ast.type.UnionType;
+import com.github.javaparser.ast.type.WildcardType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+import org.checkerframework.wholeprograminference.inferredannoscounter.AnnotationSite.ElementKind;
+
+/**
+ * Matches the annotations in a human-written file against the annotations in the .ajava files
+ * produced by WPI for it, using the structure of the JavaParser AST rather than a line-based diff.
+ * Every annotation is keyed by its {@link AnnotationSite}: the declaration that contains it, the
+ * kind of element it is attached to, and its location within that element's type. An annotation
+ * in the human-written file was inferred if an .ajava file contains an annotation with an equal
+ * key, so matching is a hash lookup and takes time linear in the size of the files. Optionally, an
+ * annotation is also matched by a subtype of it at the same position (see {@link
+ * QualifierHierarchy}).
+ *
+ * <p>An instance of this class computes the annotation sites of one compilation unit, and caches
+ * the information about that compilation unit that is shared between its annotations.
+ */
+public class AstAnnotationMatcher {
+
+  /** The compilation unit whose annotation sites are computed. */
+  private final CompilationUnit cu;
+
+  /** The declaration path of each declaration whose path has already been computed. */
+  private final Map<Node, String> pathCache = new IdentityHashMap<>();
+
+  /**
+   * For each scope, the ordinals of the nodes in it, for the classes of nodes that have already
+   * been numbered. See {@link #ordinal}.
+   */
+  private final Map<Node, Map<Node, Integer>> ordinalCache = new IdentityHashMap<>();
+
+  /** For each scope, the classes of nodes in it that have already been numbered. */
+  private final Map<Node, Set<Class<?>>> numberedClasses = new IdentityHashMap<>();
+
+  /**
+   * Creates a matcher for the given compilation unit.
+   *
+   * @param cu the compilation unit whose annotation sites will be computed
+   */
+  private AstAnnotationMatcher(CompilationUnit cu) {
+    this.cu = cu;
+  }
+
+  /**
+   * Counts how many of the annotations in a human-written file were inferred, i.e., have the same
+   * annotation site in at least one of the .ajava files. The .ajava files are parsed one at a time,
+   * so only one of them needs to be in memory at once.
+   *
+   * @param original the human-written file
+   * @param ajavaFiles the paths to the .ajava files produced by WPI for the human-written file
+   * @param checkerPackage the list of type qualifiers to count, e.g., "@NonNull"
+   * @return the results for the human-written file
+   */
+  public static AnnotationCounts countFile(
+      ParsedFile original, List<String> ajavaFiles, Collection<String> checkerPackage) {
+    return countFile(original, ajavaFiles, checkerPackage, null);
+  }
+
+  /**
+   * Counts how many of the annotations in a human-written file were inferred. If a hierarchy is
+   * given, an annotation without arguments was also inferred if an .ajava file has a subtype of it
+   * at the same position, e.g., a human-written {@literal @}Nullable for which WPI inferred
+   * {@literal @}NonNull. The subtypes are only looked up for the positions that have annotations
+   * in both files, so this costs little more than matching exactly. An annotation with arguments
+   * is still only matched exactly, because whether another annotation is a subtype of it depends
+   * on the arguments.
+   *
+   * @param original the human-written file
+   * @param ajavaFiles the paths to the .ajava files produced by WPI for the human-written file
+   * @param checkerPackage the list of type qualifiers to count, e.g., "@NonNull"
+   * @param hierarchy the subtyping relation between the qualifiers, or null to only match
+   *     annotations exactly
+   * @return the results for the human-written file
+   */
+  static AnnotationCounts countFile(
+      ParsedFile original,
+      List<String> ajavaFiles,
+      Collection<String> checkerPackage,
+      QualifierHierarchy hierarchy) {
+    Set<String> qualifiers = new HashSet<>(checkerPackage);
+    Profiler.Span span = Profiler.start(Profiler.Phase.MATCH);
+    Map<AnnotationSite, Integer> originalSites =
+        new AstAnnotationMatcher(original.compilationUnit).collectSites(qualifiers);
+    // Each occurrence of an annotation in the original file gets an id; the occurrences at one
+    // site have consecutive ids, starting at the id of the site.
+    Map<AnnotationSite, Integer> firstIds = new HashMap<>();
+    int ids = 0;
+    for (Map.Entry<AnnotationSite, Integer> e : originalSites.entrySet()) {
+      firstIds.put(e.getKey(), ids);
+      ids += e.getValue();
+    }
+    // For subtyping, the annotations without arguments in the original file, by their position.
+    Map<AnnotationSite, List<AnnotationSite>> sitesByPosition = new HashMap<>();
+    if (hierarchy != null) {
+      for (AnnotationSite site : originalSites.keySet()) {
+        if (site.annotation.equals(site.getAnnotationName())) {
+          sitesByPosition
+              .computeIfAbsent(site.withoutAnnotation(), k -> new ArrayList<>())
+              .add(site);
+        }
+      }
+    }
+    CheckerHits hits = new CheckerHits(ajavaFiles);
+    span.end();
+    for (int i = 0; i < ajavaFiles.size(); i++) {
+      ParsedFile ajava = ParsedFile.parse(ajavaFiles.get(i));
+      span = Profiler.start(Profiler.Phase.MATCH);
+      Map<AnnotationSite, Integer> ajavaSites =
+          new AstAnnotationMatcher(ajava.compilationUnit).collectSites(qualifiers);
+      for (Map.Entry<AnnotationSite, Integer> e : ajavaSites.entrySet()) {
+        Integer firstId = firstIds.get(e.getKey());
+        if (firstId != null) {
+          int found = Math.min(e.getValue(), originalSites.get(e.getKey()));
+          for (int j = 0; j < found; j++) {
+            hits.hit(firstId + j, i);
+          }
+        }
+        if (sitesByPosition.isEmpty()) {
+          continue;
+        }
+        AnnotationSite inferred = e.getKey();
+        for (AnnotationSite site :
+            sitesByPosition.getOrDefault(inferred.withoutAnnotation(), Collections.emptyList())) {
+          if (!site.annotation.equals(inferred.annotation)
+              && hierarchy.isSubtype(inferred.getAnnotationName(), site.annotation)) {
+            int found = Math.min(e.getValue(), originalSites.get(site));
+            for (int j = 0; j < found; j++) {
+              hits.hit(firstIds.get(site) + j, i);
+            }
+          }
+        }
+      }
+      span.end();
+    }
+
+    span = Profiler.start(Profiler.Phase.TALLY);
+    AnnotationCounts counts = new AnnotationCounts();
+    hits.addCheckersTo(counts);
+    for (Map.Entry<AnnotationSite, Integer> e : originalSites.entrySet()) {
+      String name = e.getKey().getAnnotationName();
+      int firstId = firstIds.get(e.getKey());
+      for (int i = 0; i < e.getValue(); i++) {
+        counts.addOriginal(name);
+      }
+      for (int id = firstId; id < firstId + e.getValue(); id++) {
+        if (hits.isHit(id)) {
+          counts.addSimilar(name);
+        }
+        hits.addTo(counts, id, name);
+      }
+    }
+    span.end();
+    return counts;
+  }
+
+  /**
+   * Returns the annotation sites of the annotations in this compilation unit whose names are in the
+   * given set. Annotations that are arguments of other annotations are part of the enclosing
+   * annotation, so they do not have a site of their own.
+   *
+   * @param qualifiers the names of the annotations to include, e.g., "@NonNull"
+   * @return the sites of the annotations in the compilation unit, with their number of occurrences
+   */
+  private Map<AnnotationSite, Integer> collectSites(Set<String> qualifiers) {
+    Map<AnnotationSite, Integer> sites = new LinkedHashMap<>();
+    for (AnnotationExpr anno : cu.findAll(AnnotationExpr.class)) {
+      if (!qualifiers.contains("@" + anno.getName().getIdentifier()) || isNested(anno)) {
+        continue;
+      }
+      sites.merge(siteOf(anno), 1, Integer::sum);
+    }
+    return sites;
+  }
+
+  /**
+   * Returns true if the given annotation is an argument of another annotation.
+   *
+   * @param anno an annotation
+   * @return true if the annotation is nested inside another annotation
+   */
+  private static boolean isNested(AnnotationExpr anno) {
+    Node n = anno.getParentNode().orElse(null);
+    while (n != null) {
+      if (n instanceof AnnotationExpr) {
+        return true;
+      }
+      n = n.getParentNode().orElse(null);
+    }
+    return false;
+  }
+
+  /**
+   * Returns the site of an annotation.
+   *
+   * @param anno an annotation in this compilation unit
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOf(AnnotationExpr anno) {
+    String canonical = canonicalAnnotation(anno);
+    Node parent = anno.getParentNode().orElse(cu);
+    if (!(parent instanceof Type)) {
+      return siteOfDeclarationAnnotation(parent, anno, canonical);
+    }
+    // This is a type annotation. Find the outermost type that contains the annotated type,
+    // recording the steps from it to the annotated type.
+    Deque<String> steps = new ArrayDeque<>();
+    Type type = (Type) parent;
+    while (!(type instanceof TypeParameter)) {
+      Node enclosing = type.getParentNode().orElse(null);
+      if (!(enclosing instanceof Type)) {
+        break;
+      }
+      steps.addFirst(step(type, (Type) enclosing));
+      type = (Type) enclosing;
+    }
+    return siteOfType(type, String.join("", steps), canonical);
+  }
+
+  /**
+   * Returns the site of an annotation that is written on a declaration rather than on a type.
+   *
+   * @param owner the node whose annotations include {@code anno}
+   * @param anno the annotation
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfDeclarationAnnotation(
+      Node owner, AnnotationExpr anno, String canonical) {
+    if (owner instanceof TypeDeclaration) {
+      return new AnnotationSite(path(owner), ElementKind.TYPE, "", "", canonical);
+    } else if (owner instanceof MethodDeclaration) {
+      String location = declarationLocation(((MethodDeclaration) owner).getType(), false);
+      return new AnnotationSite(path(owner), ElementKind.METHOD, "", location, canonical);
+    } else if (owner instanceof ConstructorDeclaration) {
+      return new AnnotationSite(path(owner), ElementKind.METHOD, "", "", canonical);
+    } else if (owner instanceof AnnotationMemberDeclaration) {
+      String location = declarationLocation(((AnnotationMemberDeclaration) owner).getType(), false);
+      return new AnnotationSite(path(owner), ElementKind.METHOD, "", location, canonical);
+    } else if (owner instanceof Parameter) {
+      Parameter param = (Parameter) owner;
+      if (containsIdentical(param.getVarArgsAnnotations(), anno)) {
+        // An annotation on the "..." of a varargs parameter is on the array type itself.
+        return siteOfParameter(param, "", canonical);
+      }
+      String location = declarationLocation(param.getType(), param.isVarArgs());
+      return siteOfParameter(param, location, canonical);
+    } else if (owner instanceof ReceiverParameter) {
+      return siteOfReceiver((ReceiverParameter) owner, "", canonical);
+    } else if (owner instanceof FieldDeclaration) {
+      VariableDeclarator variable = ((FieldDeclaration) owner).getVariable(0);
+      return siteOfVariable(variable, declarationLocation(variable.getType(), false), canonical);
+    } else if (owner instanceof VariableDeclarationExpr) {
+      VariableDeclarator variable = ((VariableDeclarationExpr) owner).getVariable(0);
+      return siteOfVariable(variable, declarationLocation(variable.getType(), false), canonical);
+    } else if (owner instanceof EnumConstantDeclaration) {
+      return new AnnotationSite(path(owner), ElementKind.ENUM_CONSTANT, "", "", canonical);
+    } else if (owner instanceof PackageDeclaration) {
+      return new AnnotationSite("", ElementKind.PACKAGE, "", "", canonical);
+    }
+    return siteOfExpression(owner, "", canonical);
+  }
+
+  /**
+   * Returns the site of a type annotation, given the outermost type that contains it.
+   *
+   * @param type the outermost type that contains the annotated type, or the type parameter whose
+   *     declaration or bounds contain it
+   * @param location the location of the annotated type within {@code type}
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfType(Type type, String location, String canonical) {
+    Node owner = type.getParentNode().orElse(cu);
+    if (type instanceof TypeParameter && owner instanceof NodeWithTypeParameters) {
+      NodeList<TypeParameter> typeParameters =
+          ((NodeWithTypeParameters<?>) owner).getTypeParameters();
+      String index = Integer.toString(indexOfIdentical(typeParameters, type));
+      return new AnnotationSite(
+          path(owner), ElementKind.TYPE_PARAMETER, index, location, canonical);
+    } else if (owner instanceof Parameter) {
+      Parameter param = (Parameter) owner;
+      return siteOfParameter(param, (param.isVarArgs() ? "[]" : "") + location, canonical);
+    } else if (owner instanceof ReceiverParameter) {
+      return siteOfReceiver((ReceiverParameter) owner, location, canonical);
+    } else if (owner instanceof VariableDeclarator) {
+      return siteOfVariable((VariableDeclarator) owner, location, canonical);
+    } else if (owner instanceof AnnotationMemberDeclaration) {
+      return new AnnotationSite(path(owner), ElementKind.METHOD, "", location, canonical);
+    } else if (owner instanceof CallableDeclaration) {
+      CallableDeclaration<?> callable = (CallableDeclaration<?>) owner;
+      if (owner instanceof MethodDeclaration && ((MethodDeclaration) owner).getType() == type) {
+        return new AnnotationSite(path(owner), ElementKind.METHOD, "", location, canonical);
+      }
+      int index = indexOfIdentical(callable.getThrownExceptions(), type);
+      if (index != -1) {
+        return new AnnotationSite(
+            path(owner), ElementKind.THROWS, Integer.toString(index), location, canonical);
+      }
+    } else if (owner instanceof TypeDeclaration) {
+      if (owner instanceof NodeWithExtends) {
+        int index = indexOfIdentical(((NodeWithExtends<?>) owner).getExtendedTypes(), type);
+        if (index != -1) {
+          return new AnnotationSite(
+              path(owner), ElementKind.EXTENDS, Integer.toString(index), location, canonical);
+        }
+      }
+      if (owner instanceof NodeWithImplements) {
+        int index = indexOfIdentical(((NodeWithImplements<?>) owner).getImplementedTypes(), type);
+        if (index != -1) {
+          return new AnnotationSite(
+              path(owner), ElementKind.IMPLEMENTS, Integer.toString(index), location, canonical);
+        }
+      }
+    }
+    return siteOfExpression(owner, location, canonical);
+  }
+
+  /**
+   * Returns the site of an annotation on a formal parameter or on its type.
+   *
+   * @param param the parameter
+   * @param location the location of the annotated type within the parameter's type
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfParameter(Parameter param, String location, String canonical) {
+    Node owner = param.getParentNode().orElse(cu);
+    NodeList<Parameter> parameters = null;
+    if (owner instanceof CallableDeclaration) {
+      parameters = ((CallableDeclaration<?>) owner).getParameters();
+    } else if (owner instanceof LambdaExpr) {
+      parameters = ((LambdaExpr) owner).getParameters();
+    } else if (owner instanceof RecordDeclaration) {
+      parameters = ((RecordDeclaration) owner).getParameters();
+    }
+    if (parameters != null) {
+      String index = Integer.toString(indexOfIdentical(parameters, param));
+      return new AnnotationSite(path(owner), ElementKind.PARAMETER, index, location, canonical);
+    }
+    // A catch clause parameter, which is a kind of local variable.
+    Node scope = enclosingScope(param);
+    String index = param.getNameAsString() + "#" + ordinal(scope, param);
+    return new AnnotationSite(path(scope), ElementKind.LOCAL_VARIABLE, index, location, canonical);
+  }
+
+  /**
+   * Returns the site of an annotation on a receiver parameter or on its type.
+   *
+   * @param receiver the receiver parameter
+   * @param location the location of the annotated type within the receiver's type
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfReceiver(
+      ReceiverParameter receiver, String location, String canonical) {
+    Node owner = receiver.getParentNode().orElse(cu);
+    return new AnnotationSite(path(owner), ElementKind.RECEIVER, "", location, canonical);
+  }
+
+  /**
+   * Returns the site of an annotation on a field or local variable or on its type.
+   *
+   * @param variable the variable
+   * @param location the location of the annotated type within the variable's type
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfVariable(
+      VariableDeclarator variable, String location, String canonical) {
+    Node declaration = variable.getParentNode().orElse(cu);
+    Node scope = enclosingScope(declaration);
+    if (declaration instanceof FieldDeclaration) {
+      return new AnnotationSite(
+          path(scope), ElementKind.FIELD, variable.getNameAsString(), location, canonical);
+    }
+    String index = variable.getNameAsString() + "#" + ordinal(scope, variable);
+    return new AnnotationSite(path(scope), ElementKind.LOCAL_VARIABLE, index, location, canonical);
+  }
+
+  /**
+   * Returns the site of an annotation on a type that is written in an expression, such as a cast,
+   * or in some other place that is not a declaration. Such a site is identified by the kind of node
+   * that contains the annotation and the position of that node among the nodes of the same kind in
+   * the enclosing declaration.
+   *
+   * @param owner the node that contains the annotation or the annotated type
+   * @param location the location of the annotated type within the type written in {@code owner}
+   * @param canonical the canonical form of the annotation
+   * @return the site of the annotation
+   */
+  private AnnotationSite siteOfExpression(Node owner, String location, String canonical) {
+    Node scope = enclosingScope(owner);
+    String index = owner.getClass().getSimpleName() + "#" + ordinal(scope, owner);
+    return new AnnotationSite(path(scope), ElementKind.EXPRESSION, index, location, canonical);
+  }
+
+  /**
+   * Returns the step from a type to one of the types that it directly contains, in the format
+   * described in {@link AnnotationSite#typeLocation}.
+   *
+   * @param type a type
+   * @param enclosing the type that directly contains {@code type}
+   * @return the step from {@code enclosing} to {@code type}
+   */
+  private static String step(Type type, Type enclosing) {
+    if (enclosing instanceof ArrayType) {
+      return "[]";
+    } else if (enclosing instanceof ClassOrInterfaceType) {
+      ClassOrInterfaceType classType = (ClassOrInterfaceType) enclosing;
+      if (classType.getScope().orElse(null) == type) {
+        return "^";
+      }
+      if (classType.getTypeArguments().isPresent()) {
+        return "<" + indexOfIdentical(classType.getTypeArguments().get(), type) + ">";
+      }
+    } else if (enclosing instanceof WildcardType) {
+      WildcardType wildcard = (WildcardType) enclosing;
+      return wildcard.getExtendedType().orElse(null) == type ? "+" : "-";
+    } else if (enclosing instanceof TypeParameter) {
+      return "&" + indexOfIdentical(((TypeParameter) enclosing).getTypeBound(), type);
+    } else if (enclosing instanceof UnionType) {
+      return "|" + indexOfIdentical(((UnionType) enclosing).getElements(), type);
+    } else if (enclosing instanceof IntersectionType) {
+      return "*" + indexOfIdentical(((IntersectionType) enclosing).getElements(), type);
+    }
+    return "?";
+  }
+
+  /**
+   * Returns the location of the type that a declaration annotation applies to, within the declared
+   * type. A declaration annotation on an array-typed element applies to the innermost component
+   * type, so for example the {@literal @}Nullable in "@Nullable Object[] x" has the same location
+   * as the one in "java.lang.@Nullable Object[] x", and not that of the one in "Object @Nullable []
+   * x", which applies to the array.
+   *
+   * @param type the declared type of the element
+   * @param isVarArgs true if the element is a varargs parameter
+   * @return the location of the type that a declaration annotation on the element applies to
+   */
+  private static String declarationLocation(Type type, boolean isVarArgs) {
+    StringBuilder location = new StringBuilder(isVarArgs ? "[]" : "");
+    while (type instanceof ArrayType) {
+      location.append("[]");
+      type = ((ArrayType) type).getComponentType();
+    }
+    return location.toString();
+  }
+
+  /**
+   * Returns true if the given node is a scope, i.e., a node that contributes one element to the
+   * declaration path of the annotations inside it.
+   *
+   * @param node a node
+   * @return true if the node is a scope
+   */
+  private static boolean isScope(Node node) {
+    return node instanceof CompilationUnit
+        || node instanceof TypeDeclaration
+        || node instanceof CallableDeclaration
+        || node instanceof AnnotationMemberDeclaration
+        || node instanceof EnumConstantDeclaration
+        || node instanceof FieldDeclaration
+        || node instanceof InitializerDeclaration
+        || node instanceof LambdaExpr
+        || (node instanceof ObjectCreationExpr
+            && ((ObjectCreationExpr) node).getAnonymousClassBody().isPresent());
+  }
+
+  /**
+   * Returns the innermost scope that strictly contains the given node.
+   *
+   * @param node a node in this compilation unit
+   * @return the innermost scope that contains the node
+   */
+  private Node enclosingScope(Node node) {
+    Node n = node.getParentNode().orElse(cu);
+    while (!isScope(n)) {
+      n = n.getParentNode().orElse(cu);
+    }
+    return n;
+  }
+
+  /**
+   * Returns the declaration path of a scope, such as "Outer.Inner.method(int,String[])".
+   *
+   * @param scope a scope in this compilation unit
+   * @return the declaration path of the scope
+   */
+  private String path(Node scope) {
+    if (scope instanceof CompilationUnit) {
+      return "";
+    }
+    String cached = pathCache.get(scope);
+    if (cached != null) {
+      return cached;
+    }
+    Node enclosing = enclosingScope(scope);
+    String enclosingPath = path(enclosing);
+    String name = scopeName(scope, enclosing);
+    String result = enclosingPath.isEmpty() ? name : enclosingPath + "." + name;
+    pathCache.put(scope, result);
+    return result;
+  }
+
+  /**
+   * Returns the name of a scope, i.e., its element of the declaration path.
+   *
+   * @param scope a scope
+   * @param enclosing the innermost scope that contains {@code scope}
+   * @return the name of the scope
+   */
+  private String scopeName(Node scope, Node enclosing) {
+    if (scope instanceof TypeDeclaration) {
+      return ((TypeDeclaration<?>) scope).getNameAsString();
+    } else if (scope instanceof CallableDeclaration) {
+      CallableDeclaration<?> callable = (CallableDeclaration<?>) scope;
+      StringJoiner signature = new StringJoiner(",", callable.getNameAsString() + "(", ")");
+      for (Parameter param : callable.getParameters()) {
+        signature.add(erasedName(param.getType()) + (param.isVarArgs() ? "..." : ""));
+      }
+      return signature.toString();
+    } else if (scope instanceof AnnotationMemberDeclaration) {
+      return ((AnnotationMemberDeclaration) scope).getNameAsString() + "()";
+    } else if (scope instanceof EnumConstantDeclaration) {
+      return ((EnumConstantDeclaration) scope).getNameAsString();
+    } else if (scope instanceof FieldDeclaration) {
+      StringJoiner names = new StringJoiner(",");
+      for (VariableDeclarator variable : ((FieldDeclaration) scope).getVariables()) {
+        names.add(variable.getNameAsString());
+      }
+      return names.toString();
+    } else if (scope instanceof InitializerDeclaration) {
+      boolean isStatic = ((InitializerDeclaration) scope).isStatic();
+      return (isStatic ? "static{}#" : "{}#") + ordinal(enclosing, scope);
+    } else if (scope instanceof LambdaExpr) {
+      return "lambda#" + ordinal(enclosing, scope);
+    } else {
+      String type = erasedName(((ObjectCreationExpr) scope).getType());
+      return "new " + type + "#" + ordinal(enclosing, scope);
+    }
+  }
+
+  /**
+   * Returns the name of a type with its package, type arguments and annotations removed, as used
+   * in the signatures in declaration paths.
+   *
+   * @param type a type
+   * @return the simple, erased name of the type
+   */
+  private static String erasedName(Type type) {
+    if (type instanceof ArrayType) {
+      return erasedName(((ArrayType) type).getComponentType()) + "[]";
+    } else if (type instanceof ClassOrInterfaceType) {
+      return ((ClassOrInterfaceType) type).getNameAsString();
+    }
+    return type.asString();
+  }
+
+  /**
+   * Returns the ordinal of a node among the nodes of the same class in a scope, in the order in
+   * which JavaParser visits them. Variables are numbered separately for each name, so that adding
+   * or removing a variable does not change the ordinals of the variables with other names.
+   *
+   * @param scope a scope that contains {@code node}
+   * @param node a node
+   * @return the ordinal of the node within the scope
+   */
+  private int ordinal(Node scope, Node node) {
+    Map<Node, Integer> ordinals = ordinalCache.computeIfAbsent(scope, k -> new IdentityHashMap<>());
+    Set<Class<?>> numbered = numberedClasses.computeIfAbsent(scope, k -> new HashSet<>());
+    if (numbered.add(node.getClass())) {
+      Map<String, Integer> counters = new HashMap<>();
+      for (Node n : scope.findAll(node.getClass())) {
+        String group = "";
+        if (n instanceof VariableDeclarator) {
+          group = ((VariableDeclarator) n).getNameAsString();
+        } else if (n instanceof Parameter) {
+          group = ((Parameter) n).getNameAsString();
+        }
+        int count = counters.getOrDefault(group, 0);
+        ordinals.put(n, count);
+        counters.put(group, count + 1);
+      }
+    }
+    return ordinals.getOrDefault(node, -1);
+  }
+
+  /**
+   * Returns the canonical form of an annotation: its simple name, followed by its arguments with
+   * package names, whitespace and redundant braces removed. For example, both
+   * "@org.checkerframework.checker.nullness.qual.EnsuresNonNull(value = {"tz1"})" and
+   * "@EnsuresNonNull("tz1")" have the canonical form "@EnsuresNonNull("tz1")".
+   *
+   * @param anno an annotation
+   * @return the canonical form of the annotation
+   */
+  static String canonicalAnnotation(AnnotationExpr anno) {
+    String name = "@" + anno.getName().getIdentifier();
+    if (anno instanceof SingleMemberAnnotationExpr) {
+      Expression value = ((SingleMemberAnnotationExpr) anno).getMemberValue();
+      return name + "(" + canonicalValue(value) + ")";
+    } else if (anno instanceof NormalAnnotationExpr) {
+      NodeList<MemberValuePair> pairs = ((NormalAnnotationExpr) anno).getPairs();
+      if (pairs.isEmpty()) {
+        return name;
+      }
+      if (pairs.size() == 1 && pairs.get(0).getNameAsString().equals("value")) {
+        return name + "(" + canonicalValue(pairs.get(0).getValue()) + ")";
+      }
+      StringJoiner arguments = new StringJoiner(",", name + "(", ")");
+      for (MemberValuePair pair : pairs) {
+        arguments.add(pair.getNameAsString() + "=" + canonicalValue(pair.getValue()));
+      }
+      return arguments.toString();
+    }
+    return name;
+  }
+
+  /**
+   * Matches a name that starts with "org.", such as a fully-qualified field name in a Java
+   * expression. The last identifier of the name is in group 1.
+   */
+  private static final Pattern QUALIFIED_NAME =
+      Pattern.compile("\\borg\\.(?:[\\w$]+\\.)*([\\w$]+)");
+
+  /**
+   * Returns the canonical form of an annotation argument. An array with a single element is
+   * written as that element, since Java permits the braces to be omitted. Names that start with
+   * "org." are replaced by their last identifier, both in code and in strings (which contain Java
+   * expressions in many Checker Framework annotations), the same way that {@link
+   * InferredAnnosCounter#extractCheckerPackage} does: WPI writes such names in fully-qualified
+   * form, but humans usually do not.
+   *
+   * @param value an annotation argument
+   * @return the canonical form of the argument
+   */
+  private static String canonicalValue(Expression value) {
+    if (value instanceof ArrayInitializerExpr) {
+      NodeList<Expression> values = ((ArrayInitializerExpr) value).getValues();
+      if (values.size() == 1) {
+        return canonicalValue(values.get(0));
+      }
+      StringJoiner elements = new StringJoiner(",", "{", "}");
+      for (Expression element : values) {
+        elements.add(canonicalValue(element));
+      }
+      return elements.toString();
+    } else if (value instanceof AnnotationExpr) {
+      return canonicalAnnotation((AnnotationExpr) value);
+    } else if (value instanceof StringLiteralExpr) {
+      String string = ((StringLiteralExpr) value).getValue();
+      return "\"" + QUALIFIED_NAME.matcher(string).replaceAll("$1") + "\"";
+    } else if (value instanceof ClassExpr) {
+      return erasedName(((ClassExpr) value).getType()) + ".class";
+    }
+    String code = value.toString().replaceAll("\\s+", "");
+    return QUALIFIED_NAME.matcher(code).replaceAll("$1");
+  }
+
+  /**
+   * Returns the index of a node in a list, comparing nodes by identity rather than by the
+   * structural equality that JavaParser's {@code equals} implements.
+   *
+   * @param list a list of nodes
+   * @param node a node
+   * @return the index of the node in the list, or -1 if it is not in the list
+   */
+  private static int indexOfIdentical(List<? extends Node> list, Node node) {
+    for (int i = 0; i < list.size(); i++) {
+      if (list.get(i) == node) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if the given list contains the given node, compared by identity.
+   *
+   * @param list a list of nodes
+   * @param node a node
+   * @return true if the list contains the node
+   */
+  private static boolean containsIdentical(List<? extends Node> list, Node node) {
+    return indexOfIdentical(list, node) != -1;
+  }
+}
@@ -0,0 +1,88 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.difflib.patch.AbstractDelta;
+import java.util.List;
+
+/**
+ * Chooses a diff algorithm for each pair of files, based on their size and an estimate of their
+ * edit distance. Most .ajava files differ from their human-written file by a few annotations, and
+ * for them this uses {@link MyersDiff}, so that the results are the same as those of the Myers
+ * algorithm of java-diff-utils. For two files that differ a lot, Myers' algorithm needs time and
+ * memory proportional to the square of the edit distance, so this uses {@link LinearMyersDiff} if
+ * the files are small enough and {@link HistogramDiff} otherwise.
+ */
+// The Index Checker cannot verify the indices into counts, which are symbols that are smaller than
+// its length.
+@SuppressWarnings("index")
+final class AutoDiff implements DiffAlgorithm {
+
+  /**
+   * The largest edit distance for which {@link MyersDiff} is used. The number of nodes that Myers'
+   * algorithm creates is up to about the square of the edit distance, and each takes 14 bytes.
+   */
+  static final int MAX_MYERS_EDIT_DISTANCE = 1000;
+
+  /**
+   * The largest product of the total length of the files and their estimated edit distance for
+   * which {@link LinearMyersDiff} is used, which is roughly the number of line comparisons it does.
+   */
+  static final long MAX_LINEAR_WORK = 100_000_000L;
+
+  /** The Myers diff, for files that differ a little. */
+  private final MyersDiff myers = new MyersDiff();
+
+  /** The linear-space Myers diff, for smaller files that differ a lot. */
+  private final LinearMyersDiff linear = new LinearMyersDiff();
+
+  /** The histogram diff, for larger files that differ a lot. */
+  private final HistogramDiff histogram = new HistogramDiff();
+
+  @Override
+  public List<AbstractDelta<String>> diff(InternedLines original, InternedLines revised) {
+    int estimate = estimateEditDistance(original.symbols, revised.symbols);
+    if (estimate <= MAX_MYERS_EDIT_DISTANCE) {
+      List<AbstractDelta<String>> deltas = myers.diff(original, revised, MAX_MYERS_EDIT_DISTANCE);
+      if (deltas != null) {
+        return deltas;
+      }
+      // The estimate was too low, so the edit distance is larger than MAX_MYERS_EDIT_DISTANCE.
+      estimate = MAX_MYERS_EDIT_DISTANCE + 1;
+    }
+    if ((long) (original.size() + revised.size()) * estimate <= MAX_LINEAR_WORK) {
+      return linear.diff(original, revised);
+    }
+    return histogram.diff(original, revised);
+  }
+
+  /**
+   * Returns a lower bound on the edit distance between two files: the number of lines that must be
+   * deleted or inserted because they occur more often in one file than in the other. This ignores
+   * lines that moved, so it underestimates the edit distance of files whose declarations were
+   * reordered.
+   *
+   * @param original the symbols of the original lines
+   * @param revised the symbols of the revised lines
+   * @return a lower bound on the edit distance between the two
+   */
+  static int estimateEditDistance(int[] original, int[] revised) {
+    int symbolCount = 0;
+    for (int symbol : original) {
+      symbolCount = Math.max(symbolCount, symbol + 1);
+    }
+    for (int symbol : revised) {
+      symbolCount = Math.max(symbolCount, symbol + 1);
+    }
+    int[] counts = new int[symbolCount];
+    for (int symbol : original) {
+      counts[symbol]++;
+    }
+    for (int symbol : revised) {
+      counts[symbol]--;
+    }
+    int estimate = 0;
+    for (int count : counts) {
+      estimate += Math.abs(count);
+    }
+    return estimate;
+  }
+}
@@ -0,0 +1,139 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Records which checkers inferred each annotation written by the human in one file. The .ajava
+ * files of a file are produced by different checkers, and the checker of each one is part of its
+ * name. Each annotation written by the human is identified by an int, its site, and for each site
+ * this records a bitset of the checkers that have the annotation at that site in one of their
+ * .ajava files. This is filled in while the .ajava files are matched against the human-written
+ * file, so the results for each checker are available without running the counter once per
+ * checker.
+ */
+// The Index Checker cannot verify the indices into the bitsets, which are bounded by the number of
+// checkers and by the sites passed to hit.
+@SuppressWarnings("index")
+final class CheckerHits {
+
+  /** The checkers of the .ajava files, without duplicates, in alphabetical order. */
+  private final List<String> checkers;
+
+  /** For each .ajava file, the index of its checker in {@link #checkers}. */
+  private final int[] checkerOfFile;
+
+  /** The number of longs in the bitset of each site. */
+  private final int words;
+
+  /**
+   * The bitsets of the sites, one after the other. Bit c of the bitset of a site is set if the
+   * checker with index c has the annotation of that site.
+   */
+  private long[] bits;
+
+  /**
+   * Creates an empty CheckerHits.
+   *
+   * @param ajavaFiles the paths to the .ajava files of the human-written file
+   */
+  CheckerHits(List<String> ajavaFiles) {
+    TreeSet<String> distinct = new TreeSet<>();
+    for (String ajavaFile : ajavaFiles) {
+      distinct.add(checkerOf(ajavaFile));
+    }
+    checkers = new ArrayList<>(distinct);
+    checkerOfFile = new int[ajavaFiles.size()];
+    for (int i = 0; i < checkerOfFile.length; i++) {
+      checkerOfFile[i] = Collections.binarySearch(checkers, checkerOf(ajavaFiles.get(i)));
+    }
+    words = Math.max(1, (checkers.size() + 63) / 64);
+    bits = new long[16 * words];
+  }
+
+  /**
+   * Records that an .ajava file has the annotation of a site.
+   *
+   * @param site the site
+   * @param ajavaFile the index of the .ajava file in the list passed to the constructor
+   */
+  void hit(int site, int ajavaFile) {
+    int start = site * words;
+    if (start + words > bits.length) {
+      bits = Arrays.copyOf(bits, Math.max(start + words, bits.length * 2));
+    }
+    int checker = checkerOfFile[ajavaFile];
+    // Shifts use only the low six bits of the shift distance, i.e., checker % 64.
+    bits[start + (checker >>> 6)] |= 1L << checker;
+  }
+
+  /**
+   * Returns true if any .ajava file has the annotation of a site.
+   *
+   * @param site the site
+   * @return true if any .ajava file has the annotation of the site
+   */
+  boolean isHit(int site) {
+    int start = site * words;
+    for (int i = start; i < start + words && i < bits.length; i++) {
+      if (bits[i] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records the checkers of the .ajava files in the given counts, so that the counts for each of
+   * them are reported even if it inferred none of the annotations.
+   *
+   * @param counts the counts to update
+   */
+  void addCheckersTo(AnnotationCounts counts) {
+    for (String checker : checkers) {
+      counts.addChecker(checker);
+    }
+  }
+
+  /**
+   * Records in the given counts that each checker that has the annotation of a site inferred one
+   * more annotation of its kind.
+   *
+   * @param counts the counts to update
+   * @param site the site
+   * @param anno the annotation of the site, e.g., "@NonNull"
+   */
+  void addTo(AnnotationCounts counts, int site, String anno) {
+    int start = site * words;
+    for (int word = 0; word < words && start + word < bits.length; word++) {
+      long bitset = bits[start + word];
+      while (bitset != 0) {
+        int checker = word * 64 + Long.numberOfTrailingZeros(bitset);
+        counts.addInferredBy(checkers.get(checker), anno);
+        bitset &= bitset - 1;
+      }
+    }
+  }
+
+  /**
+   * Returns the checker that produced an .ajava file, which WPI puts at the end of the name of the
+   * file. For example, the checker of
+   * "Foo-org.checkerframework.checker.nullness.NullnessChecker.ajava" is
+   * "org.checkerframework.checker.nullness.NullnessChecker".
+   *
+   * @param ajavaFile the path to an .ajava file
+   * @return the checker that produced the file, or the empty string if its name does not say
+   */
+  static String checkerOf(String ajavaFile) {
+    String fileName = String.valueOf(Paths.get(ajavaFile).getFileName());
+    int indexOfDash = fileName.indexOf('-');
+    if (indexOfDash == -1) {
+      return "";
+    }
+    return fileName.substring(indexOfDash + 1).replaceFirst("\\.ajava$", "");
+  }
+}
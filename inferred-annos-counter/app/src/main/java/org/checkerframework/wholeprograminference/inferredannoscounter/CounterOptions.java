@@ -0,0 +1,340 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * The command-line options of the inferred annos counter. Options start with "--" and must come
+ * before the files. Options that take a value are written as "--name=value". The remaining
+ * arguments are either a human-written Java file followed by its .ajava files, or (in batch mode)
+ * the roots of the human-written and generated source trees. A server ("--server") takes no
+ * files; each of its requests has options and files of its own. Neither does a run that only
+ * writes a --summary of the --annotation-stats.
+ */
+public class CounterOptions {
+
+  /** The ways in which the annotations in a Java file can be matched with those in .ajava files. */
+  public enum Engine {
+    /**
+     * Match each annotation by its structural position in the AST. See {@link
+     * AstAnnotationMatcher}.
+     */
+    AST,
+    /** Match annotations by diffing the normalized lines of the files. */
+    DIFF
+  }
+
+  /** The diff algorithms that the diff engine can use. See {@link DiffAlgorithm}. */
+  public enum DiffAlgorithmName {
+    /** Myers' algorithm, as in java-diff-utils. See {@link MyersDiff}. */
+    MYERS,
+    /** The histogram diff of JGit and git. See {@link HistogramDiff}. */
+    HISTOGRAM,
+    /** Patience diff. See {@link PatienceDiff}. */
+    PATIENCE,
+    /** The linear-space variant of Myers' algorithm. See {@link LinearMyersDiff}. */
+    LINEAR,
+    /** Choose an algorithm for each file. See {@link AutoDiff}. */
+    AUTO
+  }
+
+  /** How an annotation in a Java file is matched with those in the .ajava files. */
+  public enum Match {
+    /** The annotation in the .ajava file must be the same, with the same arguments. */
+    EXACT,
+    /**
+     * The annotation in the .ajava file may also be a subtype of the human-written one. See {@link
+     * QualifierHierarchy}.
+     */
+    SUBTYPE
+  }
+
+  /** The formats in which the results can be written. See {@link ReportWriter}. */
+  public enum Format {
+    /** The "@Anno got correct/total" format, for people. */
+    TEXT,
+    /** One JSON object per file, and one for the total. */
+    JSON,
+    /** One row per file and annotation, and one per annotation for the total. */
+    CSV
+  }
+
+  /** True if the counter should run on whole source trees rather than on a single file. */
+  public boolean batch = false;
+
+  /** How to match annotations in the Java files with those in the .ajava files. */
+  public Engine engine = Engine.AST;
+
+  /** How to match an annotation in a Java file with those in the .ajava files. */
+  public Match match = Match.EXACT;
+
+  /** The format in which to write the results. */
+  public Format format = Format.TEXT;
+
+  /**
+   * True if the text results should show, for each annotation, how many of them each checker
+   * inferred. The other formats always include these.
+   */
+  public boolean perChecker = false;
+
+  /** The diff algorithm to use with {@link Engine#DIFF}. */
+  public DiffAlgorithmName diffAlgorithm = DiffAlgorithmName.AUTO;
+
+  /**
+   * True if the annotations to ignore should be found by running RemoveAnnotationsForInference on
+   * a copy of each file, rather than from the AST. This requires the Checker Framework's
+   * checker.jar.
+   */
+  public boolean legacyIgnore = false;
+
+  /** True if the results for each file should be stored in and read from {@link #cacheDir}. */
+  public boolean cache = true;
+
+  /**
+   * The directory of the on-disk cache of results. See {@link ResultCache}. By default, it is in
+   * the user's cache directory ($XDG_CACHE_HOME, or ~/.cache), so that it is shared by the runs in
+   * different working directories and is not deleted with a build directory.
+   */
+  public String cacheDir = defaultCacheDir();
+
+  /** The maximum size of the on-disk cache of results, in megabytes. */
+  public int cacheSize = 256;
+
+  /**
+   * The number of slowest files to report at the end of the run, along with the time and memory
+   * used by each phase, or 0 if no profile should be printed. See {@link Profiler}.
+   */
+  public int profile = 0;
+
+  /**
+   * The memory that the files processed at the same time in batch mode may use, in megabytes, or 0
+   * for three quarters of the maximum heap size. See {@link MemoryBudget}.
+   */
+  public int memoryLimit = 0;
+
+  /**
+   * True if the counter should run as a server that handles many requests, rather than once. See
+   * {@link CounterServer}.
+   */
+  public boolean server = false;
+
+  /**
+   * The path of the Unix domain socket on which the server listens, or the empty string if it reads
+   * its requests from standard input.
+   */
+  public String serverSocket = "";
+
+  /**
+   * The file to which to write the table that summarizes the results for the whole project, or the
+   * empty string if none should be written. See {@link ProjectSummary}.
+   */
+  public String summary = "";
+
+  /**
+   * The files produced by RunWPI.py from which to read the "Original count" and "Inferred" columns
+   * of the {@link #summary}.
+   */
+  public final List<String> annotationStats = new ArrayList<>();
+
+  /** The number of threads to use in batch mode. */
+  public int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The files given on the command line. In batch mode, these are the root of the human-written
+   * Java files and the root of the generated .ajava files. Otherwise, the first element is the
+   * human-written Java file and the rest are the corresponding .ajava files.
+   */
+  public final List<String> files = new ArrayList<>();
+
+  /**
+   * Parses the command-line arguments.
+   *
+   * @param args the command-line arguments
+   * @return the parsed options
+   */
+  public static CounterOptions parse(String[] args) {
+    CounterOptions options = new CounterOptions();
+    int i = 0;
+    for (; i < args.length && args[i].startsWith("--"); i++) {
+      String arg = args[i];
+      int indexOfEquals = arg.indexOf('=');
+      String name = indexOfEquals == -1 ? arg : arg.substring(0, indexOfEquals);
+      String value = indexOfEquals == -1 ? null : arg.substring(indexOfEquals + 1);
+      switch (name) {
+        case "--batch":
+          options.batch = true;
+          break;
+        case "--no-cache":
+          options.cache = false;
+          break;
+        case "--cache-dir":
+          if (value == null || value.isEmpty()) {
+            throw new RuntimeException(
+                "--cache-dir requires a directory, e.g., --cache-dir=/tmp/iac");
+          }
+          options.cacheDir = value;
+          break;
+        case "--cache-size":
+          options.cacheSize = parsePositiveInt(name, value);
+          break;
+        case "--memory-limit":
+          options.memoryLimit = parsePositiveInt(name, value);
+          break;
+        case "--threads":
+          options.threads = parsePositiveInt(name, value);
+          break;
+        case "--per-checker":
+          options.perChecker = true;
+          break;
+        case "--profile":
+          options.profile = value == null ? 10 : parsePositiveInt(name, value);
+          break;
+        case "--server":
+          options.server = true;
+          options.serverSocket = value == null ? "" : value;
+          break;
+        case "--summary":
+          if (value == null || value.isEmpty()) {
+            throw new RuntimeException(
+                "--summary requires a file, e.g., --summary=AnnotationStats_IAC_Output.csv");
+          }
+          options.summary = value;
+          break;
+        case "--annotation-stats":
+          if (value == null || value.isEmpty()) {
+            throw new RuntimeException(
+                "--annotation-stats requires one or more files, e.g.,"
+                    + " --annotation-stats=Human-written.txt,Generated.txt");
+          }
+          options.annotationStats.addAll(Arrays.asList(value.split(",")));
+          break;
+        case "--legacy-ignore":
+          options.legacyIgnore = true;
+          break;
+        case "--engine":
+          options.engine = parseEnum(Engine.class, name, value);
+          break;
+        case "--match":
+          options.match = parseEnum(Match.class, name, value);
+          break;
+        case "--format":
+          options.format = parseEnum(Format.class, name, value);
+          break;
+        case "--diff-algorithm":
+          options.diffAlgorithm = parseEnum(DiffAlgorithmName.class, name, value);
+          break;
+        default:
+          throw new RuntimeException("Unknown option: " + arg);
+      }
+    }
+    for (; i < args.length; i++) {
+      options.files.add(args[i]);
+    }
+
+    if (options.server) {
+      if (!options.files.isEmpty() || options.batch) {
+        throw new RuntimeException(
+            "A server takes its files from its requests, not from the command line");
+      }
+      return options;
+    }
+    if (options.match == Match.SUBTYPE && options.engine != Engine.AST) {
+      throw new RuntimeException("--match=subtype requires --engine=ast");
+    }
+    if (!options.annotationStats.isEmpty() && options.summary.isEmpty()) {
+      throw new RuntimeException("--annotation-stats requires --summary");
+    }
+    if (options.files.isEmpty() && !options.summary.isEmpty() && !options.batch) {
+      // Only the summary of the given statistics, without running the counter.
+      return options;
+    }
+    if (options.files.isEmpty()) {
+      throw new RuntimeException("Provide at least one .java file");
+    }
+    if (options.batch && options.files.size() != 2) {
+      throw new RuntimeException(
+          "Batch mode requires exactly two arguments: the root of the human-written Java files"
+              + " and the root of the generated .ajava files");
+    }
+    return options;
+  }
+
+  /**
+   * Returns a description of the options that affect the results for a file, for use in the keys
+   * of the {@link ResultCache}. Every option that can change the output for a file must be part of
+   * the description, and no other, so that changing an option that the engine does not read, such
+   * as the diff algorithm with the AST engine, does not invalidate the cached results.
+   *
+   * @return a description of the options that affect the results
+   */
+  public String describeResultOptions() {
+    String description = "engine=" + engine + " legacyIgnore=" + legacyIgnore;
+    if (engine == Engine.DIFF) {
+      description += " diffAlgorithm=" + diffAlgorithm;
+    } else {
+      description += " match=" + match;
+    }
+    return description;
+  }
+
+  /**
+   * Returns the default directory of the on-disk cache of results.
+   *
+   * @return inferred-annos-counter in $XDG_CACHE_HOME if it is set, or in ~/.cache otherwise
+   */
+  private static String defaultCacheDir() {
+    String cacheHome = System.getenv("XDG_CACHE_HOME");
+    if (cacheHome == null || cacheHome.isEmpty()) {
+      cacheHome = Paths.get(System.getProperty("user.home"), ".cache").toString();
+    }
+    return Paths.get(cacheHome, "inferred-annos-counter").toString();
+  }
+
+  /**
+   * Parses the value of an option that must be a positive integer.
+   *
+   * @param name the name of the option, used in error messages
+   * @param value the value of the option, or null if none was given
+   * @return the value as an integer
+   */
+  private static int parsePositiveInt(String name, String value) {
+    int result;
+    try {
+      result = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      if (value != null && value.matches("[0-9]+")) {
+        throw new RuntimeException(name + " must be at most " + Integer.MAX_VALUE);
+      }
+      throw new RuntimeException(name + " requires a positive integer, e.g., " + name + "=4");
+    }
+    if (result <= 0) {
+      throw new RuntimeException(name + " requires a positive integer, e.g., " + name + "=4");
+    }
+    return result;
+  }
+
+  /**
+   * Parses the value of an option that must be one of the constants of an enum. The value is
+   * case-insensitive.
+   *
+   * @param <E> the type of the enum
+   * @param enumClass the class of the enum
+   * @param name the name of the option, used in error messages
+   * @param value the value of the option, or null if none was given
+   * @return the enum constant named by the value
+   */
+  private static <E extends Enum<E>> E parseEnum(Class<E> enumClass, String name, String value) {
+    StringJoiner choices = new StringJoiner("|");
+    for (E constant : enumClass.getEnumConstants()) {
+      if (constant.name().equalsIgnoreCase(value)) {
+        return constant;
+      }
+      choices.add(constant.name().toLowerCase(Locale.ROOT));
+    }
+    throw new RuntimeException(name + " must be one of " + choices);
+  }
+}
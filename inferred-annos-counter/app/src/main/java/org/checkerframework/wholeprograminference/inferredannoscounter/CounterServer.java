@@ -0,0 +1,154 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Runs the inferred annos counter as a long-running server, so that scripts that run it many times
+ * pay for starting and warming up the JVM, and for reading the type qualifiers, only once.
+ *
+ * <p>The server reads requests either from standard input ({@code --server}) or from the
+ * connections to a Unix domain socket ({@code --server=/path/to/socket}). Each request is one line,
+ * with the command-line arguments of one run of the counter separated by tab characters, so that
+ * paths may contain spaces: e.g., "--format=json\t--batch\t/path/to/src\t/path/to/generated" or
+ * "/path/to/Foo.java\t/path/to/Foo-NullnessChecker.ajava". Relative paths are resolved against the
+ * working directory of the server.
+ *
+ * <p>The response to a request is the output that the counter would print to standard output for
+ * those arguments, followed by a line with just {@value #DONE}. If the request fails, the response
+ * is instead a single line that starts with {@value #ERROR}, followed by the message of the error.
+ * The request "{@value #SHUTDOWN}" stops the server once it has sent its response.
+ *
+ * <p>Requests are handled one at a time, in the order in which they arrive, and the connections to
+ * the socket are served one after the other. A batch request already uses every core.
+ */
+final class CounterServer {
+
+  /** The last line of the response to a request that succeeded. */
+  static final String DONE = "#done";
+
+  /** The start of the response to a request that failed. */
+  static final String ERROR = "#error ";
+
+  /** The request that stops the server. */
+  static final String SHUTDOWN = "--shutdown";
+
+  /** The type qualifiers to count, which are read only once. */
+  private final List<String> checkerPackage;
+
+  /** True once a {@value #SHUTDOWN} request has been handled. */
+  private boolean shutDown = false;
+
+  /**
+   * Creates a server.
+   *
+   * @param checkerPackage the type qualifiers to count
+   */
+  CounterServer(List<String> checkerPackage) {
+    this.checkerPackage = checkerPackage;
+  }
+
+  /**
+   * Serves the requests on the transport selected by the command-line options, until it is shut
+   * down or, for standard input, until standard input is closed.
+   *
+   * @param options the command-line options of the server
+   */
+  void serve(CounterOptions options) {
+    try {
+      if (options.serverSocket.isEmpty()) {
+        serve(System.in, System.out);
+      } else {
+        serveSocket(Paths.get(options.serverSocket));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("The server failed: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Serves the connections to a Unix domain socket, one after the other, until a {@value
+   * #SHUTDOWN} request. A file left at the path by an earlier server is replaced.
+   *
+   * @param socket the path of the socket
+   * @throws IOException if the socket cannot be created or a connection fails
+   */
+  private void serveSocket(Path socket) throws IOException {
+    Files.deleteIfExists(socket);
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(socket));
+      while (!shutDown) {
+        try (SocketChannel connection = server.accept()) {
+          serve(Channels.newInputStream(connection), Channels.newOutputStream(connection));
+        }
+      }
+    } finally {
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  /**
+   * Serves the requests read from a stream, until the end of the stream or a {@value #SHUTDOWN}
+   * request.
+   *
+   * @param in the stream of requests
+   * @param out the stream to which the responses are written
+   * @throws IOException if the requests cannot be read
+   */
+  void serve(InputStream in, OutputStream out) throws IOException {
+    BufferedReader requests = new BufferedReader(new InputStreamReader(in, UTF_8));
+    PrintStream responses = new PrintStream(out, false, UTF_8);
+    String request;
+    while (!shutDown && (request = requests.readLine()) != null) {
+      if (request.isEmpty()) {
+        continue;
+      }
+      responses.print(handle(request));
+      responses.flush();
+    }
+  }
+
+  /**
+   * Runs the counter for one request.
+   *
+   * @param request the arguments of the run, separated by tab characters
+   * @return the response, including the line that ends it
+   */
+  String handle(String request) {
+    if (request.equals(SHUTDOWN)) {
+      shutDown = true;
+      return DONE + "\n";
+    }
+    // The output is collected rather than written as it is produced, so that a request that fails
+    // halfway through does not leave a partial result before its error.
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (PrintStream out = new PrintStream(output, false, UTF_8)) {
+      CounterOptions options = CounterOptions.parse(request.split("\t", -1));
+      if (options.server) {
+        throw new RuntimeException("--server cannot be given in a request");
+      }
+      InferredAnnosCounter.run(options, checkerPackage, out);
+    } catch (RuntimeException e) {
+      // The response must be a single line, whatever the message of the error.
+      String message = String.valueOf(e.getMessage()).replaceAll("\\R", " ");
+      return ERROR + message + "\n";
+    }
+    return new String(output.toByteArray(), UTF_8) + DONE + "\n";
+  }
+}
@@ -0,0 +1,46 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.difflib.patch.AbstractDelta;
+import java.util.List;
+
+/**
+ * An algorithm that computes the differences between the normalized lines of a human-written file
+ * and those of an .ajava file. Implementations may keep scratch space between calls, so an instance
+ * must only be used by one thread at a time.
+ */
+public interface DiffAlgorithm {
+
+  /**
+   * Computes the deltas that turn the original lines into the revised lines, sorted by their
+   * position in the original lines. Consecutive deltas are separated by at least one line that is
+   * the same in both files.
+   *
+   * @param original the original lines
+   * @param revised the revised lines, interned by the same symbol table as the original lines
+   * @return the deltas between the two
+   */
+  List<AbstractDelta<String>> diff(InternedLines original, InternedLines revised);
+
+  /**
+   * Returns a new instance of the diff algorithm with the given name.
+   *
+   * @param name the name of a diff algorithm
+   * @return a new instance of that algorithm
+   */
+  static DiffAlgorithm forName(CounterOptions.DiffAlgorithmName name) {
+    switch (name) {
+      case MYERS:
+        return new MyersDiff();
+      case HISTOGRAM:
+        return new HistogramDiff();
+      case PATIENCE:
+        return new PatienceDiff();
+      case LINEAR:
+        return new LinearMyersDiff();
+      case AUTO:
+        return new AutoDiff();
+      default:
+        throw new RuntimeException("Unknown diff algorithm: " + name);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The annotations written by the human in the normalized lines of a file, for the diff engine. Each
+ * such annotation is on a line of its own, and is identified by an int, its site. The table maps
+ * each line to the site on it, and each site to its annotation, e.g., "@NonNull", which is also
+ * identified by an int. For each site, it counts the .ajava files that miss the annotation, and
+ * records the checkers whose .ajava file has it.
+ *
+ * <p>All of these are stored in int arrays, so recording a miss does not allocate anything.
+ */
+// The Index Checker cannot verify the indices into the arrays, which are sites smaller than
+// siteCount and lines that have been passed to add.
+@SuppressWarnings("index")
+final class DiffAnnotationSites {
+
+  /** A value in {@link #siteOfLine} that means that the line has no site. */
+  static final int NO_SITE = -1;
+
+  /** For each line, the site on it, or {@link #NO_SITE}. */
+  private int[] siteOfLine = new int[64];
+
+  /** For each site, its annotation. */
+  private int[] annotationOfSite = new int[16];
+
+  /**
+   * For each site, the amount by which its miss count goes up when its line is part of a delta.
+   * This is the number of annotations on the line that are equal to the whole line, which is
+   * always 1 for well-formed lines.
+   */
+  private int[] missesPerDeltaOfSite = new int[16];
+
+  /** For each site, the number of .ajava files that miss its annotation. */
+  private int[] missesOfSite = new int[16];
+
+  /** For each site, the number of times that the current .ajava file misses its annotation. */
+  private int[] missesInFileOfSite = new int[16];
+
+  /** The checkers whose .ajava file has the annotation of each site. */
+  private final CheckerHits hits;
+
+  /** The number of sites. */
+  private int siteCount = 0;
+
+  /** The name of each annotation, e.g., "@NonNull". */
+  private final List<String> annotationNames = new ArrayList<>();
+
+  /** The id of each annotation name. */
+  private final Map<String, Integer> annotationIds = new HashMap<>();
+
+  /**
+   * Creates an empty table.
+   *
+   * @param ajavaFiles the paths to the .ajava files that will be diffed with the file
+   */
+  DiffAnnotationSites(List<String> ajavaFiles) {
+    Arrays.fill(siteOfLine, NO_SITE);
+    hits = new CheckerHits(ajavaFiles);
+  }
+
+  /**
+   * Adds a site.
+   *
+   * @param line the index of the line of the site in the normalized lines
+   * @param annotationName the name of the annotation, without arguments, e.g., "@NonNull"
+   * @param missesPerDelta the amount by which the miss count of the site goes up when its line is
+   *     part of a delta
+   */
+  void add(int line, String annotationName, int missesPerDelta) {
+    if (line >= siteOfLine.length) {
+      int oldLength = siteOfLine.length;
+      siteOfLine = Arrays.copyOf(siteOfLine, Math.max(line + 1, oldLength * 2));
+      Arrays.fill(siteOfLine, oldLength, siteOfLine.length, NO_SITE);
+    }
+    if (siteCount == annotationOfSite.length) {
+      annotationOfSite = Arrays.copyOf(annotationOfSite, siteCount * 2);
+      missesPerDeltaOfSite = Arrays.copyOf(missesPerDeltaOfSite, siteCount * 2);
+      missesOfSite = Arrays.copyOf(missesOfSite, siteCount * 2);
+      missesInFileOfSite = Arrays.copyOf(missesInFileOfSite, siteCount * 2);
+    }
+    Integer annotation = annotationIds.get(annotationName);
+    if (annotation == null) {
+      annotation = annotationNames.size();
+      annotationNames.add(annotationName);
+      annotationIds.put(annotationName, annotation);
+    }
+    int site = siteCount++;
+    siteOfLine[line] = site;
+    annotationOfSite[site] = annotation;
+    missesPerDeltaOfSite[site] = missesPerDelta;
+  }
+
+  /**
+   * Returns the site on a line.
+   *
+   * @param line the index of a line in the normalized lines
+   * @return the site on the line, or {@link #NO_SITE}
+   */
+  int siteAt(int line) {
+    return line < siteOfLine.length ? siteOfLine[line] : NO_SITE;
+  }
+
+  /** Starts recording the misses of the next .ajava file. */
+  void startFile() {
+    Arrays.fill(missesInFileOfSite, 0, siteCount, 0);
+  }
+
+  /**
+   * Finishes recording the misses of an .ajava file: the checker of the file inferred the
+   * annotation of each site that the file does not miss.
+   *
+   * @param ajavaFile the index of the .ajava file in the list passed to the constructor
+   */
+  void finishFile(int ajavaFile) {
+    for (int site = 0; site < siteCount; site++) {
+      if (missesInFileOfSite[site] == 0) {
+        hits.hit(site, ajavaFile);
+      }
+    }
+  }
+
+  /**
+   * Records that a line is part of a delta between the human-written file and an .ajava file, so
+   * the .ajava file misses the annotation on the line, if any.
+   *
+   * @param line the index of a line in the normalized lines
+   */
+  void recordDeltaLine(int line) {
+    int site = siteAt(line);
+    if (site != NO_SITE) {
+      missesOfSite[site] += missesPerDeltaOfSite[site];
+      missesInFileOfSite[site] += missesPerDeltaOfSite[site];
+    }
+  }
+
+  /**
+   * Records that the annotation on a line is mismatched in an .ajava file, if the line has one.
+   *
+   * @param line the index of a line in the normalized lines
+   */
+  void recordMismatch(int line) {
+    int site = siteAt(line);
+    if (site != NO_SITE) {
+      missesOfSite[site]++;
+      missesInFileOfSite[site]++;
+    }
+  }
+
+  /**
+   * Records in the given counts each site whose annotation is in at least one of the .ajava files,
+   * and the checkers that inferred it.
+   *
+   * @param counts the counts to update
+   * @param ajavaFileCount the number of .ajava files
+   */
+  void addFoundTo(AnnotationCounts counts, int ajavaFileCount) {
+    hits.addCheckersTo(counts);
+    for (int site = 0; site < siteCount; site++) {
+      // If fewer .ajava files miss the annotation than there are .ajava files, then at least one
+      // of them got it right.
+      if (missesOfSite[site] < ajavaFileCount) {
+        counts.addSimilar(annotationNames.get(annotationOfSite[site]));
+      }
+      hits.addTo(counts, site, annotationNames.get(annotationOfSite[site]));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairs each human-written Java file in a source tree with the .ajava files that WPI generated for
+ * it, in a single pass over each tree. WPI names the .ajava files of {@code Foo.java} {@code
+ * Foo-Checker.ajava}, one per checker, in a directory for the package of {@code Foo}.
+ *
+ * <p>The two trees need not have the same layout: in inputExamples, for example, the Java files
+ * are under "src/java/gov/..." and the .ajava files under "src/gov/...". So the .ajava files are
+ * first indexed by the name of their class, and a class name that only one Java file has is
+ * enough to pair them. If several Java files have the same name, each .ajava file goes to the one
+ * whose directory shares the longest suffix with its own, i.e., the one in the same package. For
+ * each Java file and checker, only the .ajava files that share the longest suffix are kept, so an
+ * .ajava file for a class of the same name in another package is not counted twice.
+ */
+// The Index Checker cannot verify the indices into the names of the directories, which are bounded
+// by the shorter of the two.
+@SuppressWarnings("index")
+final class FilePairing {
+
+  /** The .ajava files of a Java file for one checker that match it best. */
+  private static final class Match {
+
+    /** The length of the suffix that the directories of the files share with the Java file. */
+    int score = -1;
+
+    /** The indices of the .ajava files. */
+    final List<Integer> ajavaFiles = new ArrayList<>();
+  }
+
+  /** This class is not instantiable. */
+  private FilePairing() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Pairs the Java files in a tree with the .ajava files in another tree.
+   *
+   * @param javaRoot the root of the tree of human-written Java files
+   * @param javaFiles the Java files in that tree
+   * @param ajavaRoot the root of the tree of .ajava files
+   * @param ajavaFiles the .ajava files in that tree
+   * @return for each Java file, in the same order, its .ajava files, in the order of ajavaFiles
+   */
+  static List<List<String>> pair(
+      Path javaRoot, List<Path> javaFiles, Path ajavaRoot, List<Path> ajavaFiles) {
+    Map<String, List<Integer>> javaFilesByClass = new HashMap<>();
+    for (int i = 0; i < javaFiles.size(); i++) {
+      String className = javaFiles.get(i).getFileName().toString().replaceFirst("\\.java$", "");
+      javaFilesByClass.computeIfAbsent(className, k -> new ArrayList<>()).add(i);
+    }
+
+    List<Map<String, Match>> matches = new ArrayList<>(javaFiles.size());
+    for (int i = 0; i < javaFiles.size(); i++) {
+      matches.add(new HashMap<>());
+    }
+    for (int a = 0; a < ajavaFiles.size(); a++) {
+      Path ajavaFile = ajavaFiles.get(a);
+      String fileName = ajavaFile.getFileName().toString();
+      int indexOfDash = fileName.indexOf('-');
+      if (indexOfDash == -1) {
+        continue;
+      }
+      List<Integer> candidates = javaFilesByClass.get(fileName.substring(0, indexOfDash));
+      if (candidates == null) {
+        continue;
+      }
+      // The Java files of the class whose directories share the longest suffix with this one.
+      Path ajavaDir = ajavaRoot.relativize(ajavaFile).getParent();
+      int bestScore = -1;
+      List<Integer> best = new ArrayList<>();
+      for (int j : candidates) {
+        Path javaDir = javaRoot.relativize(javaFiles.get(j)).getParent();
+        int score = commonSuffixLength(javaDir, ajavaDir);
+        if (score > bestScore) {
+          bestScore = score;
+          best.clear();
+        }
+        if (score == bestScore) {
+          best.add(j);
+        }
+      }
+      String checker = CheckerHits.checkerOf(ajavaFile.toString());
+      for (int j : best) {
+        Match match = matches.get(j).computeIfAbsent(checker, k -> new Match());
+        if (bestScore > match.score) {
+          match.score = bestScore;
+          match.ajavaFiles.clear();
+        }
+        if (bestScore == match.score) {
+          match.ajavaFiles.add(a);
+        }
+      }
+    }
+
+    List<List<String>> result = new ArrayList<>(javaFiles.size());
+    for (Map<String, Match> matchesOfFile : matches) {
+      List<Integer> indices = new ArrayList<>();
+      for (Match match : matchesOfFile.values()) {
+        indices.addAll(match.ajavaFiles);
+      }
+      Collections.sort(indices);
+      List<String> ajavaFilesOfFile = new ArrayList<>(indices.size());
+      for (int a : indices) {
+        ajavaFilesOfFile.add(ajavaFiles.get(a).toString());
+      }
+      result.add(ajavaFilesOfFile);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of names at the end of two relative paths that are the same.
+   *
+   * @param a a relative path, or null for the empty path
+   * @param b another relative path, or null for the empty path
+   * @return the length of the longest common suffix of the two paths
+   */
+  private static int commonSuffixLength(Path a, Path b) {
+    if (a == null || b == null) {
+      return 0;
+    }
+    int length = 0;
+    int aCount = a.getNameCount();
+    int bCount = b.getNameCount();
+    while (length < aCount
+        && length < bCount
+        && a.getName(aCount - 1 - length).equals(b.getName(bCount - 1 - length))) {
+      length++;
+    }
+    return length;
+  }
+}
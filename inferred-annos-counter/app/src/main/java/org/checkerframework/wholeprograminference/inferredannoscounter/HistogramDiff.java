@@ -0,0 +1,110 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+/**
+ * Histogram diff, as in JGit and git: the longest run of equal lines whose least frequent line
+ * occurs the fewest times in the original file is matched first, and the lines before and after it
+ * are then diffed recursively. Like {@link PatienceDiff}, this prefers to line up rare lines, such
+ * as declarations, over common ones, such as braces, but it also works when no line is unique. It
+ * is usually much faster than Myers' algorithm on files that differ a lot. A part of the files
+ * whose common lines all occur more than {@link #MAX_CHAIN_LENGTH} times is diffed by {@link
+ * LinearMyersDiff}.
+ */
+// The Index Checker cannot verify the indices into the scratch arrays, which are indexed by
+// symbols that are smaller than symbolCount or by indices into the original file.
+@SuppressWarnings("index")
+final class HistogramDiff extends LinearMyersDiff {
+
+  /** The number of occurrences above which a line is too common to be used to split the files. */
+  static final int MAX_CHAIN_LENGTH = 64;
+
+  /** For each symbol, the number of times it occurs in the current part of the original file. */
+  private int[] count = new int[0];
+
+  /**
+   * For each symbol that occurs in the current part of the original file, the index of its first
+   * occurrence there.
+   */
+  private int[] first = new int[0];
+
+  /**
+   * For each line of the current part of the original file, the index of the next occurrence of
+   * the same line in that part, or -1.
+   */
+  private int[] next = new int[0];
+
+  @Override
+  void match(int aLo, int aHi, int bLo, int bHi) {
+    if (count.length < symbolCount) {
+      count = new int[symbolCount];
+      first = new int[symbolCount];
+    }
+    if (next.length < a.length) {
+      next = new int[a.length];
+    }
+    for (int i = aHi - 1; i >= aLo; i--) {
+      int symbol = a[i];
+      next[i] = count[symbol] == 0 ? -1 : first[symbol];
+      first[symbol] = i;
+      count[symbol]++;
+    }
+
+    boolean found = false;
+    int bestAStart = 0;
+    int bestAEnd = 0;
+    int bestBStart = 0;
+    int bestBEnd = 0;
+    int bestCount = MAX_CHAIN_LENGTH;
+    int j = bLo;
+    while (j < bHi) {
+      int occurrences = count[b[j]];
+      if (occurrences == 0 || occurrences > bestCount) {
+        j++;
+        continue;
+      }
+      int nextJ = j + 1;
+      for (int i = first[b[j]]; i != -1; i = next[i]) {
+        // Extend the match of lines i and j in both directions, keeping track of the number of
+        // occurrences of its least frequent line.
+        int aStart = i;
+        int bStart = j;
+        int aEnd = i + 1;
+        int bEnd = j + 1;
+        int regionCount = occurrences;
+        while (aStart > aLo && bStart > bLo && a[aStart - 1] == b[bStart - 1]) {
+          aStart--;
+          bStart--;
+          regionCount = Math.min(regionCount, count[a[aStart]]);
+        }
+        while (aEnd < aHi && bEnd < bHi && a[aEnd] == b[bEnd]) {
+          regionCount = Math.min(regionCount, count[a[aEnd]]);
+          aEnd++;
+          bEnd++;
+        }
+        nextJ = Math.max(nextJ, bEnd);
+        if (!found || bestAEnd - bestAStart < aEnd - aStart || regionCount < bestCount) {
+          found = true;
+          bestAStart = aStart;
+          bestAEnd = aEnd;
+          bestBStart = bStart;
+          bestBEnd = bEnd;
+          bestCount = regionCount;
+        }
+      }
+      j = nextJ;
+    }
+
+    // Reset the counts, so that the recursive calls start from zero.
+    for (int i = aLo; i < aHi; i++) {
+      count[a[i]] = 0;
+    }
+    if (!found) {
+      super.match(aLo, aHi, bLo, bHi);
+      return;
+    }
+    for (int i = bestAStart; i < bestAEnd; i++) {
+      matchOf[i] = bestBStart + (i - bestAStart);
+    }
+    matchRange(aLo, bestAStart, bLo, bestBStart);
+    matchRange(bestAEnd, aHi, bestBEnd, bHi);
+  }
+}
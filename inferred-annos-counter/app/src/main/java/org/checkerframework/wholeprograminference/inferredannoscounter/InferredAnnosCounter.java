@@ -1,16 +1,19 @@
 package org.checkerframework.wholeprograminference.inferredannoscounter;
 
-import com.github.difflib.DiffUtils;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.github.difflib.patch.AbstractDelta;
 import com.github.difflib.patch.DeltaType;
-import com.github.difflib.patch.Patch;
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,23 +21,52 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.checkerframework.checker.index.qual.IndexFor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.checkerframework.framework.stub.RemoveAnnotationsForInference;
 
 /**
  * The entry point for the inferred annos counter. To run the program, you need to pass arguments.
  * The first argument should be the path to the human-written Java file. Optionally, you can provide
  * one or more paths to the corresponding computer-generated .ajava files. The path here should be
- * relative to "experiments\inferred-annos-counter." InferredAnnosCounter only takes one
- * human-written source file at a time. So in case it is needed to run multiple human-written files
- * with corresponding computer-generated files, InferredAnnosCounter needs to be invoked multiple
- * times. The way to run InferredAnnosCounter is like this: cd experiments\inferred-annos-counter
- * (going to the working directory) and then gradle run --args = "(a path to the human-written file)
- * (optionally one or more paths to the computer-generated files)". The result will not be in
- * alphabetical order.
+ * relative to "experiments\inferred-annos-counter." The way to run InferredAnnosCounter on one file
+ * is like this: cd experiments\inferred-annos-counter (going to the working directory) and then
+ * gradle run --args = "(a path to the human-written file) (optionally one or more paths to the
+ * computer-generated files)". The annotations of a single file are printed in no particular order.
+ *
+ * <p>To run InferredAnnosCounter on all the files of a project in one JVM, use batch mode: gradle
+ * run --args="--batch (the root of the human-written source tree) (the root of the tree of
+ * computer-generated files)". This pairs up the files itself, prints the result for each
+ * human-written file in alphabetical order of their paths, and then prints the combined result for
+ * the whole tree, with the annotations in alphabetical order. In batch mode, the files are
+ * processed in parallel; use --threads=N to control the number of threads (the default is the
+ * number of available processors).
+ *
+ * <p>By default, annotations are matched by their structural position in the AST (see {@link
+ * AstAnnotationMatcher}). Use --engine=diff to match them by diffing the normalized lines of the
+ * files instead, as earlier versions of this program did. With the AST engine, --match=subtype
+ * also counts an annotation as inferred if WPI inferred a subtype of it (see {@link
+ * QualifierHierarchy}).
+ *
+ * <p>The results for each file are cached in the user's cache directory, or with --cache-dir=DIR,
+ * in DIR (see {@link ResultCache}). Use --no-cache to disable the cache.
+ *
+ * <p>Use --format=json or --format=csv to write the results in a format that is easier for scripts
+ * to read (see {@link ReportWriter}).
  */
 public class InferredAnnosCounter {
 
+  /**
+   * The configuration of the parser. Comments are not attributed to nodes, so they are dropped
+   * when a compilation unit is printed.
+   */
+  private static final ParserConfiguration PARSER_CONFIGURATION =
+      new ParserConfiguration().setAttributeComments(false);
+
   /**
    * This enum classifies input lines. A line is OPEN if it contains the beginning of a multi-line
    * annotation, CLOSE if it contains the ending of a multi-line annotation. For other cases, it is
@@ -54,8 +86,14 @@ public class InferredAnnosCounter {
    * @return true of the first non-whitespace character of that line is a dot, false otherwise.
    */
   private static boolean firstIsDot(String line) {
-    String trimmed = line.trim();
-    return trimmed.length() == 0 ? false : trimmed.charAt(0) == '.';
+    // Like String.trim, skip all characters up to and including the space character.
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c > ' ') {
+        return c == '.';
+      }
+    }
+    return false;
   }
 
   /**
@@ -73,11 +111,11 @@ public class InferredAnnosCounter {
     if (line.length() == 0) {
       return false;
     }
-    String[] elements = line.trim().split(" ");
-    int n = elements.length;
-    if (n >= 1 && elements[n - 1].contains("@org")) {
-      String annotation = elements[n - 1];
-      annotation = trimParen(annotation);
+    // Only the last space-separated element of the line matters.
+    String trimmed = line.trim();
+    String lastElement = trimmed.substring(trimmed.lastIndexOf(' ') + 1);
+    if (lastElement.contains("@org")) {
+      String annotation = trimParen(lastElement);
       String[] breaks = annotation.split("[.]");
       int numberOfParts = breaks.length;
       if (numberOfParts < 2) {
@@ -145,34 +183,30 @@ public class InferredAnnosCounter {
    * @param fileContent a String containing all lines of the input file
    * @return inputFiles a list containing lines of the formatted file
    */
-  private static List<String> annoMultiToSingle(String fileContent) {
+  static List<String> annoMultiToSingle(String fileContent) {
     List<String> inputFiles = new ArrayList<>();
     String[] fileLines = fileContent.split("\n");
-    String tempLine = "";
+    // the multi-line annotation that is being joined, reused for all of them
+    StringBuilder tempLine = new StringBuilder();
     boolean inProgress = false;
     for (String originalFileLine : fileLines) {
       LineStatus status = checkLineStatus(originalFileLine);
       if (inProgress) {
+        /*
+        There are two cases that an anotation is multi-line, either by Google Java Format or by default.
+        For the first case, it's easy to understand that we don't want any space in the middle of an annotation.
+        For the second case, it will be easier for the Diff Algorithm if there's no space in the bracket.
+         */
+        tempLine.append(originalFileLine.trim());
         if (status == LineStatus.CLOSE) {
-          /*
-          There are two cases that an anotation is multi-line, either by Google Java Format or by default.
-          For the first case, it's easy to understand that we don't want any space in the middle of an annotation.
-          For the second case, it will be easier for the Diff Algorithm if there's no space in the bracket.
-           */
-          tempLine = tempLine + originalFileLine.trim();
-          inputFiles.add(tempLine);
+          inputFiles.add(tempLine.toString());
           inProgress = false;
-          tempLine = "";
-        } else {
-          originalFileLine = originalFileLine.trim();
-          tempLine = tempLine + originalFileLine;
+          tempLine.setLength(0);
         }
       } else if (status == LineStatus.COMPLETE || !originalFileLine.contains("@")) {
-        tempLine = tempLine + originalFileLine;
-        inputFiles.add(tempLine);
-        tempLine = "";
+        inputFiles.add(originalFileLine);
       } else if (status == LineStatus.OPEN && originalFileLine.contains("@")) {
-        tempLine = tempLine + originalFileLine;
+        tempLine.append(originalFileLine);
         inProgress = true;
       } else if (status == LineStatus.CLOSE) {
         // This line is irrelevant: it contains an entire annotation and also
@@ -194,41 +228,56 @@ public class InferredAnnosCounter {
    *     quickReadAndFormat
    * @return a list containing lines of the input files with each annotation in a separate line.
    */
-  private static List eachAnnotationInOneSingleLine(List<String> inputFiles) {
+  static List eachAnnotationInOneSingleLine(List<String> inputFiles) {
     List<String> formatted = new ArrayList<String>();
+    // the part of the current line that has not been added to formatted yet
+    StringBuilder resultLine = new StringBuilder();
+    LiteralScanner scanner = new LiteralScanner();
     for (int i = 0; i < inputFiles.size(); i++) {
       String line = inputFiles.get(i);
-      String temp[] = line.split(" ");
-      String resultLine = "";
+      resultLine.setLength(0);
+      scanner.reset(line);
       boolean inProgress = false;
-      for (String element : temp) {
-        int indexOfAnno = element.indexOf('@');
-        int indexOfElement = line.indexOf(element);
-        if (indexOfAnno != -1
-            && !inProgress
-            && indexOfElement != -1
-            && indexOfElement < line.length()
-            && notInStringLiteral(indexOfElement, line)) {
+      // The elements of the line are the parts between single spaces, like line.split(" "). As with
+      // split, empty elements at the end of the line are dropped, unless the line has no spaces.
+      int end = line.length();
+      if (line.indexOf(' ') != -1) {
+        while (end > 0 && line.charAt(end - 1) == ' ') {
+          end--;
+        }
+      }
+      int start = 0;
+      while (start < end || (start == 0 && end == 0 && line.indexOf(' ') == -1)) {
+        int elementEnd = line.indexOf(' ', start);
+        if (elementEnd == -1 || elementEnd > end) {
+          elementEnd = end;
+        }
+        int indexOfAnno = indexOf(line, '@', start, elementEnd);
+        if (indexOfAnno != -1 && !inProgress && !scanner.isInLiteral(indexOfAnno)) {
+          int elementStart = start;
           if (resultLine.length() > 0) {
             // sometimes the annotation can be in the middle of a declaration
-            formatted.add(resultLine + element.substring(0, indexOfAnno));
-            element = element.substring(indexOfAnno);
+            resultLine.append(line, start, indexOfAnno);
+            formatted.add(resultLine.toString());
+            elementStart = indexOfAnno;
           }
-          resultLine = "";
+          resultLine.setLength(0);
+          String element = line.substring(elementStart, elementEnd);
           if (checkLineStatus(element) == LineStatus.COMPLETE) {
             formatted.add(element);
           } else {
-            resultLine = resultLine + " " + element;
+            resultLine.append(' ').append(element);
             inProgress = true;
           }
         } else {
-          resultLine = resultLine + " " + element;
-          if (inProgress && element.indexOf(')') != -1) {
-            formatted.add(resultLine);
+          resultLine.append(' ').append(line, start, elementEnd);
+          if (inProgress && indexOf(line, ')', start, elementEnd) != -1) {
+            formatted.add(resultLine.toString());
             inProgress = false;
-            resultLine = "";
+            resultLine.setLength(0);
           }
         }
+        start = elementEnd + 1;
       }
       formatted.add(" " + resultLine);
     }
@@ -236,94 +285,85 @@ public class InferredAnnosCounter {
   }
 
   /**
-   * This method takes a line, which contains at least one annotation, and return the first
-   * annotation in that line.
+   * Returns the index of the first occurrence of a character in part of a string.
    *
-   * @param line a non-empty line containing at least one annotation
-   * @return the annotation which the line begins with
+   * @param str a string
+   * @param c the character to look for
+   * @param from the index at which to start looking, inclusive
+   * @param to the index at which to stop looking, exclusive
+   * @return the index of the first occurrence of c in str between from and to, or -1 if there is
+   *     none
    */
-  private static String getAnnos(String line) {
-    String[] temp = line.split(" ");
-    String result = "";
-    for (String word : temp) {
-      if (word.length() >= 1) {
-        int indexOfAnno = word.indexOf('@');
-        if (indexOfAnno != -1) {
-          int begin = indexOfAnno + 1;
-          result = word.substring(begin, word.length());
-          break;
-        }
+  private static int indexOf(String str, char c, int from, int to) {
+    for (int i = from; i < to && i < str.length(); i++) {
+      if (str.charAt(i) == c) {
+        return i;
       }
     }
-    return result;
+    return -1;
   }
 
   /**
-   * This method counts the number of annotations in a line
+   * Determines, in a single left-to-right pass over a line, which positions in that line are inside
+   * a string or character literal. Escape sequences such as \" are taken into account.
    *
-   * @param line a line
-   * @return the number of annotations in that line
+   * <p>Assumes that the beginning of the line is not already inside a literal.
    */
-  private static int countAnnos(String line) {
-    int count = 0;
-    boolean checkinString = true;
-    for (int i = 0; i < line.length(); i++) {
-      if (line.charAt(i) == '\"') {
-        if (checkinString) {
-          checkinString = false;
-        } else {
-          checkinString = true;
-        }
-      }
-      if (line.charAt(i) == '@' && checkinString) {
-        count++;
-      }
-    }
-    return count;
-  }
+  private static final class LiteralScanner {
 
-  /**
-   * This method checks if a particular index in a line is not inside a string literal.
-   *
-   * <p>Assumes that the beginning of {@code line} is not already inside a string literal.
-   *
-   * @param line a line
-   * @param index index to check
-   * @return false if index is inside a string literal, true otherwise
-   */
-  private static boolean notInStringLiteral(@IndexFor("#2") int index, String line) {
-    int before = 0;
-    for (int i = 0; i < index; i++) {
-      if (line.charAt(i) == '\"') {
-        before++;
-      }
-    }
-    if (before % 2 == 0) {
-      return true;
-    }
-    return false;
-  }
+    /** The line being scanned. */
+    private CharSequence line = "";
 
-  /**
-   * This method replaces a particular character at an index of a string with a new symbol.
-   *
-   * @param line a line that needs to be modified
-   * @param index a valid index of that line, which is non-negative and less than the length of line
-   * @param symbol the new character
-   * @return the line with the character at index replaced by symbol
-   */
-  private static String replaceAtIndex(String line, @IndexFor("#1") int index, String symbol) {
-    String result = line;
-    String firstPart = line.substring(0, index);
-    if (index + 1 < result.length()) {
-      String secondPart = result.substring(index + 1);
-      result = firstPart + symbol + secondPart;
-    } else {
-      // the element at index is also the last element of the string
-      result = firstPart + symbol;
+    /** The index of the next character of the line to scan. */
+    private int next = 0;
+
+    /**
+     * The character that closes the literal that the scan is in: a double quote, a single quote, or
+     * 0 if the scan is not in a literal.
+     */
+    private char closingQuote = 0;
+
+    /** True if the previous character was a backslash that starts an escape sequence. */
+    private boolean escaped = false;
+
+    /**
+     * Starts scanning a new line.
+     *
+     * @param line the line to scan
+     */
+    void reset(CharSequence line) {
+      this.line = line;
+      next = 0;
+      closingQuote = 0;
+      escaped = false;
     }
 
-    return result;
+    /**
+     * Returns true if the character at the given index is inside a literal. A quote that opens a
+     * literal is not inside it, but the quote that closes it is. The index must not be less than
+     * the index passed to the previous call since the last call to {@link #reset}, and the part of
+     * the line before the index must not have changed since then.
+     *
+     * @param index an index into the line
+     * @return true if the character at that index is inside a literal
+     */
+    boolean isInLiteral(int index) {
+      for (; next < index && next < line.length(); next++) {
+        char c = line.charAt(next);
+        if (closingQuote == 0) {
+          if (c == '"' || c == '\'') {
+            closingQuote = c;
+          }
+        } else if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == closingQuote) {
+          closingQuote = 0;
+        }
+      }
+      return closingQuote != 0;
+    }
   }
 
   /**
@@ -352,55 +392,78 @@ public class InferredAnnosCounter {
   private static String formatAnnotaionsWithArguments(String annotation) {
     // remove all whitespace inside of annotations with arguments, to prevent
     // whitespace-based diffs from producing incorrect results later
-    String result = annotation.replaceAll("\\s+", "");
+    StringBuilder result = new StringBuilder(annotation.length());
+    for (int i = 0; i < annotation.length(); i++) {
+      char c = annotation.charAt(i);
+      // the characters matched by \s in a regular expression
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+        result.append(c);
+      }
+    }
     /*
     First, we format cases involving matrix by changing all "}, {" to "|, |"
      */
+    LiteralScanner scanner = new LiteralScanner();
+    scanner.reset(result);
     int indexOfClose = result.indexOf("},");
     while (indexOfClose != -1) {
-      int indexOfOpen = result.indexOf('{', indexOfClose);
+      int indexOfOpen = result.indexOf("{", indexOfClose);
       // reaching the end of a line
       if (indexOfOpen < 0) {
-        return result;
+        return result.toString();
       }
       // When an annotation has multiple arguments, a }, .* { can occur
       // because of the argument names. In those cases, just continue the
       // loop.
-      if (result
-          .substring(indexOfClose, indexOfOpen)
-          .chars()
-          .anyMatch(c -> !(c == '{' || c == '}' || c == ','))) {
-        indexOfClose = result.indexOf("},", indexOfClose + 1);
-        continue;
+      boolean onlyBraces = true;
+      for (int i = indexOfClose; i < indexOfOpen; i++) {
+        char c = result.charAt(i);
+        if (!(c == '{' || c == '}' || c == ',')) {
+          onlyBraces = false;
+          break;
+        }
       }
-
-      if (notInStringLiteral(indexOfClose, result)) {
-        result = replaceAtIndex(result, indexOfClose, "|");
-        result = replaceAtIndex(result, indexOfOpen, "|");
-        indexOfClose = result.indexOf("},");
-      } else {
-        indexOfClose = result.indexOf("},", indexOfClose + 1);
+      // Replacing a brace by "|" does not change which parts of the line are literals, and never
+      // creates a new "},", so the search can continue after indexOfClose.
+      if (onlyBraces && !scanner.isInLiteral(indexOfClose)) {
+        result.setCharAt(indexOfClose, '|');
+        result.setCharAt(indexOfOpen, '|');
       }
+      indexOfClose = result.indexOf("},", indexOfClose + 1);
     }
     /*
     Second, we will remove all curly braces
      */
-    result = result.replace("{", "");
-    result = result.replace("}", "");
-    return result;
+    int length = 0;
+    for (int i = 0; i < result.length(); i++) {
+      char c = result.charAt(i);
+      if (c != '{' && c != '}') {
+        result.setCharAt(length++, c);
+      }
+    }
+    result.setLength(length);
+    return result.toString();
   }
 
   /**
-   * This method trims out all the comments in all lines from an input file
+   * Parses a Java or .ajava file. Comments are not attributed to any node, so printing the result
+   * produces the file without comments.
    *
-   * @param filePath the absolute path of the file to be trimmed out comments
-   * @return the content of the file without comments
+   * <p>Each file gets a new parser. JavaParser instances are not thread-safe, and a parser that is
+   * kept around holds on to the tokens of the last file that it parsed, which is more memory than
+   * the {@link MemoryBudget} accounts for when every thread keeps one.
+   *
+   * @param filePath the path of the file to parse
+   * @return the compilation unit of the file
    */
-  private static String ignoreComment(String filePath) {
+  static CompilationUnit parseJavaFile(String filePath) {
     try {
-      StaticJavaParser.getParserConfiguration().setAttributeComments(false);
-      CompilationUnit cu = StaticJavaParser.parse(new File(filePath));
-      return cu.toString();
+      ParseResult<CompilationUnit> result =
+          new JavaParser(PARSER_CONFIGURATION).parse(new File(filePath));
+      if (!result.isSuccessful()) {
+        throw new ParseProblemException(result.getProblems());
+      }
+      return result.getResult().get();
     } catch (Exception e) {
       throw new RuntimeException(
           "Could not read file: " + filePath + ". Check that it exists?" + e.getMessage());
@@ -466,38 +529,49 @@ public class InferredAnnosCounter {
     return anno.substring(0, para);
   }
 
+  /**
+   * Returns the number of annotations in a line that are equal to the whole line. A delta that
+   * contains the line of an annotation written by the human counts this many misses for it.
+   *
+   * @param line a line that consists of one annotation
+   * @return the number of annotations in the line that are equal to the line
+   */
+  private static int countSelfMatches(String line) {
+    int result = 0;
+    for (Object anno : extractString(line)) {
+      if (line.equals("@" + anno)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
   /**
    * This method returns a List containing all the annotations belonging to a line (with the
-   * {@literal @} symbol stripped off each annotation).
+   * {@literal @} symbol stripped off each annotation). An annotation with arguments extends to the
+   * first closing parenthesis after it; an annotation without arguments extends to the next space.
+   * Annotations inside string and character literals are skipped.
    *
    * @param str a line
    * @return a Linked List containing all annotations of str.
    */
   private static List extractString(String str) {
     List<String> result = new ArrayList<String>();
-    int countAnno = countAnnos(str);
-    String temp = str;
-    for (int i = 0; i < countAnno; i++) {
-      int index1 = temp.indexOf('@');
-      if (index1 == -1) {
-        throw new RuntimeException(
-            "The extractString method relies on the countAnnos method. Either the countAnnos method is wrong"
-                + "or it was not called properly");
-      }
-      String tempAnno = getAnnos(temp);
-      if (notInStringLiteral(index1, temp)) {
-        if (tempAnno.contains("(")) {
-          if (temp.contains(")")) {
-            tempAnno = temp.substring(index1 + 1, temp.indexOf(')') + 1);
-          } else {
-            tempAnno = temp.substring(index1 + 1);
-          }
-          result.add(tempAnno);
-        } else {
-          result.add(tempAnno);
-        }
+    LiteralScanner scanner = new LiteralScanner();
+    scanner.reset(str);
+    for (int index = str.indexOf('@'); index != -1; index = str.indexOf('@', index + 1)) {
+      if (scanner.isInLiteral(index)) {
+        continue;
+      }
+      int indexOfSpace = str.indexOf(' ', index);
+      int wordEnd = indexOfSpace == -1 ? str.length() : indexOfSpace;
+      if (indexOf(str, '(', index, wordEnd) != -1) {
+        int indexOfCloseParen = str.indexOf(')', index);
+        int annoEnd = indexOfCloseParen == -1 ? str.length() : indexOfCloseParen + 1;
+        result.add(str.substring(index + 1, annoEnd));
+      } else {
+        result.add(str.substring(index + 1, wordEnd));
       }
-      temp = temp.substring(index1 + 1);
     }
     return result;
   }
@@ -507,28 +581,43 @@ public class InferredAnnosCounter {
    * file and their corresponding quantity. The main reason we ignore some annotations is that they
    * are within a scope of SuprressWarnings.
    *
-   * @param filePath the path of the input file
+   * <p>This method runs RemoveAnnotationsForInference on a copy of the file, so it requires the
+   * Checker Framework's checker.jar on the classpath. It is only used if the --legacy-ignore option
+   * is given; otherwise, {@link SuppressedAnnotations} computes the same information from the AST.
+   *
+   * @param original the input file
    * @return a Map with the name of the annotation to ignore as key and the number of that
    *     annotation in the file as value
    */
-  public static Map<String, Integer> returnListOfAnnosToIgnore(String filePath) {
-    String tempDirectoryFile = "";
+  public static Map<String, Integer> returnListOfAnnosToIgnore(ParsedFile original) {
+    String filePath = original.path;
+    List<String> tempFileWithEachAnnotationOnASingleLine;
     Map<String, Integer> listOfAnnoToIgnore = new HashMap<>();
     try {
       Path file = Paths.get(filePath);
       Path tempDir = Files.createTempDirectory("mytemp");
       Path tempFile = tempDir.resolve(file.getFileName());
-      Files.copy(file, tempFile);
-      removePossiblePackage(tempFile.toString());
-      RemoveAnnotationsForInference.main(new String[] {tempDir.toString()});
-      tempDirectoryFile = tempFile.toString();
+      try {
+        Files.write(tempFile, removePossiblePackage(original.getContents()).getBytes(UTF_8));
+        // RemoveAnnotationsForInference uses the global StaticJavaParser, so in batch mode only one
+        // thread may run it at a time.
+        synchronized (RemoveAnnotationsForInference.class) {
+          Profiler.Span span = Profiler.start(Profiler.Phase.REMOVE_ANNOTATIONS);
+          RemoveAnnotationsForInference.main(new String[] {tempDir.toString()});
+          span.end();
+        }
+        tempFileWithEachAnnotationOnASingleLine =
+            ParsedFile.parse(tempFile.toString()).getNormalizedLines();
+      } finally {
+        Files.deleteIfExists(tempFile);
+        Files.delete(tempDir);
+      }
     } catch (IOException e) {
       throw new RuntimeException("Could not read file: " + filePath + ". Check that it exists?");
+    } catch (NoClassDefFoundError e) {
+      throw new RuntimeException(
+          "--legacy-ignore requires the Checker Framework's checker.jar on the classpath");
     }
-    List<String> tempFileWithOnlySingleLineAnno =
-        annoMultiToSingle(ignoreComment(tempDirectoryFile));
-    List<String> tempFileWithEachAnnotationOnASingleLine =
-        eachAnnotationInOneSingleLine(tempFileWithOnlySingleLineAnno);
     for (String tempFileLine : tempFileWithEachAnnotationOnASingleLine) {
       tempFileLine = extractCheckerPackage(tempFileLine);
       // this line is an annotation. So we need to clear all preceding and succeeding space.
@@ -553,23 +642,17 @@ public class InferredAnnosCounter {
    * method will not make the program go wrong because of two Java files with the same name but in
    * two different package
    *
-   * @param filePath the path of the file to remove possible package line
+   * @param fileContents the contents of the file, with no comments or blank space at the
+   *     beginning
+   * @return the contents of the file without the package line
    */
-  public static void removePossiblePackage(String filePath) {
-    // fileContents will have no comments or blank space at the beginning
-    String fileContents = ignoreComment(filePath);
+  public static String removePossiblePackage(String fileContents) {
     String[] fileLines = fileContents.split("\n");
     String firstLine = fileLines[0];
     if (!firstLine.contains("package")) {
-      return;
-    }
-    fileContents = fileContents.replace(firstLine, "");
-    try (FileWriter writer = new FileWriter(filePath)) {
-      writer.append(fileContents);
-      writer.flush();
-    } catch (IOException e) {
-      throw new RuntimeException();
+      return fileContents;
     }
+    return fileContents.replace(firstLine, "");
   }
 
   /**
@@ -613,18 +696,26 @@ public class InferredAnnosCounter {
   }
 
   /**
-   * The main entry point. Running this outputs the percentage of annotations in some source file
-   * that were inferred by WPI.
+   * Reads the list of type qualifiers that the inferred annos counter should consider from
+   * "type-qualifiers.txt" in the working directory. Each qualifier is returned in the simple format
+   * used by the rest of the program, such as "@NonNull".
    *
-   * <p>-param args the files. The first element is the original source file. All remaining elements
-   * should be corresponding .ajava files produced by WPI. This program assumes that all inputs have
-   * been converted to some unified formatting style to eliminate unnecessary changes (e.g., by
-   * running google java format on each input).
+   * @return the list of type qualifiers to count
    */
-  public static void main(String[] args) {
-    int fileCount = 0;
+  private static List<String> readTypeQualifiers() {
+    return readTypeQualifiers("type-qualifiers.txt");
+  }
+
+  /**
+   * Reads the list of type qualifiers that the inferred annos counter should consider from the
+   * given file, which has the same format as "type-qualifiers.txt".
+   *
+   * @param path the path to the file
+   * @return the list of type qualifiers to count
+   */
+  static List<String> readTypeQualifiers(String path) {
     List<String> checkerPackage = new ArrayList<String>();
-    File file1 = new File("type-qualifiers.txt");
+    File file1 = new File(path);
     try (FileReader fr = new FileReader(file1)) {
       BufferedReader br = new BufferedReader(fr);
       String str;
@@ -639,10 +730,318 @@ public class InferredAnnosCounter {
     } catch (Exception e) {
       throw new RuntimeException("Could not read type-qualifiers.txt, check if it exists?");
     }
+    return checkerPackage;
+  }
+
+  /**
+   * The main entry point. Running this outputs the percentage of annotations in some source file
+   * that were inferred by WPI.
+   *
+   * <p>-param args the files. The first element is the original source file. All remaining elements
+   * should be corresponding .ajava files produced by WPI. This program assumes that all inputs have
+   * been converted to some unified formatting style to eliminate unnecessary changes (e.g., by
+   * running google java format on each input).
+   *
+   * <p>Alternatively, if the first element is "--batch", the next two elements should be the root
+   * of a source tree of human-written Java files and the root of the source tree of .ajava files
+   * generated by WPI for it. In that case, the results are printed for each Java file in the
+   * human-written tree, followed by the combined results for the whole tree.
+   *
+   * <p>If the first element is "--server", the counter instead runs as a server that handles many
+   * such requests (see {@link CounterServer}).
+   */
+  public static void main(String[] args) {
+    List<String> checkerPackage = readTypeQualifiers();
+    CounterOptions options = CounterOptions.parse(args);
+    if (options.server) {
+      new CounterServer(checkerPackage).serve(options);
+      return;
+    }
+    run(options, checkerPackage, System.out);
+  }
+
+  /**
+   * Runs the inferred annos counter once, on a single file or (in batch mode) on a source tree.
+   *
+   * @param options the command-line options
+   * @param checkerPackage the list of type qualifiers to count
+   * @param out where to write the results
+   */
+  static void run(CounterOptions options, List<String> checkerPackage, PrintStream out) {
+    ResultCache cache = ResultCache.open(options, checkerPackage);
+    Profiler.enable(options.profile);
+
+    AnnotationCounts total;
+    if (options.files.isEmpty()) {
+      // Only the summary of the --annotation-stats is written.
+      total = AnnotationCounts.forTotals();
+    } else if (options.batch) {
+      total =
+          runBatch(
+              Paths.get(options.files.get(0)),
+              Paths.get(options.files.get(1)),
+              checkerPackage,
+              options,
+              cache,
+              ReportWriter.create(options, out));
+    } else {
+      String javaFile = options.files.get(0);
+      List<String> ajavaFiles = options.files.subList(1, options.files.size());
+      total =
+          cache.computeIfAbsent(
+              javaFile, ajavaFiles, () -> countFile(javaFile, ajavaFiles, checkerPackage, options));
 
-    if (args.length < 1) {
-      throw new RuntimeException("Provide at least one .java file");
+      // Output the results.
+      ReportWriter.create(options, out).writeFile(javaFile, ajavaFiles, total);
     }
+    cache.evict();
+    writeSummary(options, total);
+    printProfile(options);
+  }
+
+  /**
+   * Writes the table that summarizes the results for the whole project, if --summary was given.
+   *
+   * @param options the command-line options
+   * @param total the combined results for all files
+   */
+  private static void writeSummary(CounterOptions options, AnnotationCounts total) {
+    if (options.summary.isEmpty()) {
+      return;
+    }
+    ProjectSummary summary = new ProjectSummary();
+    for (String file : options.annotationStats) {
+      summary.read(Paths.get(file));
+    }
+    try (PrintStream out = new PrintStream(options.summary, "UTF-8")) {
+      summary.write(out, total);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write file: " + options.summary);
+    }
+  }
+
+  /**
+   * Prints the profile of the run to standard error, if --profile was given. The profile goes to
+   * standard error so that the results on standard output are the same as without --profile.
+   *
+   * @param options the command-line options
+   */
+  private static void printProfile(CounterOptions options) {
+    if (options.profile > 0) {
+      Profiler.print(System.err);
+    }
+  }
+
+  /**
+   * Runs the inferred annos counter on every Java file in a source tree, in a single JVM. Each
+   * Java file {@code Foo.java} is paired with the files named {@code Foo-*.ajava} in the same
+   * package in the tree of .ajava files (see {@link FilePairing}). The results for each
+   * file are printed in the same format as when running on a single file, followed by the
+   * combined results for all files.
+   *
+   * <p>The pairs are independent of each other, so they are processed in parallel by a pool of
+   * threads. The results are still printed in alphabetical order of the Java files, so the output
+   * does not depend on the number of threads. Before a thread processes a pair, it reserves the
+   * memory that the pair needs from a {@link MemoryBudget}, so that large files are processed fewer
+   * at a time.
+   *
+   * @param javaRoot the root of the source tree of human-written Java files
+   * @param ajavaRoot the root of the source tree of .ajava files generated by WPI
+   * @param checkerPackage the list of type qualifiers to count
+   * @param options the command-line options
+   * @param cache the cache of results for pairs of files that have not changed since the last run
+   * @param report where to write the results
+   * @return the combined results for all files
+   */
+  private static AnnotationCounts runBatch(
+      Path javaRoot,
+      Path ajavaRoot,
+      List<String> checkerPackage,
+      CounterOptions options,
+      ResultCache cache,
+      ReportWriter report) {
+    List<Path> javaFiles = findFiles(javaRoot, ".java");
+    List<List<String>> ajavaFilesOfEachFile =
+        FilePairing.pair(javaRoot, javaFiles, ajavaRoot, findFiles(ajavaRoot, ".ajava"));
+
+    // Each task adds its results to the total as soon as it finishes, so the total is updated
+    // by several threads at once.
+    AnnotationCounts total = AnnotationCounts.forTotals();
+    MemoryBudget budget = MemoryBudget.forOptions(options);
+    ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+    try {
+      List<Future<AnnotationCounts>> results = new ArrayList<>(javaFiles.size());
+      for (int i = 0; i < javaFiles.size(); i++) {
+        Path javaFile = javaFiles.get(i);
+        List<String> ajavaFiles = ajavaFilesOfEachFile.get(i);
+        results.add(
+            pool.submit(
+                () -> {
+                  String javaFilePath = javaFile.toString();
+                  AnnotationCounts counts =
+                      cache.computeIfAbsent(
+                          javaFilePath,
+                          ajavaFiles,
+                          () -> {
+                            int reserved = budget.reserve(javaFilePath, ajavaFiles);
+                            try {
+                              return countFile(javaFilePath, ajavaFiles, checkerPackage, options);
+                            } finally {
+                              budget.release(reserved);
+                            }
+                          });
+                  total.addAll(counts);
+                  return counts;
+                }));
+      }
+      // The results for each file are written as soon as it and all the files before it are
+      // done, and are then dropped, so that they do not pile up in memory.
+      for (int i = 0; i < javaFiles.size(); i++) {
+        AnnotationCounts counts = getResult(results.get(i));
+        results.set(i, null);
+        report.writeFile(javaFiles.get(i).toString(), ajavaFilesOfEachFile.get(i), counts);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    report.writeTotal(javaFiles.size(), total);
+    return total;
+  }
+
+  /**
+   * Waits for the result of a task run by {@link #runBatch}. If the task threw an exception, that
+   * exception is rethrown.
+   *
+   * @param result the result of the task
+   * @return the counts computed by the task
+   */
+  private static AnnotationCounts getResult(Future<AnnotationCounts> result) {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the results", e);
+    }
+  }
+
+  /**
+   * Returns all the files in the given directory tree whose names end with the given extension,
+   * in alphabetical order.
+   *
+   * @param root the root of the directory tree
+   * @param extension the file extension, such as ".java"
+   * @return the files in the tree with that extension
+   */
+  private static List<Path> findFiles(Path root, String extension) {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(extension))
+          .filter(Files::isRegularFile)
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read directory: " + root + ". Check that it exists?");
+    }
+  }
+
+  /**
+   * Counts how many of the annotations in a human-written Java file were inferred by WPI, i.e.,
+   * are present in the same position in at least one of the given .ajava files.
+   *
+   * @param javaFile the path to the human-written Java file
+   * @param ajavaFiles the paths to the corresponding .ajava files produced by WPI
+   * @param checkerPackage the list of type qualifiers to count
+   * @param options the command-line options, which select how annotations are matched
+   * @return the results for the given file
+   */
+  public static AnnotationCounts countFile(
+      String javaFile,
+      List<String> ajavaFiles,
+      List<String> checkerPackage,
+      CounterOptions options) {
+    Profiler.startFile(javaFile, ajavaFiles.size());
+    try {
+      // Each file is parsed and normalized only once, and the result is shared by every consumer.
+      // The annotations to ignore are found first, so that the diff engine can drop the
+      // normalized forms of the file as soon as it is done with them.
+      ParsedFile original = ParsedFile.parse(javaFile);
+      Map<String, Integer> listOfAnnoToIgnore;
+      if (options.legacyIgnore) {
+        listOfAnnoToIgnore = returnListOfAnnosToIgnore(original);
+      } else {
+        Profiler.Span span = Profiler.start(Profiler.Phase.IGNORE);
+        listOfAnnoToIgnore = SuppressedAnnotations.count(original.compilationUnit, checkerPackage);
+        span.end();
+      }
+      AnnotationCounts counts;
+      if (options.engine == CounterOptions.Engine.AST) {
+        QualifierHierarchy hierarchy =
+            options.match == CounterOptions.Match.SUBTYPE
+                ? QualifierHierarchy.forTypeQualifiers()
+                : null;
+        counts = AstAnnotationMatcher.countFile(original, ajavaFiles, checkerPackage, hierarchy);
+      } else {
+        counts =
+            countFileWithDiff(
+                original, ajavaFiles, checkerPackage, DiffAlgorithm.forName(options.diffAlgorithm));
+      }
+      for (Map.Entry<String, Integer> e : listOfAnnoToIgnore.entrySet()) {
+        counts.addIgnored(e.getKey(), e.getValue());
+      }
+      return counts;
+    } finally {
+      Profiler.finishFile();
+    }
+  }
+
+  /**
+   * Prepares the normalized lines of an .ajava file to be diffed with those of the human-written
+   * file: the package names are removed from the annotations, and the lines are trimmed. Blank
+   * lines are dropped.
+   *
+   * @param normalizedLines the normalized lines of an .ajava file
+   * @return the lines to diff
+   */
+  static List<String> linesToDiff(List<String> normalizedLines) {
+    List<String> newFile = new ArrayList<>();
+    for (String ajavaFileLine : normalizedLines) {
+      // if the condition is true, this line contains only one single annotation and nothing else.
+      if (ajavaFileLine.contains("@org")) {
+        ajavaFileLine = formatAnnotaionsWithArguments(ajavaFileLine);
+      }
+      ajavaFileLine = extractCheckerPackage(ajavaFileLine);
+      ajavaFileLine = ajavaFileLine.trim();
+      if (ajavaFileLine.length() != 0) {
+        newFile.add(ajavaFileLine);
+      }
+    }
+    return newFile;
+  }
+
+  /**
+   * Counts how many of the annotations in a human-written Java file were inferred by WPI, by
+   * diffing the normalized lines of the human-written file with those of each .ajava file. The
+   * annotations that should be ignored are not taken into account.
+   *
+   * @param original the human-written file
+   * @param ajavaFiles the paths to the corresponding .ajava files produced by WPI
+   * @param checkerPackage the list of type qualifiers to count
+   * @param diffAlgorithm the algorithm that diffs the normalized lines
+   * @return the results for the given file
+   */
+  private static AnnotationCounts countFileWithDiff(
+      ParsedFile original,
+      List<String> ajavaFiles,
+      List<String> checkerPackage,
+      DiffAlgorithm diffAlgorithm) {
+    AnnotationCounts counts = new AnnotationCounts();
 
     // These variables are maintained throughout:
 
@@ -650,19 +1049,10 @@ public class InferredAnnosCounter {
     // package names),
     // etc.
     List<String> originalFile = new ArrayList<>();
-    // specific annotations and the number of computer-written files missing them
-    Map<String, Integer> annoLocate = new HashMap<>();
-    // the name of the types of annotation and their numbers in the human-written file
-    Map<String, Integer> annoCount = new HashMap<>();
-    /* the name of the types of annotations and their "correct" numbers (meaning the number of annotations of that
-    type not missed by computer-written files) */
-    Map<String, Integer> annoSimilar = new HashMap<>();
-    Map<String, Integer> listOfAnnoToIgnore = returnListOfAnnosToIgnore(args[0]);
-    // the number of lines in the original file
-    int originalFileLineCount = 0;
-    List<String> inputFileWithOnlySingleLineAnno = annoMultiToSingle(ignoreComment(args[0]));
-    List<String> inputFileWithEachAnnoOnOneLine =
-        eachAnnotationInOneSingleLine(inputFileWithOnlySingleLineAnno);
+    // the annotations written by the human, and the number of computer-written files missing them
+    DiffAnnotationSites sites = new DiffAnnotationSites(ajavaFiles);
+    List<String> inputFileWithEachAnnoOnOneLine = original.getNormalizedLines();
+    Profiler.Span span = Profiler.start(Profiler.Phase.NORMALIZE);
     int originalFileLineIndex = 0;
     // Read the original file once to determine the annotations that written by the human.
     for (String originalFileLine : inputFileWithEachAnnoOnOneLine) {
@@ -675,46 +1065,36 @@ public class InferredAnnosCounter {
       // one CF annotation and nothing else.
       if (checkerPackage.contains(specialAnno)) {
         originalFileLine = formatAnnotaionsWithArguments(originalFileLine);
-        int numberOfAnno = annoCount.getOrDefault(specialAnno, 0);
-        annoCount.put(specialAnno, numberOfAnno + 1);
-        annoSimilar.put(specialAnno, 0);
-        // we want the keys in the map annoLocate has this following format: type_position
-        annoLocate.put(originalFileLine + "_" + originalFileLineIndex, 0);
+        counts.addOriginal(specialAnno);
+        sites.add(originalFileLineIndex, specialAnno, countSelfMatches(originalFileLine));
       }
       if (originalFileLine.length() != 0) {
         originalFile.add(originalFileLine);
         originalFileLineIndex++;
       }
-      originalFileLineCount = originalFileLineIndex;
-    }
-    // Iterate over the arguments from 1 to the end and diff each with the original,
-    // putting the results into diffs.
-    List<Patch<String>> diffs = new ArrayList<>(args.length - 1);
-    // Iterate over the arguments from 1 to the end and diff each with the original,
-    // putting the results into diffs.
-    for (int i = 1; i < args.length; ++i) {
-      List<String> inputFileWithOnlySingleLineAnno2 = annoMultiToSingle(ignoreComment(args[i]));
-      List<String> inputFileWithEachAnnoOnOneLine2 =
-          eachAnnotationInOneSingleLine(inputFileWithOnlySingleLineAnno2);
-      List<String> newFile = new ArrayList<>();
-      for (String ajavaFileLine : inputFileWithEachAnnoOnOneLine2) {
-        // if the condition is true, this line contains only one single annotation and nothing else.
-        if (ajavaFileLine.contains("@org")) {
-          ajavaFileLine = formatAnnotaionsWithArguments(ajavaFileLine);
-        }
-        ajavaFileLine = extractCheckerPackage(ajavaFileLine);
-        ajavaFileLine = ajavaFileLine.trim();
-        if (ajavaFileLine.length() != 0) {
-          newFile.add(ajavaFileLine);
-        }
-      }
-      diffs.add(DiffUtils.diff(originalFile, newFile));
     }
-    // Iterate over the list of diffs and process each. There must be args.length - 1 diffs, since
-    // there is one diff between args[0] and each other element of args.
-    for (int i = 0; i < args.length - 1; i++) {
-      Patch<String> patch = diffs.get(i);
-      List<AbstractDelta<String>> listOfDelta = patch.getDeltas();
+    // Every line of the original file and of the .ajava files is interned once, so the diffs
+    // compare ints rather than strings.
+    InternedLines.SymbolTable symbolTable = new InternedLines.SymbolTable();
+    InternedLines originalLines = symbolTable.intern(originalFile);
+    int originalSymbols = symbolTable.size();
+    original.dropNormalizedForms();
+    span.end();
+    // Iterate over the .ajava files, diff each with the original, and process the diff. Each
+    // diff is processed right away, and then the lines of the .ajava file are dropped from the
+    // symbol table, so only one .ajava file needs to be in memory at a time.
+    for (int i = 0; i < ajavaFiles.size(); i++) {
+      List<String> ajavaLines = ParsedFile.parse(ajavaFiles.get(i)).getNormalizedLines();
+      span = Profiler.start(Profiler.Phase.NORMALIZE);
+      List<String> newFile = linesToDiff(ajavaLines);
+      span.end();
+      span = Profiler.start(Profiler.Phase.DIFF);
+      List<AbstractDelta<String>> listOfDelta =
+          diffAlgorithm.diff(originalLines, symbolTable.intern(newFile));
+      span.end();
+      Profiler.recordDiff(ajavaFiles.get(i), originalFile.size(), newFile.size(), listOfDelta);
+      span = Profiler.start(Profiler.Phase.TALLY);
+      sites.startFile();
       for (int currPointer = 0; currPointer < listOfDelta.size(); currPointer++) {
         AbstractDelta<String> delta = listOfDelta.get(currPointer);
         List<String> sourceLines = delta.getSource().getLines();
@@ -726,71 +1106,23 @@ public class InferredAnnosCounter {
           AbstractDelta<String> nextDelta = listOfDelta.get(nextPointer);
           if (hasMismatchAnnotationInTheMiddle(delta, nextDelta)) {
             int indexOfMismatched = delta.getSource().getPosition() + sourceLines.size();
-            String mismatchName = originalFile.get(indexOfMismatched);
-            if (mismatchName.indexOf("@") == 0) {
-              String mismatchFullForm = mismatchName + "_" + indexOfMismatched;
-              int value = annoLocate.get(mismatchFullForm);
-              annoLocate.put(mismatchFullForm, value + 1);
-            }
+            sites.recordMismatch(indexOfMismatched);
           }
         }
         // get the position of the first line entry in the delta
         int position = delta.getSource().getPosition();
-        String result = "";
         for (int j = 0; j < sourceLines.size(); j++) {
-          String element = sourceLines.get(j);
-          if (element.contains("@")) {
-            // in case there are other components in the string element other than the
-            // annotation itself
-            List<String> annoList = extractString(element);
-            for (String anno : annoList) {
-              // this is the position of the current line entry
-              int localPosition = position + j;
-              result = "@" + anno + "_" + localPosition;
-              // update the data of AnnoLocate
-              if (annoLocate.containsKey(result)) {
-                int value = annoLocate.get(result);
-                annoLocate.put(result, value + 1);
-              }
-            }
-          }
-        }
-      }
-    }
-
-    // Update the data of AnnoSimilar.
-    for (Map.Entry<String, Integer> me : annoLocate.entrySet()) {
-      String annoName = me.getKey();
-      /* If the number of computer-written code missing that element is less than the total number of codes written
-      by computer, the at least one of those computer-written code must have gotten the annotation correct. */
-      if (me.getValue() < args.length - 1) {
-        // For example, if we have @Option_345, we will only need "@Option" since we want the
-        // general type here.
-        int index = annoName.indexOf("_");
-        if (index >= 0) {
-          annoName = annoName.substring(0, index);
+          sites.recordDeltaLine(position + j);
         }
-        annoName = trimParen(annoName);
-        int value = annoSimilar.get(annoName);
-        value = value + 1;
-        annoSimilar.put(annoName, value);
       }
+      sites.finishFile(i);
+      symbolTable.forgetAfter(originalSymbols);
+      span.end();
     }
 
-    // Output the results.
-    System.out.println();
-    for (Map.Entry<String, Integer> e : annoCount.entrySet()) {
-      int totalCount = e.getValue();
-      String value = e.getKey();
-      if (listOfAnnoToIgnore.containsKey(value)) {
-        totalCount = totalCount - listOfAnnoToIgnore.get(value);
-      }
-      int correctCount = annoSimilar.get(value);
-      // totalCount being equal to 0 meaning that all of the annotations with this type are within
-      // the bound of some SuppressWarnings
-      if (totalCount != 0) {
-        System.out.println(value + " got " + correctCount + "/" + totalCount);
-      }
-    }
+    span = Profiler.start(Profiler.Phase.TALLY);
+    sites.addFoundTo(counts, ajavaFiles.size());
+    span.end();
+    return counts;
   }
 }
@@ -0,0 +1,98 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The normalized lines of a file, together with a symbol for each line: an int such that two lines
+ * interned by the same {@link SymbolTable} are equal if and only if their symbols are equal. The
+ * diff engine compares symbols rather than strings, so each line is hashed only once, when it is
+ * interned, no matter how many files it is diffed against.
+ */
+public final class InternedLines {
+
+  /** The lines. */
+  public final List<String> lines;
+
+  /** The symbol of each line. */
+  final int[] symbols;
+
+  /**
+   * Creates an InternedLines.
+   *
+   * @param lines the lines
+   * @param symbols the symbol of each line
+   */
+  private InternedLines(List<String> lines, int[] symbols) {
+    this.lines = lines;
+    this.symbols = symbols;
+  }
+
+  /**
+   * Returns the number of lines.
+   *
+   * @return the number of lines
+   */
+  public int size() {
+    return symbols.length;
+  }
+
+  /**
+   * Assigns a symbol to each distinct line. Use one symbol table for a human-written file and all
+   * of its .ajava files, so that their symbols can be compared. Once an .ajava file has been
+   * diffed, {@link #forgetAfter} drops its lines from the table, so that the table does not grow
+   * with the number of .ajava files.
+   */
+  public static final class SymbolTable {
+
+    /** The symbol of each line that has been interned. */
+    private final Map<String, Integer> symbolsByLine = new HashMap<>();
+
+    /** The line of each symbol. */
+    private final List<String> lineOfSymbol = new ArrayList<>();
+
+    /**
+     * Returns the number of symbols in the table.
+     *
+     * @return the number of symbols in the table
+     */
+    public int size() {
+      return lineOfSymbol.size();
+    }
+
+    /**
+     * Forgets the lines that got their symbols after the table had the given number of symbols,
+     * so that they can be garbage-collected. Their symbols will be given to other lines, so
+     * InternedLines that use them must not be compared with InternedLines interned afterwards.
+     *
+     * @param size the number of symbols to keep, which was returned by {@link #size}
+     */
+    public void forgetAfter(int size) {
+      for (int symbol = lineOfSymbol.size() - 1; symbol >= size; symbol--) {
+        symbolsByLine.remove(lineOfSymbol.remove(symbol));
+      }
+    }
+
+    /**
+     * Interns the given lines.
+     *
+     * @param lines the lines to intern
+     * @return the lines and their symbols
+     */
+    public InternedLines intern(List<String> lines) {
+      int[] symbols = new int[lines.size()];
+      for (int i = 0; i < symbols.length; i++) {
+        Integer symbol = symbolsByLine.get(lines.get(i));
+        if (symbol == null) {
+          symbol = lineOfSymbol.size();
+          symbolsByLine.put(lines.get(i), symbol);
+          lineOfSymbol.add(lines.get(i));
+        }
+        symbols[i] = symbol;
+      }
+      return new InternedLines(lines, symbols);
+    }
+  }
+}
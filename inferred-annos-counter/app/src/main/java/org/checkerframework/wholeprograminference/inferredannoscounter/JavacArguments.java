@@ -0,0 +1,269 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Captures the arguments that a project's build passes to javac, so that the {@link WpiDriver} can
+ * replay the compilation in its own JVM (see {@link WarmJavac}). This generalizes
+ * extractJavacArgs.sh, which only handles Maven: the build is run once with debug logging, and
+ * the arguments of each javac invocation are taken from its output. Maven prints them on the line
+ * after "Command line options:", and Gradle after "Compiler arguments:" on the same line. A
+ * multi-project build has one invocation per subproject, in the order in which they ran.
+ *
+ * <p>The captured arguments are stored in a file, so that they are only captured once. Each
+ * argument is on its own line, in double quotes, with backslashes, double quotes, and line breaks
+ * escaped as in a Java string literal, so that empty arguments (such as the value of {@code
+ * -sourcepath} in Gradle builds) are kept. An empty line ends each invocation.
+ */
+// The Index Checker cannot verify the index of the arguments after the marker, which is within the
+// line since the marker was found in it.
+@SuppressWarnings("index")
+final class JavacArguments {
+
+  /** The text that precedes, on the same line, the arguments that Gradle passes to javac. */
+  private static final String GRADLE_MARKER = "Compiler arguments: ";
+
+  /** The text of the line that precedes the arguments that Maven passes to javac. */
+  private static final String MAVEN_MARKER = "Command line options:";
+
+  /** This class is not instantiable. */
+  private JavacArguments() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Returns the command that builds a project with debug logging, so that the arguments of javac
+   * are printed, depending on the build system of the project.
+   *
+   * @param projectDir the directory of the project
+   * @return the command that builds the project with debug logging
+   */
+  static String defaultCaptureCommand(Path projectDir) {
+    if (Files.exists(projectDir.resolve("pom.xml"))) {
+      return "mvn -X clean compile";
+    }
+    if (Files.exists(projectDir.resolve("gradlew"))) {
+      return "./gradlew clean compileJava --debug --no-build-cache";
+    }
+    if (Files.exists(projectDir.resolve("build.gradle"))
+        || Files.exists(projectDir.resolve("build.gradle.kts"))) {
+      return "gradle clean compileJava --debug --no-build-cache";
+    }
+    throw new RuntimeException(
+        "Could not find a pom.xml or build.gradle file in "
+            + projectDir
+            + ". Pass the command that prints the arguments of javac with --capture-command");
+  }
+
+  /**
+   * Returns the arguments of javac for a project, capturing them if they are not stored yet.
+   *
+   * @param file the file in which the arguments are stored
+   * @param projectDir the directory of the project
+   * @param captureCommand the command that builds the project and prints the arguments of javac
+   * @return the arguments of each javac invocation of the build
+   */
+  static List<List<String>> readOrCapture(Path file, Path projectDir, String captureCommand) {
+    if (Files.exists(file)) {
+      return read(file);
+    }
+    List<List<String>> invocations = capture(projectDir, captureCommand);
+    write(file, invocations);
+    return invocations;
+  }
+
+  /**
+   * Runs a build and returns the arguments of each javac invocation that it printed.
+   *
+   * @param projectDir the directory in which to run the build
+   * @param command the command that builds the project and prints the arguments of javac
+   * @return the arguments of each javac invocation
+   */
+  static List<List<String>> capture(Path projectDir, String command) {
+    List<List<String>> invocations = new ArrayList<>();
+    ProcessBuilder builder =
+        new ProcessBuilder("sh", "-c", command)
+            .directory(projectDir.toFile())
+            .redirectErrorStream(true);
+    try {
+      Process process = builder.start();
+      try (BufferedReader output =
+          new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) {
+        boolean afterMavenMarker = false;
+        String line;
+        while ((line = output.readLine()) != null) {
+          int indexOfMarker = line.indexOf(GRADLE_MARKER);
+          if (indexOfMarker != -1) {
+            invocations.add(
+                splitGradle(line.substring(indexOfMarker + GRADLE_MARKER.length())));
+          } else if (afterMavenMarker) {
+            invocations.add(split(line.replaceFirst("^\\[DEBUG\\]\\s*", "")));
+          }
+          afterMavenMarker = line.endsWith(MAVEN_MARKER);
+        }
+      }
+      process.waitFor();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not run command: " + command, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while running command: " + command, e);
+    }
+    if (invocations.isEmpty()) {
+      throw new RuntimeException(
+          "The output of \""
+              + command
+              + "\" does not contain the arguments of javac. Check that the build compiles the"
+              + " project and logs at the debug level");
+    }
+    return invocations;
+  }
+
+  /**
+   * Splits the arguments that Gradle printed. Gradle separates them with a single space, and does
+   * not quote them, so two consecutive spaces surround an empty argument, e.g., in {@code
+   * -sourcepath  -proc:none}. Options for the JVM of javac ("-J..."), which Gradle includes, are
+   * kept; see {@link WarmJavac#missingJvmOptions}.
+   *
+   * @param commandLine the arguments of javac, as printed by Gradle
+   * @return the arguments
+   */
+  static List<String> splitGradle(String commandLine) {
+    return new ArrayList<>(Arrays.asList(commandLine.replaceFirst("\\s+$", "").split(" ", -1)));
+  }
+
+  /**
+   * Splits a command line that the build printed into its arguments. Arguments are separated by
+   * whitespace, and may be quoted with single or double quotes; an empty pair of quotes is an empty
+   * argument. Options for the JVM of javac ("-J...") are kept; see {@link
+   * WarmJavac#missingJvmOptions}.
+   *
+   * @param commandLine the arguments of javac, as printed by the build
+   * @return the arguments
+   */
+  static List<String> split(String commandLine) {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = new StringBuilder();
+    boolean inArg = false;
+    char quote = 0;
+    for (char c : commandLine.toCharArray()) {
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          arg.append(c);
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+        inArg = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inArg) {
+          args.add(arg.toString());
+          arg.setLength(0);
+          inArg = false;
+        }
+      } else {
+        arg.append(c);
+        inArg = true;
+      }
+    }
+    if (inArg) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+
+  /**
+   * Reads the arguments stored by {@link #write}. Lines that are not quoted, as in the files of
+   * earlier versions, are read as they are.
+   *
+   * @param file the file in which they are stored
+   * @return the arguments of each javac invocation
+   */
+  static List<List<String>> read(Path file) {
+    List<List<String>> invocations = new ArrayList<>();
+    List<String> args = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(file, UTF_8)) {
+        if (line.isEmpty()) {
+          invocations.add(args);
+          args = new ArrayList<>();
+        } else if (line.length() >= 2 && line.startsWith("\"") && line.endsWith("\"")) {
+          args.add(unescape(line.substring(1, line.length() - 1)));
+        } else {
+          args.add(line);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read file: " + file + ". Check that it exists?");
+    }
+    if (!args.isEmpty()) {
+      invocations.add(args);
+    }
+    invocations.removeIf(List::isEmpty);
+    return invocations;
+  }
+
+  /**
+   * Stores the arguments of some javac invocations.
+   *
+   * @param file the file in which to store them
+   * @param invocations the arguments of each javac invocation
+   */
+  static void write(Path file, List<List<String>> invocations) {
+    List<String> lines = new ArrayList<>();
+    for (List<String> args : invocations) {
+      for (String arg : args) {
+        lines.add("\"" + escape(arg) + "\"");
+      }
+      lines.add("");
+    }
+    try {
+      Files.write(file, lines, UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write file: " + file, e);
+    }
+  }
+
+  /**
+   * Escapes the backslashes, double quotes, and line breaks of an argument.
+   *
+   * @param arg the argument
+   * @return the escaped argument, which is on one line
+   */
+  private static String escape(String arg) {
+    return arg.replace("\\", "\\\\")
+        .replace("\"", "\\\"")
+        .replace("\n", "\\n")
+        .replace("\r", "\\r");
+  }
+
+  /**
+   * Reverses {@link #escape}.
+   *
+   * @param escaped the escaped argument
+   * @return the argument
+   */
+  private static String unescape(String escaped) {
+    StringBuilder arg = new StringBuilder();
+    for (int i = 0; i < escaped.length(); i++) {
+      char c = escaped.charAt(i);
+      if (c == '\\' && i + 1 < escaped.length()) {
+        char next = escaped.charAt(++i);
+        arg.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        arg.append(c);
+      }
+    }
+    return arg.toString();
+  }
+}
@@ -0,0 +1,127 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.util.Arrays;
+
+/**
+ * The linear-space refinement of Myers' O(ND) difference algorithm, in the style of Hirschberg's
+ * algorithm: it searches forward from the start and backward from the end of the two files at the
+ * same time, until the two searches meet in the middle of a shortest edit script, and then recurses
+ * on the two halves. Like {@link MyersDiff}, it finds an edit script of minimal length, but it only
+ * needs memory proportional to the length of the files, whatever the edit distance. When there are
+ * several shortest edit scripts, it might choose a different one than {@link MyersDiff}.
+ *
+ * <p>The heuristic diff algorithms extend this class, and fall back to it on the parts of the files
+ * where their heuristics do not apply.
+ */
+// The Index Checker cannot verify the indices of the diagonals, which are bounded by the loop
+// structure of match.
+@SuppressWarnings("index")
+class LinearMyersDiff extends MatchingDiffAlgorithm {
+
+  /** For each forward diagonal, the furthest original line reached on it, or -1. */
+  private int[] forward = new int[0];
+
+  /** For each backward diagonal, the furthest original line reached on it, or -1. */
+  private int[] backward = new int[0];
+
+  @Override
+  void match(int aLo, int aHi, int bLo, int bHi) {
+    int n = aHi - aLo;
+    int m = bHi - bLo;
+    int maxD = (n + m + 1) / 2;
+    int offset = maxD;
+    int length = 2 * maxD + 2;
+    if (forward.length < length) {
+      forward = new int[length];
+      backward = new int[length];
+    }
+    Arrays.fill(forward, 0, length, -1);
+    Arrays.fill(backward, 0, length, -1);
+    forward[offset + 1] = 0;
+    backward[offset + 1] = 0;
+    int delta = n - m;
+    // If the difference in length is odd, the forward search is the one that finds the overlap.
+    boolean front = (delta & 1) != 0;
+    // The diagonals that have run off the edge of the edit graph are skipped.
+    int k1start = 0;
+    int k1end = 0;
+    int k2start = 0;
+    int k2end = 0;
+    for (int d = 0; d < maxD; d++) {
+      for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+        int k1Offset = offset + k1;
+        int x1;
+        if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) {
+          x1 = forward[k1Offset + 1];
+        } else {
+          x1 = forward[k1Offset - 1] + 1;
+        }
+        int y1 = x1 - k1;
+        while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+          x1++;
+          y1++;
+        }
+        forward[k1Offset] = x1;
+        if (x1 > n) {
+          k1end += 2;
+        } else if (y1 > m) {
+          k1start += 2;
+        } else if (front) {
+          int k2Offset = offset + delta - k1;
+          if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1) {
+            if (x1 >= n - backward[k2Offset]) {
+              split(aLo, aHi, bLo, bHi, x1, y1);
+              return;
+            }
+          }
+        }
+      }
+      for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+        int k2Offset = offset + k2;
+        int x2;
+        if (k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])) {
+          x2 = backward[k2Offset + 1];
+        } else {
+          x2 = backward[k2Offset - 1] + 1;
+        }
+        int y2 = x2 - k2;
+        while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+          x2++;
+          y2++;
+        }
+        backward[k2Offset] = x2;
+        if (x2 > n) {
+          k2end += 2;
+        } else if (y2 > m) {
+          k2start += 2;
+        } else if (!front) {
+          int k1Offset = offset + delta - k2;
+          if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+            int x1 = forward[k1Offset];
+            int y1 = offset + x1 - k1Offset;
+            if (x1 >= n - x2) {
+              split(aLo, aHi, bLo, bHi, x1, y1);
+              return;
+            }
+          }
+        }
+      }
+    }
+    // The two parts have no line in common.
+  }
+
+  /**
+   * Recurses on the two halves of a part of the edit graph.
+   *
+   * @param aLo the index of the first original line of the part
+   * @param aHi the index after the last original line of the part
+   * @param bLo the index of the first revised line of the part
+   * @param bHi the index after the last revised line of the part
+   * @param x the original line at which to split, relative to aLo
+   * @param y the revised line at which to split, relative to bLo
+   */
+  private void split(int aLo, int aHi, int bLo, int bHi, int x, int y) {
+    matchRange(aLo, aLo + x, bLo, bLo + y);
+    matchRange(aLo + x, aHi, bLo + y, bHi);
+  }
+}
@@ -0,0 +1,151 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.ChangeDelta;
+import com.github.difflib.patch.Chunk;
+import com.github.difflib.patch.DeleteDelta;
+import com.github.difflib.patch.InsertDelta;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A diff algorithm that works by matching up equal lines of the two files, such that the matched
+ * lines are in the same order in both files. The unmatched lines between two consecutive matched
+ * lines become one delta.
+ *
+ * <p>Subclasses implement {@link #match}, which is called on the part of the files that remains
+ * after removing their common prefix and suffix. Most subclasses split that part at a few matched
+ * lines and call {@link #matchRange} recursively on the pieces.
+ */
+// The Index Checker cannot verify the indices into the symbol arrays, which are bounded by the
+// ranges that are passed down the recursion.
+@SuppressWarnings("index")
+abstract class MatchingDiffAlgorithm implements DiffAlgorithm {
+
+  /** A value in {@link #matchOf} that means that the original line is not matched. */
+  static final int UNMATCHED = -1;
+
+  /** The symbols of the original lines of the current diff. */
+  int[] a = new int[0];
+
+  /** The symbols of the revised lines of the current diff. */
+  int[] b = new int[0];
+
+  /**
+   * For each original line of the current diff, the index of the revised line it is matched with,
+   * or {@link #UNMATCHED}.
+   */
+  int[] matchOf = new int[0];
+
+  /** One more than the largest symbol in the current diff. */
+  int symbolCount = 0;
+
+  @Override
+  public List<AbstractDelta<String>> diff(InternedLines original, InternedLines revised) {
+    a = original.symbols;
+    b = revised.symbols;
+    matchOf = new int[a.length];
+    Arrays.fill(matchOf, UNMATCHED);
+    symbolCount = 0;
+    for (int symbol : a) {
+      symbolCount = Math.max(symbolCount, symbol + 1);
+    }
+    for (int symbol : b) {
+      symbolCount = Math.max(symbolCount, symbol + 1);
+    }
+    matchRange(0, a.length, 0, b.length);
+    return toDeltas(original, revised, matchOf);
+  }
+
+  /**
+   * Matches the lines of a part of the original file with the lines of a part of the revised
+   * file. The common prefix and suffix of the two parts are matched directly, and the rest is
+   * passed to {@link #match}.
+   *
+   * @param aLo the index of the first original line of the part
+   * @param aHi the index after the last original line of the part
+   * @param bLo the index of the first revised line of the part
+   * @param bHi the index after the last revised line of the part
+   */
+  final void matchRange(int aLo, int aHi, int bLo, int bHi) {
+    while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+      matchOf[aLo++] = bLo++;
+    }
+    while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+      matchOf[--aHi] = --bHi;
+    }
+    if (aLo < aHi && bLo < bHi) {
+      match(aLo, aHi, bLo, bHi);
+    }
+  }
+
+  /**
+   * Matches the lines of a part of the original file with the lines of a part of the revised
+   * file, by setting {@link #matchOf}. Both parts are non-empty, their first lines differ, and
+   * their last lines differ.
+   *
+   * @param aLo the index of the first original line of the part
+   * @param aHi the index after the last original line of the part
+   * @param bLo the index of the first revised line of the part
+   * @param bHi the index after the last revised line of the part
+   */
+  abstract void match(int aLo, int aHi, int bLo, int bHi);
+
+  /**
+   * Converts matched lines into deltas.
+   *
+   * @param original the original lines
+   * @param revised the revised lines
+   * @param matchOf for each original line, the index of the revised line it is matched with, or
+   *     {@link #UNMATCHED}. The matched revised lines must be in increasing order.
+   * @return the deltas, sorted by their position in the original lines
+   */
+  static List<AbstractDelta<String>> toDeltas(
+      InternedLines original, InternedLines revised, int[] matchOf) {
+    List<AbstractDelta<String>> deltas = new ArrayList<>();
+    int i = 0;
+    int j = 0;
+    for (int nextI = 0; nextI <= matchOf.length; nextI++) {
+      int nextJ = nextI == matchOf.length ? revised.size() : matchOf[nextI];
+      if (nextJ == UNMATCHED) {
+        continue;
+      }
+      if (i < nextI || j < nextJ) {
+        deltas.add(delta(original, i, nextI, revised, j, nextJ));
+      }
+      i = nextI + 1;
+      j = nextJ + 1;
+    }
+    return deltas;
+  }
+
+  /**
+   * Returns the delta that replaces some original lines by some revised lines.
+   *
+   * @param original the original lines
+   * @param origStart the index of the first original line to replace
+   * @param origEnd the index after the last original line to replace
+   * @param revised the revised lines
+   * @param revStart the index of the first revised line
+   * @param revEnd the index after the last revised line
+   * @return a delete, insert, or change delta
+   */
+  static AbstractDelta<String> delta(
+      InternedLines original,
+      int origStart,
+      int origEnd,
+      InternedLines revised,
+      int revStart,
+      int revEnd) {
+    Chunk<String> source = new Chunk<>(origStart, original.lines.subList(origStart, origEnd));
+    Chunk<String> target = new Chunk<>(revStart, revised.lines.subList(revStart, revEnd));
+    if (origStart == origEnd) {
+      return new InsertDelta<>(source, target);
+    } else if (revStart == revEnd) {
+      return new DeleteDelta<>(source, target);
+    } else {
+      return new ChangeDelta<>(source, target);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the memory used by the files that are processed at the same time in batch mode. Before a
+ * thread processes a file, it reserves an estimate of the memory that the file will need, and it
+ * waits until enough of the budget is free. Only one .ajava file of a human-written file is in
+ * memory at a time, so the estimate is proportional to the size of the human-written file plus
+ * that of its largest .ajava file. Small files are processed on all threads at once, but large
+ * files are processed fewer at a time, so that they cannot use up the heap together.
+ *
+ * <p>A file whose estimate is larger than the whole budget reserves the whole budget, so it is
+ * processed on its own.
+ */
+final class MemoryBudget {
+
+  /**
+   * The number of bytes of heap that the counter needs for each byte of a source file: for its
+   * AST, its normalized lines, and the diffs. This was measured on the files in inputExamples,
+   * whose largest pair needs about 72 bytes per byte while both files are in memory, with some
+   * headroom for the garbage that is produced along the way.
+   */
+  static final int HEAP_BYTES_PER_SOURCE_BYTE = 100;
+
+  /** The number of bytes in a megabyte. */
+  private static final long MEGABYTE = 1024 * 1024;
+
+  /** The size of the budget, in megabytes. */
+  private final int megabytes;
+
+  /** The part of the budget that is free, in megabytes. */
+  private final Semaphore free;
+
+  /**
+   * Creates a budget.
+   *
+   * @param megabytes the size of the budget, in megabytes; must be positive
+   */
+  MemoryBudget(int megabytes) {
+    this.megabytes = megabytes;
+    this.free = new Semaphore(megabytes, true);
+  }
+
+  /**
+   * Creates the budget for the given options: --memory-limit if it was given, and otherwise three
+   * quarters of the maximum size of the heap.
+   *
+   * @param options the command-line options
+   * @return the budget
+   */
+  static MemoryBudget forOptions(CounterOptions options) {
+    if (options.memoryLimit > 0) {
+      return new MemoryBudget(options.memoryLimit);
+    }
+    long megabytes = Runtime.getRuntime().maxMemory() / 4 * 3 / MEGABYTE;
+    return new MemoryBudget((int) Math.max(1, Math.min(Integer.MAX_VALUE, megabytes)));
+  }
+
+  /**
+   * Reserves the memory needed to process a file, waiting until it is free. The caller must pass
+   * the result to {@link #release} once it is done with the file.
+   *
+   * @param javaFile the path to the human-written file
+   * @param ajavaFiles the paths to its .ajava files
+   * @return the amount of memory reserved, in megabytes
+   */
+  int reserve(String javaFile, List<String> ajavaFiles) {
+    long largestAjavaFile = 0;
+    for (String ajavaFile : ajavaFiles) {
+      largestAjavaFile = Math.max(largestAjavaFile, new File(ajavaFile).length());
+    }
+    long bytes = (new File(javaFile).length() + largestAjavaFile) * HEAP_BYTES_PER_SOURCE_BYTE;
+    int reserved = (int) Math.max(1, Math.min(megabytes, (bytes + MEGABYTE - 1) / MEGABYTE));
+    try {
+      free.acquire(reserved);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for memory to process " + javaFile, e);
+    }
+    return reserved;
+  }
+
+  /**
+   * Releases memory reserved by {@link #reserve}.
+   *
+   * @param reserved the result of {@link #reserve}
+   */
+  void release(int reserved) {
+    free.release(reserved);
+  }
+}
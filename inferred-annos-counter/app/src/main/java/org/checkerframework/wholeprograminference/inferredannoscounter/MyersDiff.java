@@ -0,0 +1,205 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.difflib.patch.AbstractDelta;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Myers' O(ND) difference algorithm on interned lines. This is the same algorithm, with the same
+ * choices between equally short edit scripts, as the MyersDiff class of java-diff-utils, so it
+ * produces the same deltas as DiffUtils.diff. Unlike that class, it compares ints instead of
+ * calling equals on the lines, and it keeps the nodes of the search path in int arrays, which are
+ * reused by later diffs, instead of allocating an object for each of them.
+ *
+ * <p>The number of nodes grows with the square of the edit distance, so this algorithm is slow and
+ * uses a lot of memory on two large files that differ a lot. {@link AutoDiff} switches to another
+ * algorithm for such files.
+ */
+// The Index Checker cannot verify the indices of the nodes, which are only created by newNode, or
+// the indices of the diagonals, which are bounded by the loop structure of buildPath.
+@SuppressWarnings("index")
+public final class MyersDiff implements DiffAlgorithm {
+
+  /** A node index that means "no node". */
+  private static final int NONE = -1;
+
+  /** The row (index into the original file) of each node. */
+  private int[] nodeI = new int[64];
+
+  /** The column (index into the revised file) of each node. */
+  private int[] nodeJ = new int[64];
+
+  /** The previous node of each node, or {@link #NONE}. */
+  private int[] nodePrev = new int[64];
+
+  /** Whether each node is a snake, i.e., the end of a run of equal lines. */
+  private boolean[] nodeSnake = new boolean[64];
+
+  /** Whether each node is the bootstrap node at which the search starts. */
+  private boolean[] nodeBootstrap = new boolean[64];
+
+  /** The number of nodes. */
+  private int nodeCount = 0;
+
+  @Override
+  public List<AbstractDelta<String>> diff(InternedLines original, InternedLines revised) {
+    List<AbstractDelta<String>> deltas = diff(original, revised, Integer.MAX_VALUE);
+    if (deltas == null) {
+      throw new IllegalStateException("could not find a diff path");
+    }
+    return deltas;
+  }
+
+  /**
+   * Computes the deltas that turn the original lines into the revised lines, unless the edit
+   * distance between them is larger than the given bound.
+   *
+   * @param original the original lines
+   * @param revised the revised lines
+   * @param maxEditDistance the largest edit distance to search for
+   * @return the deltas between the two, sorted by their position in the original lines, or null if
+   *     the edit distance is larger than maxEditDistance
+   */
+  List<AbstractDelta<String>> diff(
+      InternedLines original, InternedLines revised, int maxEditDistance) {
+    nodeCount = 0;
+    int end = buildPath(original.symbols, revised.symbols, maxEditDistance);
+    if (end == NONE) {
+      return null;
+    }
+    return buildRevision(end, original, revised);
+  }
+
+  /**
+   * Finds a shortest path through the edit graph of the two files.
+   *
+   * @param orig the symbols of the original lines
+   * @param rev the symbols of the revised lines
+   * @param maxEditDistance the largest edit distance to search for
+   * @return the last node of the path, or {@link #NONE} if the edit distance is larger than
+   *     maxEditDistance
+   */
+  private int buildPath(int[] orig, int[] rev, int maxEditDistance) {
+    int n = orig.length;
+    int m = rev.length;
+    int max = n + m + 1;
+    int maxD = (int) Math.min(max, maxEditDistance + 1L);
+    int size = 1 + 2 * max;
+    int middle = size / 2;
+    // For each diagonal k, the furthest-reaching node on it (at index middle + k).
+    int[] diagonal = new int[size];
+    Arrays.fill(diagonal, NONE);
+    diagonal[middle + 1] = newNode(0, -1, true, true, NONE);
+    for (int d = 0; d < maxD; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int kmiddle = middle + k;
+        int kplus = kmiddle + 1;
+        int kminus = kmiddle - 1;
+        int prev;
+        int i;
+        if ((k == -d) || (k != d && nodeI[diagonal[kminus]] < nodeI[diagonal[kplus]])) {
+          i = nodeI[diagonal[kplus]];
+          prev = diagonal[kplus];
+        } else {
+          i = nodeI[diagonal[kminus]] + 1;
+          prev = diagonal[kminus];
+        }
+        int j = i - k;
+        int node = newNode(i, j, false, false, prev);
+        while (i < n && j < m && orig[i] == rev[j]) {
+          i++;
+          j++;
+        }
+        if (i != nodeI[node]) {
+          node = newNode(i, j, true, false, node);
+        }
+        diagonal[kmiddle] = node;
+        if (i >= n && j >= m) {
+          return node;
+        }
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Converts a path through the edit graph into deltas.
+   *
+   * @param end the last node of the path
+   * @param original the original lines
+   * @param revised the revised lines
+   * @return the deltas, sorted by their position in the original lines
+   */
+  private List<AbstractDelta<String>> buildRevision(
+      int end, InternedLines original, InternedLines revised) {
+    List<AbstractDelta<String>> deltas = new ArrayList<>();
+    int path = end;
+    if (nodeSnake[path]) {
+      path = nodePrev[path];
+    }
+    while (path != NONE && nodePrev[path] != NONE && nodeJ[nodePrev[path]] >= 0) {
+      if (nodeSnake[path]) {
+        throw new IllegalStateException("bad diffpath: found snake when looking for diff");
+      }
+      int i = nodeI[path];
+      int j = nodeJ[path];
+      path = nodePrev[path];
+      deltas.add(MatchingDiffAlgorithm.delta(original, nodeI[path], i, revised, nodeJ[path], j));
+      if (nodeSnake[path]) {
+        path = nodePrev[path];
+      }
+    }
+    // List.sort is stable, as is the sort done by java-diff-utils.
+    deltas.sort(Comparator.comparingInt(delta -> delta.getSource().getPosition()));
+    return deltas;
+  }
+
+  /**
+   * Adds a node to the search path.
+   *
+   * @param i the row of the node
+   * @param j the column of the node
+   * @param snake whether the node is the end of a run of equal lines
+   * @param bootstrap whether the node is the bootstrap node
+   * @param prev the previous node. Unless the new node is a snake, its previous node is the last
+   *     snake before prev instead.
+   * @return the new node
+   */
+  private int newNode(int i, int j, boolean snake, boolean bootstrap, int prev) {
+    if (nodeCount == nodeI.length) {
+      int capacity = nodeCount * 2;
+      nodeI = Arrays.copyOf(nodeI, capacity);
+      nodeJ = Arrays.copyOf(nodeJ, capacity);
+      nodePrev = Arrays.copyOf(nodePrev, capacity);
+      nodeSnake = Arrays.copyOf(nodeSnake, capacity);
+      nodeBootstrap = Arrays.copyOf(nodeBootstrap, capacity);
+    }
+    int node = nodeCount++;
+    nodeI[node] = i;
+    nodeJ[node] = j;
+    nodePrev[node] = snake || prev == NONE ? prev : previousSnake(prev);
+    nodeSnake[node] = snake;
+    nodeBootstrap[node] = bootstrap;
+    return node;
+  }
+
+  /**
+   * Returns the last snake at or before the given node, skipping over non-snake nodes.
+   *
+   * @param node a node
+   * @return the last snake at or before node, or {@link #NONE} if there is none
+   */
+  private int previousSnake(int node) {
+    while (true) {
+      if (nodeBootstrap[node]) {
+        return NONE;
+      }
+      if (nodeSnake[node] || nodePrev[node] == NONE) {
+        return node;
+      }
+      node = nodePrev[node];
+    }
+  }
+}
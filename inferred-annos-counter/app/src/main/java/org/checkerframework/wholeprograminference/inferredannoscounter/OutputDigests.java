@@ -0,0 +1,208 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The digests of the contents of the files that one iteration of WPI wrote, by their paths
+ * relative to the directory that contains them. Two iterations produced the same results if their
+ * digests are equal, so the {@link WpiDriver} compares the digests of each iteration with those of
+ * the previous one instead of the files themselves, and only needs to read the files of each
+ * iteration once.
+ */
+// The Index Checker cannot verify that the end of the type in the name of a file, which is searched
+// for after its start, is not before it.
+@SuppressWarnings("index")
+final class OutputDigests {
+
+  /** The digests of no files, i.e., of the results before the first iteration. */
+  static final OutputDigests EMPTY = new OutputDigests(Collections.emptyMap());
+
+  /** The SHA-256 digest of each file, by its path relative to the directory. */
+  private final Map<String, byte[]> digests;
+
+  /**
+   * Creates the digests of some files.
+   *
+   * @param digests the digest of each file, by its relative path
+   */
+  private OutputDigests(Map<String, byte[]> digests) {
+    this.digests = digests;
+  }
+
+  /**
+   * Computes the digests of the files in a directory and its subdirectories. The files are read in
+   * parallel. A directory that does not exist has no files.
+   *
+   * @param dir the directory
+   * @return the digests of the files in the directory
+   */
+  static OutputDigests of(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return EMPTY;
+    }
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(dir)) {
+      files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read directory: " + dir, e);
+    }
+    Map<String, byte[]> digests = new ConcurrentHashMap<>();
+    try {
+      files.parallelStream()
+          .forEach(file -> digests.put(dir.relativize(file).toString(), digest(file)));
+    } catch (UncheckedIOException e) {
+      throw new RuntimeException("Could not read file in " + dir + ": " + e.getMessage(), e);
+    }
+    return new OutputDigests(new TreeMap<>(digests));
+  }
+
+  /**
+   * Returns the SHA-256 digest of the contents of a file.
+   *
+   * @param file the file
+   * @return the digest of its contents
+   */
+  private static byte[] digest(Path file) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new Error(e);
+    }
+    try {
+      return digest.digest(Files.readAllBytes(file));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the number of files.
+   *
+   * @return the number of files
+   */
+  int size() {
+    return digests.size();
+  }
+
+  /**
+   * Returns the results after an iteration that only compiled some classes: the files written by
+   * the iteration, and the files of the other classes from these results. The files of the compiled
+   * classes that the iteration did not write again were removed.
+   *
+   * @param written the digests of the files that the iteration wrote
+   * @param compiledTypes the qualified names of the top-level types that the iteration compiled
+   * @return the digests of the results after the iteration
+   */
+  OutputDigests updatedWith(OutputDigests written, Set<String> compiledTypes) {
+    Map<String, byte[]> result = new TreeMap<>(digests);
+    result.keySet().removeIf(file -> compiledTypes.contains(typeOf(file)));
+    result.putAll(written.digests);
+    return new OutputDigests(result);
+  }
+
+  /**
+   * Returns the top-level type whose results a file holds. WPI names the file of a type after the
+   * type and the checker, in the directory of its package, e.g., "pkg/Foo-NullnessChecker.ajava"
+   * (with the qualified name of the checker) for pkg.Foo.
+   *
+   * @param file the path of the file, relative to the output directory
+   * @return the qualified name of the type
+   */
+  static String typeOf(String file) {
+    int start = file.lastIndexOf(File.separatorChar) + 1;
+    int end = file.indexOf('-', start);
+    if (end == -1) {
+      end = file.indexOf('.', start);
+    }
+    if (end == -1) {
+      end = file.length();
+    }
+    return file.substring(0, end).replace(File.separatorChar, '.');
+  }
+
+  /**
+   * Returns the files that differ between an earlier set of results and this one.
+   *
+   * @param previous the digests of the earlier results
+   * @return the files that were added, modified, or removed since then
+   */
+  Changes changesSince(OutputDigests previous) {
+    Changes changes = new Changes();
+    for (Map.Entry<String, byte[]> e : digests.entrySet()) {
+      byte[] before = previous.digests.get(e.getKey());
+      if (before == null) {
+        changes.added.add(e.getKey());
+      } else if (!Arrays.equals(before, e.getValue())) {
+        changes.modified.add(e.getKey());
+      }
+    }
+    for (String file : previous.digests.keySet()) {
+      if (!digests.containsKey(file)) {
+        changes.removed.add(file);
+      }
+    }
+    Collections.sort(changes.added);
+    Collections.sort(changes.modified);
+    Collections.sort(changes.removed);
+    return changes;
+  }
+
+  /** The files that differ between two sets of results, by their relative paths. */
+  static final class Changes {
+
+    /** The files that only the later results have. */
+    final List<String> added = new ArrayList<>();
+
+    /** The files whose contents differ. */
+    final List<String> modified = new ArrayList<>();
+
+    /** The files that only the earlier results have. */
+    final List<String> removed = new ArrayList<>();
+
+    /**
+     * Returns true if the two sets of results are the same.
+     *
+     * @return true if no file was added, modified, or removed
+     */
+    boolean isEmpty() {
+      return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Returns the number of files that differ.
+     *
+     * @return the number of files that were added, modified, or removed
+     */
+    int size() {
+      return added.size() + modified.size() + removed.size();
+    }
+
+    @Override
+    public String toString() {
+      return added.size()
+          + " added, "
+          + modified.size()
+          + " modified, "
+          + removed.size()
+          + " removed";
+    }
+  }
+}
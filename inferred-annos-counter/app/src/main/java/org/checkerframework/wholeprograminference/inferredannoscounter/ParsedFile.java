@@ -0,0 +1,104 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.javaparser.ast.CompilationUnit;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Java or .ajava file that has been parsed, together with the normalized forms of it that the
+ * inferred annos counter needs. Each input file is parsed exactly once, and the same instance is
+ * handed to every consumer: the computation of the annotations to ignore, the tally of the
+ * annotations in the human-written file, and the matching engines. The normalized forms are
+ * computed the first time they are requested and then reused, until they are dropped to save
+ * memory.
+ *
+ * <p>Consumers must not modify the compilation unit. This class is not thread-safe, but each file
+ * is only processed by one thread at a time.
+ */
+public final class ParsedFile {
+
+  /** The path of the file. */
+  public final String path;
+
+  /** The AST of the file. Must not be modified. */
+  public final CompilationUnit compilationUnit;
+
+  /** The contents of the file without comments, or null if they have not been computed yet. */
+  private String contents = null;
+
+  /**
+   * The lines of the file after {@link InferredAnnosCounter#annoMultiToSingle} and {@link
+   * InferredAnnosCounter#eachAnnotationInOneSingleLine}, or null if they have not been computed
+   * yet.
+   */
+  private List<String> normalizedLines = null;
+
+  /**
+   * Creates a parsed file.
+   *
+   * @param path the path of the file
+   * @param compilationUnit the AST of the file
+   */
+  private ParsedFile(String path, CompilationUnit compilationUnit) {
+    this.path = path;
+    this.compilationUnit = compilationUnit;
+  }
+
+  /**
+   * Parses the given file.
+   *
+   * @param path the path of the file to parse
+   * @return the parsed file
+   */
+  public static ParsedFile parse(String path) {
+    Profiler.Span span = Profiler.start(Profiler.Phase.PARSE);
+    CompilationUnit compilationUnit = InferredAnnosCounter.parseJavaFile(path);
+    span.end();
+    return new ParsedFile(path, compilationUnit);
+  }
+
+  /**
+   * Returns the contents of the file without comments, as printed by JavaParser.
+   *
+   * @return the contents of the file without comments
+   */
+  public String getContents() {
+    if (contents == null) {
+      Profiler.Span span = Profiler.start(Profiler.Phase.PRINT);
+      contents = compilationUnit.toString();
+      span.end();
+    }
+    return contents;
+  }
+
+  /**
+   * Returns the lines of the file without comments, with each multi-line annotation on a single
+   * line and each annotation on a line of its own. The list must not be modified.
+   *
+   * @return the normalized lines of the file
+   */
+  @SuppressWarnings("unchecked") // eachAnnotationInOneSingleLine returns a raw list of strings
+  public List<String> getNormalizedLines() {
+    if (normalizedLines == null) {
+      // Printing is a phase of its own, so it is done before the normalization starts.
+      String printed = getContents();
+      Profiler.Span span = Profiler.start(Profiler.Phase.NORMALIZE);
+      List<String> singleLineAnnos = InferredAnnosCounter.annoMultiToSingle(printed);
+      normalizedLines =
+          Collections.unmodifiableList(
+              InferredAnnosCounter.eachAnnotationInOneSingleLine(singleLineAnnos));
+      span.end();
+    }
+    return normalizedLines;
+  }
+
+  /**
+   * Drops the contents and the normalized lines of the file, which are each about as large as the
+   * file, once no consumer needs them anymore. They are computed again if they are requested
+   * again.
+   */
+  public void dropNormalizedForms() {
+    contents = null;
+    normalizedLines = null;
+  }
+}
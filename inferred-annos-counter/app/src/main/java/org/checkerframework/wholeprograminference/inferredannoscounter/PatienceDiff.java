@@ -0,0 +1,100 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+/**
+ * Patience diff: the lines that occur exactly once in each file are matched first, keeping the
+ * longest run of them that is in the same order in both files, and the lines between two of them
+ * are then diffed recursively. The unique lines of a Java file are mostly declarations and
+ * statements rather than braces and blank lines, so the result tends to line up the declarations
+ * of the two files even when they differ a lot. A part of the files without any line that is unique
+ * in both of them is diffed by {@link LinearMyersDiff}.
+ */
+// The Index Checker cannot verify the indices into the scratch arrays, which are indexed by
+// symbols that are smaller than symbolCount.
+@SuppressWarnings("index")
+final class PatienceDiff extends LinearMyersDiff {
+
+  /** For each symbol, the number of times it occurs in the current part of the original file. */
+  private int[] countA = new int[0];
+
+  /** For each symbol, the number of times it occurs in the current part of the revised file. */
+  private int[] countB = new int[0];
+
+  /** For each symbol, the index of its last occurrence in the current part of the revised file. */
+  private int[] positionB = new int[0];
+
+  @Override
+  void match(int aLo, int aHi, int bLo, int bHi) {
+    if (countA.length < symbolCount) {
+      countA = new int[symbolCount];
+      countB = new int[symbolCount];
+      positionB = new int[symbolCount];
+    }
+    for (int i = aLo; i < aHi; i++) {
+      countA[a[i]]++;
+    }
+    for (int j = bLo; j < bHi; j++) {
+      countB[b[j]]++;
+      positionB[b[j]] = j;
+    }
+    // The unique lines, in the order of the original file.
+    int[] uniqueA = new int[Math.min(aHi - aLo, bHi - bLo)];
+    int[] uniqueB = new int[uniqueA.length];
+    int uniqueCount = 0;
+    for (int i = aLo; i < aHi && uniqueCount < uniqueA.length; i++) {
+      if (countA[a[i]] == 1 && countB[a[i]] == 1) {
+        uniqueA[uniqueCount] = i;
+        uniqueB[uniqueCount] = positionB[a[i]];
+        uniqueCount++;
+      }
+    }
+    // Reset the counts, so that the recursive calls start from zero.
+    for (int i = aLo; i < aHi; i++) {
+      countA[a[i]] = 0;
+    }
+    for (int j = bLo; j < bHi; j++) {
+      countB[b[j]] = 0;
+    }
+    if (uniqueCount == 0) {
+      super.match(aLo, aHi, bLo, bHi);
+      return;
+    }
+
+    // Patience sorting: find the longest increasing subsequence of uniqueB.
+    // pileTops[p] is the index of the unique line on top of pile p.
+    int[] pileTops = new int[uniqueCount];
+    // The unique line on top of the previous pile when each unique line was placed.
+    int[] predecessor = new int[uniqueCount];
+    int piles = 0;
+    for (int u = 0; u < uniqueCount; u++) {
+      int low = 0;
+      int high = piles;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (uniqueB[pileTops[mid]] < uniqueB[u]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      predecessor[u] = low == 0 ? -1 : pileTops[low - 1];
+      pileTops[low] = u;
+      if (low == piles) {
+        piles++;
+      }
+    }
+    int[] anchors = new int[piles];
+    for (int u = pileTops[piles - 1], p = piles - 1; u != -1; u = predecessor[u], p--) {
+      anchors[p] = u;
+    }
+
+    int prevA = aLo;
+    int prevB = bLo;
+    for (int u : anchors) {
+      matchRange(prevA, uniqueA[u], prevB, uniqueB[u]);
+      matchOf[uniqueA[u]] = uniqueB[u];
+      prevA = uniqueA[u] + 1;
+      prevB = uniqueB[u] + 1;
+    }
+    matchRange(prevA, aHi, prevB, bHi);
+  }
+}
@@ -0,0 +1,257 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs WPI separately for each checker, for --per-checker. A build runs all the checkers in one
+ * javac invocation, one after another, but WPI infers the annotations of each checker
+ * independently: each checker writes its own .ajava files ("Foo-Checker.ajava"), and only reads
+ * its own. So each checker can iterate on its own, and stop as soon as it reaches its fixpoint.
+ *
+ * <p>The Checker Framework writes the results of WPI in the working directory of javac, so the
+ * checkers cannot share a JVM. Instead, each checker gets its own directory, and a {@link
+ * WpiDriver} process that runs in it, concurrently with those of the other checkers. That process
+ * replays the project's javac invocations with only this checker, and with the class files in its
+ * own directory, and exits when the checker reaches its fixpoint. Its output goes to wpi.log in its
+ * directory. At the end, the results of all the checkers are moved to the temporary directory of
+ * this driver, which then has the same layout as when the checkers run together.
+ */
+// The Index Checker cannot verify the indices of the values of options, which follow the options
+// in well-formed arguments.
+@SuppressWarnings("index")
+final class PerCheckerWpi {
+
+  /** The options of the driver. */
+  private final WpiOptions options;
+
+  /** Where the progress of the driver is reported. */
+  private final PrintStream out;
+
+  /**
+   * Creates a runner of WPI per checker.
+   *
+   * @param options the options of the driver
+   * @param out where to report the progress of the driver
+   */
+  PerCheckerWpi(WpiOptions options, PrintStream out) {
+    this.options = options;
+    this.out = out;
+  }
+
+  /**
+   * Runs WPI for each checker until all of them reached their fixpoint or the maximum number of
+   * iterations, and merges their results in {@link WpiOptions#tempDir}.
+   *
+   * @param invocations the arguments of each javac invocation of the project
+   * @return true if every checker reached its fixpoint
+   */
+  boolean run(List<List<String>> invocations) {
+    List<String> checkers = checkersOf(invocations);
+    if (checkers.isEmpty()) {
+      throw new RuntimeException(
+          "--per-checker requires the arguments of javac to name the checkers with -processor");
+    }
+    Path checkersDir =
+        options.tempDir.resolveSibling(options.tempDir.getFileName() + "-checkers");
+    WpiDriver.deleteRecursively(checkersDir);
+    List<Process> processes = new ArrayList<>();
+    // When each process exited, as measured by System.nanoTime.
+    List<CompletableFuture<Long>> endTimes = new ArrayList<>();
+    long start = System.nanoTime();
+    for (String checker : checkers) {
+      Path dir = checkersDir.resolve(checker).toAbsolutePath();
+      WpiDriver.createDirectories(dir);
+      List<List<String>> checkerInvocations = new ArrayList<>();
+      for (int i = 0; i < invocations.size(); i++) {
+        Path classesDir = dir.resolve("classes").resolve(String.valueOf(i));
+        WpiDriver.createDirectories(classesDir);
+        checkerInvocations.add(argumentsFor(invocations.get(i), checker, classesDir));
+      }
+      JavacArguments.write(dir.resolve("javac-args.txt"), checkerInvocations);
+      ProcessBuilder builder =
+          new ProcessBuilder(commandFor(dir))
+              .directory(dir.toFile())
+              .redirectErrorStream(true)
+              .redirectOutput(dir.resolve("wpi.log").toFile());
+      try {
+        Process process = builder.start();
+        processes.add(process);
+        endTimes.add(process.onExit().thenApply(p -> System.nanoTime()));
+      } catch (IOException e) {
+        // Do not leave the drivers of the other checkers running.
+        for (Process process : processes) {
+          process.destroyForcibly();
+        }
+        throw new RuntimeException("Could not start the driver for " + checker, e);
+      }
+    }
+
+    boolean converged = true;
+    for (int i = 0; i < checkers.size(); i++) {
+      String checker = checkers.get(i);
+      double seconds = (endTimes.get(i).join() - start) / 1e9;
+      converged &= processes.get(i).exitValue() == 0;
+      Path dir = checkersDir.resolve(checker).toAbsolutePath();
+      out.println(
+          checker.substring(checker.lastIndexOf('.') + 1)
+              + ": "
+              + lastLine(dir.resolve("wpi.log"))
+              + " ("
+              + String.format(Locale.ROOT, "%.1f", seconds)
+              + " s, see "
+              + dir.resolve("wpi.log")
+              + ")");
+      merge(dir.resolve("tmp"));
+    }
+    out.println(
+        (converged ? "reached a fixpoint" : "did not reach a fixpoint")
+            + " for "
+            + (converged ? "all " : "some of ")
+            + checkers.size()
+            + " checkers; merged their results in "
+            + options.tempDir);
+    return converged;
+  }
+
+  /**
+   * Returns the checkers among the annotation processors of the javac invocations, in the order in
+   * which they are first named. The Checker Framework's checkers are named "...Checker"; other
+   * annotation processors are run with every checker.
+   *
+   * @param invocations the arguments of each javac invocation
+   * @return the fully-qualified names of the checkers
+   */
+  static List<String> checkersOf(List<List<String>> invocations) {
+    Set<String> checkers = new LinkedHashSet<>();
+    for (List<String> args : invocations) {
+      for (int i = 0; i < args.size() - 1; i++) {
+        if (args.get(i).equals("-processor")) {
+          for (String processor : args.get(i + 1).split(",")) {
+            if (processor.endsWith("Checker")) {
+              checkers.add(processor);
+            }
+          }
+        }
+      }
+    }
+    return new ArrayList<>(checkers);
+  }
+
+  /**
+   * Returns the arguments of a javac invocation that only runs one of the checkers, and puts the
+   * class files in another directory, so that the compilations of the checkers do not overwrite
+   * each other's.
+   *
+   * @param args the arguments of the javac invocation
+   * @param checker the checker to run
+   * @param classesDir the directory for the class files
+   * @return the arguments that only run the checker
+   */
+  static List<String> argumentsFor(List<String> args, String checker, Path classesDir) {
+    List<String> result = new ArrayList<>(args);
+    for (int i = 0; i < result.size() - 1; i++) {
+      if (result.get(i).equals("-d")) {
+        result.set(i + 1, classesDir.toString());
+      } else if (result.get(i).equals("-processor")) {
+        List<String> processors = new ArrayList<>(Arrays.asList(result.get(i + 1).split(",")));
+        processors.removeIf(p -> p.endsWith("Checker") && !p.equals(checker));
+        result.set(i + 1, String.join(",", processors));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the command that runs the driver for one checker, in a JVM like this one. It replays
+   * the arguments in the checker's directory, and passes on the options of this driver that apply
+   * to each checker.
+   *
+   * @param dir the checker's directory
+   * @return the command
+   */
+  private List<String> commandFor(Path dir) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    // All the settings of the JVM, including the exports of javac's packages that the checkers
+    // need, but not agents such as a debugger's, which would conflict between the processes.
+    for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (!arg.startsWith("-agentlib")
+          && !arg.startsWith("-agentpath")
+          && !arg.startsWith("-javaagent")
+          && !arg.startsWith("-Xrunjdwp")) {
+        command.add(arg);
+      }
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(WpiDriver.class.getName());
+    command.add("--project-dir=" + options.projectDir.toAbsolutePath());
+    command.add("--javac");
+    command.add("--javac-args=" + dir.resolve("javac-args.txt"));
+    command.add("--temp-dir=" + dir.resolve("tmp"));
+    if (options.incremental) {
+      command.add("--incremental");
+    }
+    if (options.maxIterations != 0) {
+      command.add("--max-iterations=" + options.maxIterations);
+    }
+    if (options.debug) {
+      command.add("--debug");
+    }
+    return command;
+  }
+
+  /**
+   * Moves the results of one checker to the temporary directory of this driver. The names of the
+   * files of different checkers differ, so none is overwritten.
+   *
+   * @param checkerTempDir the temporary directory of the checker's driver
+   */
+  private void merge(Path checkerTempDir) {
+    if (!Files.isDirectory(checkerTempDir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(checkerTempDir)) {
+      for (Path file : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        Path target = options.tempDir.resolve(checkerTempDir.relativize(file).toString());
+        Files.createDirectories(target.getParent());
+        WpiDriver.moveFile(file, target);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(
+          "Could not move the results from " + checkerTempDir + " to " + options.tempDir, e);
+    }
+  }
+
+  /**
+   * Returns the last line of a file, which is the outcome reported by a driver.
+   *
+   * @param file the file
+   * @return its last line, or the empty string if it has none
+   */
+  private static String lastLine(Path file) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file, UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read file: " + file + ". Check that it exists?");
+    }
+    return lines.isEmpty() ? "" : lines.get(lines.size() - 1);
+  }
+}
@@ -0,0 +1,448 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.difflib.patch.AbstractDelta;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Records where the time of a run of the inferred annos counter goes. For each phase of the
+ * processing of a file, such as parsing or diffing, it records the wall time and the number of
+ * bytes allocated by the thread that processes the file. With --profile, the totals for each phase
+ * and the slowest files are printed to standard error at the end of the run.
+ *
+ * <p>The same measurements are emitted as JFR events, whether or not --profile is given, so that a
+ * recording of a run (e.g., with {@code -XX:StartFlightRecording=filename=iac.jfr}) can be analyzed
+ * offline. The events cost almost nothing when no recording is in progress.
+ *
+ * <p>Each thread processes one file at a time, so the current file is kept in a thread-local. The
+ * phases of a file do not nest: each phase measures only its own work.
+ */
+// The Index Checker cannot verify the indices into the arrays of per-phase totals, which are
+// ordinals of Phase.
+@SuppressWarnings("index")
+final class Profiler {
+
+  /** The phases of the processing of a file. */
+  enum Phase {
+    /** Parsing a file with JavaParser. */
+    PARSE,
+    /** Printing a parsed file without comments. */
+    PRINT,
+    /** Joining multi-line annotations and putting each annotation on its own line. */
+    NORMALIZE,
+    /** Finding the annotations within the scope of a SuppressWarnings annotation. */
+    IGNORE,
+    /** Running RemoveAnnotationsForInference, with --legacy-ignore. */
+    REMOVE_ANNOTATIONS,
+    /** Finding the annotation sites in the ASTs of a file. */
+    MATCH,
+    /** Diffing the lines of a file with those of an .ajava file. */
+    DIFF,
+    /** Counting the annotations that were found. */
+    TALLY
+  }
+
+  /** The number of slowest files to report, or 0 if --profile was not given. */
+  private static volatile int slowestFiles = 0;
+
+  /** The file processed by each thread, or null if nothing is being recorded for it. */
+  private static final ThreadLocal<FileProfile> CURRENT = new ThreadLocal<>();
+
+  /** The number of times each phase ran, indexed by the ordinal of the phase. */
+  private static final long[] phaseCalls = new long[Phase.values().length];
+
+  /** The total wall time of each phase, in nanoseconds. */
+  private static final long[] phaseNanos = new long[Phase.values().length];
+
+  /** The total number of bytes allocated in each phase. */
+  private static final long[] phaseBytes = new long[Phase.values().length];
+
+  /** The number of files that were processed. */
+  private static long fileCount = 0;
+
+  /** The slowest files so far, with the fastest of them at the head. */
+  private static final PriorityQueue<FileProfile> slowest =
+      new PriorityQueue<>(Comparator.comparingLong((FileProfile f) -> f.nanos));
+
+  /** Measures the bytes allocated by each thread, if the JVM supports it. */
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /** The type of {@link FileEvent}. */
+  private static final EventType FILE_EVENT = EventType.getEventType(FileEvent.class);
+
+  /** A span that records nothing, for when nothing is being recorded. */
+  private static final Span NO_SPAN = new Span(Phase.PARSE, null);
+
+  /** This class is not instantiable. */
+  private Profiler() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Starts recording the totals of each phase and the slowest files, to print with {@link #print},
+   * and discards anything recorded before.
+   *
+   * @param slowestFiles the number of slowest files to report, or 0 to record nothing
+   */
+  static synchronized void enable(int slowestFiles) {
+    Profiler.slowestFiles = slowestFiles;
+    Arrays.fill(phaseCalls, 0);
+    Arrays.fill(phaseNanos, 0);
+    Arrays.fill(phaseBytes, 0);
+    fileCount = 0;
+    slowest.clear();
+  }
+
+  /**
+   * Starts recording the processing of a file by the current thread.
+   *
+   * @param javaFile the path to the human-written file
+   * @param ajavaFileCount the number of its .ajava files
+   */
+  static void startFile(String javaFile, int ajavaFileCount) {
+    if (slowestFiles == 0 && !FILE_EVENT.isEnabled()) {
+      CURRENT.remove();
+      return;
+    }
+    CURRENT.set(new FileProfile(javaFile, ajavaFileCount));
+  }
+
+  /** Finishes recording the processing of the file of the current thread. */
+  static void finishFile() {
+    FileProfile file = CURRENT.get();
+    if (file == null) {
+      return;
+    }
+    CURRENT.remove();
+    file.finish();
+    if (slowestFiles == 0) {
+      return;
+    }
+    synchronized (Profiler.class) {
+      fileCount++;
+      slowest.add(file);
+      if (slowest.size() > slowestFiles) {
+        slowest.poll();
+      }
+    }
+  }
+
+  /**
+   * Starts a phase of the processing of the file of the current thread. The caller must call
+   * {@link Span#end} on the result when the phase is done.
+   *
+   * @param phase the phase
+   * @return the span of the phase
+   */
+  static Span start(Phase phase) {
+    FileProfile file = CURRENT.get();
+    if (file == null) {
+      return NO_SPAN;
+    }
+    return new Span(phase, file);
+  }
+
+  /**
+   * Records the result of diffing the human-written file of the current thread with one of its
+   * .ajava files.
+   *
+   * @param ajavaFile the path to the .ajava file
+   * @param originalLines the number of lines of the human-written file
+   * @param revisedLines the number of lines of the .ajava file
+   * @param deltas the differences between them
+   */
+  static void recordDiff(
+      String ajavaFile, int originalLines, int revisedLines, List<AbstractDelta<String>> deltas) {
+    FileProfile file = CURRENT.get();
+    if (file == null) {
+      return;
+    }
+    int editLines = 0;
+    for (AbstractDelta<String> delta : deltas) {
+      editLines += delta.getSource().size() + delta.getTarget().size();
+    }
+    file.deltas += deltas.size();
+    file.editLines += editLines;
+    DiffEvent event = new DiffEvent();
+    if (event.shouldCommit()) {
+      event.javaFile = file.javaFile;
+      event.ajavaFile = ajavaFile;
+      event.originalLines = originalLines;
+      event.revisedLines = revisedLines;
+      event.deltas = deltas.size();
+      event.editLines = editLines;
+      event.commit();
+    }
+  }
+
+  /**
+   * Prints the totals of each phase and the slowest files. Files whose results were read from the
+   * cache are not included, since they were not processed.
+   *
+   * @param out where to print the profile
+   */
+  static synchronized void print(PrintStream out) {
+    out.println();
+    out.println("Profile of " + fileCount + " files:");
+    out.println(String.format(Locale.ROOT, "%-20s %10s %12s %14s", "phase", "calls", "ms", "MB"));
+    for (Phase phase : Phase.values()) {
+      int i = phase.ordinal();
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%-20s %10d %12.1f %14.1f",
+              phase.name().toLowerCase(Locale.ROOT),
+              phaseCalls[i],
+              phaseNanos[i] / 1e6,
+              phaseBytes[i] / 1e6));
+    }
+    List<FileProfile> files = new ArrayList<>(slowest);
+    files.sort(Comparator.comparingLong((FileProfile f) -> f.nanos).reversed());
+    out.println();
+    out.println("Slowest " + files.size() + " files:");
+    for (FileProfile file : files) {
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%10.1f ms %10.1f MB  %s (%d ajava files, %d deltas, %d edited lines)",
+              file.nanos / 1e6,
+              file.bytes / 1e6,
+              file.javaFile,
+              file.ajavaFileCount,
+              file.deltas,
+              file.editLines));
+    }
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far, or 0 if the JVM cannot
+   * measure it.
+   *
+   * @return the number of bytes allocated by the current thread
+   */
+  private static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) THREADS)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  /** The measurements of the processing of one file. */
+  private static final class FileProfile {
+
+    /** The path to the human-written file. */
+    final String javaFile;
+
+    /** The number of its .ajava files. */
+    final int ajavaFileCount;
+
+    /** The value of {@link System#nanoTime} when the processing of the file started. */
+    private final long startNanos;
+
+    /** The value of {@link #allocatedBytes} when the processing of the file started. */
+    private final long startBytes;
+
+    /** The JFR event for the file. */
+    private final FileEvent event = new FileEvent();
+
+    /** The wall time of the processing of the file, in nanoseconds, once it is finished. */
+    long nanos;
+
+    /** The number of bytes allocated while processing the file, once it is finished. */
+    long bytes;
+
+    /** The number of deltas between the file and all of its .ajava files. */
+    int deltas = 0;
+
+    /** The number of lines in those deltas. */
+    int editLines = 0;
+
+    /**
+     * Starts recording the processing of a file.
+     *
+     * @param javaFile the path to the human-written file
+     * @param ajavaFileCount the number of its .ajava files
+     */
+    FileProfile(String javaFile, int ajavaFileCount) {
+      this.javaFile = javaFile;
+      this.ajavaFileCount = ajavaFileCount;
+      event.begin();
+      startNanos = System.nanoTime();
+      startBytes = allocatedBytes();
+    }
+
+    /** Finishes recording the processing of the file. */
+    void finish() {
+      nanos = System.nanoTime() - startNanos;
+      bytes = allocatedBytes() - startBytes;
+      if (event.shouldCommit()) {
+        event.javaFile = javaFile;
+        event.ajavaFiles = ajavaFileCount;
+        event.allocated = bytes;
+        event.deltas = deltas;
+        event.editLines = editLines;
+        event.commit();
+      }
+    }
+  }
+
+  /** A phase of the processing of a file that is in progress. */
+  static final class Span {
+
+    /** The phase. */
+    private final Phase phase;
+
+    /** The file, or null if nothing is recorded for it. */
+    private final FileProfile file;
+
+    /** The value of {@link System#nanoTime} when the phase started. */
+    private final long startNanos;
+
+    /** The value of {@link #allocatedBytes} when the phase started. */
+    private final long startBytes;
+
+    /** The JFR event for the phase, or null if nothing is recorded. */
+    private final PhaseEvent event;
+
+    /**
+     * Starts a phase.
+     *
+     * @param phase the phase
+     * @param file the file, or null if nothing should be recorded
+     */
+    Span(Phase phase, FileProfile file) {
+      this.phase = phase;
+      this.file = file;
+      if (file == null) {
+        event = null;
+        startNanos = 0;
+        startBytes = 0;
+        return;
+      }
+      event = new PhaseEvent();
+      event.begin();
+      startNanos = System.nanoTime();
+      startBytes = allocatedBytes();
+    }
+
+    /** Ends the phase, and records its wall time and allocated bytes. */
+    void end() {
+      if (file == null) {
+        return;
+      }
+      long nanos = System.nanoTime() - startNanos;
+      long bytes = allocatedBytes() - startBytes;
+      if (event.shouldCommit()) {
+        event.javaFile = file.javaFile;
+        event.phase = phase.name().toLowerCase(Locale.ROOT);
+        event.allocated = bytes;
+        event.commit();
+      }
+      if (slowestFiles == 0) {
+        return;
+      }
+      synchronized (Profiler.class) {
+        phaseCalls[phase.ordinal()]++;
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseBytes[phase.ordinal()] += bytes;
+      }
+    }
+  }
+
+  /** A JFR event for the processing of one human-written file and its .ajava files. */
+  @Name("org.checkerframework.InferredAnnosCounter.File")
+  @Label("Inferred Annos Counter File")
+  @Category("Inferred Annos Counter")
+  @Description("The processing of one human-written file and its .ajava files")
+  static final class FileEvent extends Event {
+
+    /** The path to the human-written file. */
+    @Label("Java File")
+    String javaFile;
+
+    /** The number of .ajava files. */
+    @Label("Ajava Files")
+    int ajavaFiles;
+
+    /** The number of bytes allocated while processing the file. */
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    /** The number of deltas between the file and its .ajava files. */
+    @Label("Deltas")
+    int deltas;
+
+    /** The number of lines in those deltas. */
+    @Label("Edited Lines")
+    int editLines;
+  }
+
+  /** A JFR event for one phase of the processing of a file. */
+  @Name("org.checkerframework.InferredAnnosCounter.Phase")
+  @Label("Inferred Annos Counter Phase")
+  @Category("Inferred Annos Counter")
+  @Description("One phase of the processing of a file, such as parsing or diffing")
+  static final class PhaseEvent extends Event {
+
+    /** The path to the human-written file. */
+    @Label("Java File")
+    String javaFile;
+
+    /** The phase, e.g., "parse". */
+    @Label("Phase")
+    String phase;
+
+    /** The number of bytes allocated in the phase. */
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+  }
+
+  /** A JFR event for the diff of a human-written file with one of its .ajava files. */
+  @Name("org.checkerframework.InferredAnnosCounter.Diff")
+  @Label("Inferred Annos Counter Diff")
+  @Category("Inferred Annos Counter")
+  @Description("The diff of a human-written file with one of its .ajava files")
+  static final class DiffEvent extends Event {
+
+    /** The path to the human-written file. */
+    @Label("Java File")
+    String javaFile;
+
+    /** The path to the .ajava file. */
+    @Label("Ajava File")
+    String ajavaFile;
+
+    /** The number of lines of the human-written file. */
+    @Label("Original Lines")
+    int originalLines;
+
+    /** The number of lines of the .ajava file. */
+    @Label("Revised Lines")
+    int revisedLines;
+
+    /** The number of deltas. */
+    @Label("Deltas")
+    int deltas;
+
+    /** The number of lines in the deltas. */
+    @Label("Edited Lines")
+    int editLines;
+  }
+}
@@ -0,0 +1,211 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The table that summarizes the results for a whole project, with one row per annotation and the
+ * columns "Annotation", "Original count" (the number of annotations of that kind in the original
+ * program), "Inferred" (the number inferred by WPI), "Original inferred count" (the number of the
+ * original annotations that WPI inferred), and "Original inferred %".
+ *
+ * <p>The first two counts come from files that RunWPI.py produces, which are read with {@link
+ * #read}: the output of the Checker Framework's AnnotationStatistics on the original program
+ * ("Human-written.txt"), the output of compute-annos-inferred.sh ("Generated.txt"), or a table
+ * that was already written ("AnnotationStats.csv"). Each file adds to the counts, so the rows of an
+ * annotation that appears more than once (e.g., one inferred by several checkers) are combined.
+ * The "Original inferred count" comes from the totals of the inferred annos counter. The counter
+ * identifies annotations by their simple names, so each row gets the total of the annotation with
+ * the same simple name; an annotation that the counter found but that is in none of the files gets
+ * a row of its own, under its simple name, with the number that the counter counted as its
+ * "Original count".
+ */
+// The Index Checker cannot verify the indices of the columns, which are checked against the number
+// of columns of the header.
+@SuppressWarnings("index")
+final class ProjectSummary {
+
+  /** The header row of the table. */
+  static final String HEADER =
+      "Annotation,Original count,Inferred,Original inferred count,Original inferred %";
+
+  /**
+   * The line of the output of AnnotationStatistics after which it lists each annotation and its
+   * count.
+   */
+  private static final String ANNOTATION_STATISTICS_START = "Found annotations:";
+
+  /**
+   * The line of the output of compute-annos-inferred.sh after which it lists each annotation and
+   * the number inferred.
+   */
+  private static final String COMBINED_RESULTS_START = "====== COMBINED RESULTS =======";
+
+  /**
+   * For each annotation, in alphabetical order, its "Original count" and its "Inferred" count, in
+   * that order.
+   */
+  private final Map<String, int[]> rows = new TreeMap<>();
+
+  /**
+   * Adds the counts in a file produced by RunWPI.py. The format of the file is recognized from its
+   * contents.
+   *
+   * @param file a Human-written.txt, Generated.txt, or AnnotationStats.csv file
+   */
+  void read(Path file) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file, UTF_8);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read file: " + file + ". Check that it exists?");
+    }
+    if (!lines.isEmpty() && lines.get(0).startsWith("Annotation,")) {
+      readTable(file, lines);
+      return;
+    }
+    int start = lines.indexOf(ANNOTATION_STATISTICS_START);
+    if (start != -1) {
+      // As in RunWPI.py, only the first list is read; it ends with a blank line.
+      for (String line : lines.subList(start + 1, lines.size())) {
+        if (line.isEmpty()) {
+          break;
+        }
+        String[] columns = line.split("\t");
+        add(columns[0].replace(" ", ""), parseCount(file, line, columns[columns.length - 1]), 0);
+      }
+      return;
+    }
+    start = lines.indexOf(COMBINED_RESULTS_START);
+    if (start != -1) {
+      for (String line : lines.subList(start + 1, lines.size())) {
+        String[] columns = line.split("\t");
+        if (columns.length >= 2) {
+          add(columns[0], 0, parseCount(file, line, columns[1]));
+        }
+      }
+      return;
+    }
+    throw new RuntimeException(
+        "Could not find the annotations in "
+            + file
+            + ". Expected an AnnotationStats.csv file, or the output of AnnotationStatistics or of"
+            + " compute-annos-inferred.sh");
+  }
+
+  /**
+   * Adds the counts in a table written by {@link #write}, or by earlier versions of RunWPI.py. Only
+   * the "Original count" and "Inferred" columns are read; the others are recomputed.
+   *
+   * @param file the file that the table was read from, for error messages
+   * @param lines the lines of the table, starting with the header
+   */
+  private void readTable(Path file, List<String> lines) {
+    List<String> header = Arrays.asList(lines.get(0).split(","));
+    int annotationColumn = header.indexOf("Annotation");
+    int originalColumn = header.indexOf("Original count");
+    int inferredColumn = header.indexOf("Inferred");
+    if (annotationColumn == -1 || originalColumn == -1 || inferredColumn == -1) {
+      throw new RuntimeException(
+          "The header of " + file + " must have the columns Annotation, Original count, Inferred");
+    }
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      String[] columns = line.split(",", -1);
+      if (columns.length != header.size()) {
+        throw new RuntimeException("Could not parse line \"" + line + "\" of " + file);
+      }
+      add(
+          columns[annotationColumn],
+          parseCount(file, line, columns[originalColumn]),
+          parseCount(file, line, columns[inferredColumn]));
+    }
+  }
+
+  /**
+   * Adds to the counts of an annotation.
+   *
+   * @param annotation the fully-qualified name of the annotation
+   * @param original the number to add to its "Original count"
+   * @param inferred the number to add to its "Inferred" count
+   */
+  private void add(String annotation, int original, int inferred) {
+    int[] row = rows.computeIfAbsent(annotation, k -> new int[2]);
+    row[0] += original;
+    row[1] += inferred;
+  }
+
+  /**
+   * Parses a count in a file produced by RunWPI.py.
+   *
+   * @param file the file, for error messages
+   * @param line the line that contains the count, for error messages
+   * @param count the text of the count
+   * @return the count
+   */
+  private static int parseCount(Path file, String line, String count) {
+    try {
+      return Integer.parseInt(count.trim());
+    } catch (NumberFormatException e) {
+      throw new RuntimeException("Could not parse line \"" + line + "\" of " + file);
+    }
+  }
+
+  /**
+   * Writes the table, as CSV.
+   *
+   * @param out where to write the table
+   * @param total the totals of the inferred annos counter for the project
+   */
+  void write(PrintStream out, AnnotationCounts total) {
+    Set<String> simpleNames = new HashSet<>();
+    for (String annotation : rows.keySet()) {
+      simpleNames.add(simpleName(annotation));
+    }
+    Map<String, int[]> table = new TreeMap<>(rows);
+    for (String anno : total.getAnnotations()) {
+      String simpleName = anno.substring(1);
+      if (!simpleNames.contains(simpleName)) {
+        table.put(simpleName, new int[] {total.getTotalCount(anno), 0});
+      }
+    }
+    out.println(HEADER);
+    for (Map.Entry<String, int[]> row : table.entrySet()) {
+      String annotation = row.getKey();
+      int original = row.getValue()[0];
+      int inferred = row.getValue()[1];
+      String anno = "@" + simpleName(annotation);
+      int originalInferred = total.getCorrectCount(anno);
+      // The percentage of an annotation that the original program does not have is undefined.
+      String percentage =
+          original == 0
+              ? ""
+              : String.format(Locale.ROOT, "%.2f", 100.0 * originalInferred / original);
+      out.println(
+          annotation + "," + original + "," + inferred + "," + originalInferred + "," + percentage);
+    }
+  }
+
+  /**
+   * Returns the simple name of an annotation.
+   *
+   * @param annotation the fully-qualified name of an annotation
+   * @return its simple name, without a "@"
+   */
+  private static String simpleName(String annotation) {
+    return annotation.substring(annotation.lastIndexOf('.') + 1);
+  }
+}
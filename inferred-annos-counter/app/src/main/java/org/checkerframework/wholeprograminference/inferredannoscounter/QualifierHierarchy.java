@@ -0,0 +1,159 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.checkerframework.framework.qual.SubtypeOf;
+
+/**
+ * The subtyping relation between the type qualifiers in "type-qualifiers.txt", which is used by
+ * {@code --match=subtype}. It is computed once, from the {@link SubtypeOf} meta-annotations of the
+ * qualifiers in checker-qual, and each qualifier's supertypes (including itself) are stored as a
+ * bitset, so that a subtype check is a single AND of a word of that bitset.
+ *
+ * <p>The rest of the counter identifies qualifiers by their simple names, e.g., "@NonNull", so the
+ * supertypes of a simple name are those of every qualifier with that name. A qualifier whose class
+ * cannot be loaded, such as one that is only listed by its simple name, is related only to itself.
+ */
+// The Index Checker cannot verify the indices of the qualifiers, which are all less than the number
+// of bits in each bitset.
+@SuppressWarnings("index")
+final class QualifierHierarchy {
+
+  /** The index of each qualifier, by its simple name with a leading "@". */
+  private final Map<String, Integer> indices = new HashMap<>();
+
+  /** For each qualifier, by its index, the bitset of the indices of its supertypes. */
+  private final long[][] supertypes;
+
+  /**
+   * Creates the hierarchy of the given qualifiers.
+   *
+   * @param qualifiers the fully-qualified names of the qualifiers
+   */
+  QualifierHierarchy(List<String> qualifiers) {
+    Map<String, List<String>> qualifiersBySimpleName = new HashMap<>();
+    for (String qualifier : qualifiers) {
+      String simpleName = "@" + qualifier.substring(qualifier.lastIndexOf('.') + 1);
+      if (!indices.containsKey(simpleName)) {
+        indices.put(simpleName, indices.size());
+      }
+      qualifiersBySimpleName.computeIfAbsent(simpleName, k -> new ArrayList<>()).add(qualifier);
+    }
+    int words = (indices.size() + Long.SIZE - 1) / Long.SIZE;
+    supertypes = new long[indices.size()][words];
+    for (Map.Entry<String, List<String>> e : qualifiersBySimpleName.entrySet()) {
+      long[] bits = supertypes[indices.get(e.getKey())];
+      for (String qualifier : e.getValue()) {
+        for (String supertype : supertypesOf(qualifier)) {
+          int index = indices.getOrDefault(supertype, -1);
+          if (index != -1) {
+            bits[index / Long.SIZE] |= 1L << index;
+          }
+        }
+      }
+    }
+  }
+
+  /** The hierarchy of the qualifiers in "type-qualifiers.txt", which is created when first used. */
+  private static final class Holder {
+
+    /** The hierarchy. */
+    static final QualifierHierarchy INSTANCE = read("type-qualifiers.txt");
+  }
+
+  /**
+   * Returns the hierarchy of the qualifiers in "type-qualifiers.txt" in the working directory. It
+   * is computed only once, however many files are counted.
+   *
+   * @return the hierarchy of the type qualifiers
+   */
+  static QualifierHierarchy forTypeQualifiers() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Reads the hierarchy of the qualifiers listed in a file, which has the same format as
+   * "type-qualifiers.txt".
+   *
+   * @param path the path to the file
+   * @return the hierarchy of the qualifiers in the file
+   */
+  static QualifierHierarchy read(String path) {
+    List<String> qualifiers = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(Paths.get(path), UTF_8)) {
+        line = line.replaceAll("\\s", "");
+        if (!line.isEmpty()) {
+          qualifiers.add(line);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read file: " + path + ". Check that it exists?");
+    }
+    return new QualifierHierarchy(qualifiers);
+  }
+
+  /**
+   * Returns true if one qualifier is a subtype of another, or the same qualifier.
+   *
+   * @param subtype the simple name of a qualifier, e.g., "@NonNull"
+   * @param supertype the simple name of another qualifier, e.g., "@Nullable"
+   * @return true if subtype is a subtype of supertype; false if it is not, or if either of them is
+   *     not in the hierarchy
+   */
+  boolean isSubtype(String subtype, String supertype) {
+    int sub = indices.getOrDefault(subtype, -1);
+    int sup = indices.getOrDefault(supertype, -1);
+    if (sub == -1 || sup == -1) {
+      return subtype.equals(supertype);
+    }
+    return (supertypes[sub][sup / Long.SIZE] & (1L << sup)) != 0;
+  }
+
+  /**
+   * Returns the simple names of the supertypes of a qualifier, including itself, by following its
+   * {@link SubtypeOf} meta-annotation and those of its supertypes.
+   *
+   * @param qualifier the fully-qualified name of a qualifier
+   * @return the simple names of its supertypes, with a leading "@"
+   */
+  private static Set<String> supertypesOf(String qualifier) {
+    Set<String> result = new HashSet<>();
+    result.add("@" + qualifier.substring(qualifier.lastIndexOf('.') + 1));
+    Class<?> start;
+    try {
+      start = Class.forName(qualifier, false, QualifierHierarchy.class.getClassLoader());
+    } catch (ClassNotFoundException | LinkageError e) {
+      return result;
+    }
+    Set<Class<?>> visited = new HashSet<>();
+    Deque<Class<?>> worklist = new ArrayDeque<>();
+    worklist.add(start);
+    while (!worklist.isEmpty()) {
+      Class<?> c = worklist.remove();
+      if (!visited.add(c)) {
+        continue;
+      }
+      result.add("@" + c.getSimpleName());
+      SubtypeOf subtypeOf = c.getAnnotation(SubtypeOf.class);
+      if (subtypeOf != null) {
+        for (Class<? extends Annotation> supertype : subtypeOf.value()) {
+          worklist.add(supertype);
+        }
+      }
+    }
+    return result;
+  }
+}
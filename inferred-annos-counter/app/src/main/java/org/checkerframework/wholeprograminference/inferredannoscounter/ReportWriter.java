@@ -0,0 +1,335 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the results of the inferred annos counter in the format selected by --format. The results
+ * for each human-written file are written as soon as they are available, so a large batch never
+ * needs to be held in memory, and so that scripts can process them while the counter is still
+ * running.
+ *
+ * <p>The text format is the one that the inferred annos counter has always printed. The JSON and
+ * CSV formats are meant for scripts: every annotation is listed, in alphabetical order, with the
+ * number of annotations of that kind that the human wrote, how many of those are ignored because
+ * they are within the scope of a SuppressWarnings annotation, how many are counted, and how many
+ * of those were inferred.
+ */
+public abstract class ReportWriter {
+
+  /** Where to write the results. */
+  protected final PrintStream out;
+
+  /**
+   * Creates a ReportWriter.
+   *
+   * @param out where to write the results
+   */
+  protected ReportWriter(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Returns a writer for the format selected by the command-line options.
+   *
+   * @param options the command-line options
+   * @param out where to write the results
+   * @return a writer for the selected format
+   */
+  public static ReportWriter create(CounterOptions options, PrintStream out) {
+    switch (options.format) {
+      case TEXT:
+        return new TextReportWriter(out, options.batch, options.perChecker);
+      case JSON:
+        return new JsonReportWriter(out);
+      case CSV:
+        return new CsvReportWriter(out);
+      default:
+        throw new RuntimeException("Unknown format: " + options.format);
+    }
+  }
+
+  /**
+   * Writes the results for one human-written file.
+   *
+   * @param javaFile the path to the human-written file
+   * @param ajavaFiles the paths to its .ajava files
+   * @param counts the results for the file
+   */
+  public abstract void writeFile(String javaFile, List<String> ajavaFiles, AnnotationCounts counts);
+
+  /**
+   * Writes the combined results for all files. This is called at most once, after the results for
+   * every file have been written.
+   *
+   * @param fileCount the number of human-written files
+   * @param total the combined results
+   */
+  public abstract void writeTotal(int fileCount, AnnotationCounts total);
+
+  /**
+   * Returns the checkers that produced some .ajava files.
+   *
+   * @param ajavaFiles the paths to some .ajava files
+   * @return the checker that produced each of them, in the same order
+   */
+  static List<String> checkersOf(List<String> ajavaFiles) {
+    List<String> checkers = new ArrayList<>(ajavaFiles.size());
+    for (String ajavaFile : ajavaFiles) {
+      checkers.add(CheckerHits.checkerOf(ajavaFile));
+    }
+    return checkers;
+  }
+
+  /** Writes the results in the "@Anno got correct/total" format. */
+  private static final class TextReportWriter extends ReportWriter {
+
+    /** True if the name of each file should be written before its results. */
+    private final boolean batch;
+
+    /** True if the results for each checker should be written. */
+    private final boolean perChecker;
+
+    /**
+     * Creates a TextReportWriter.
+     *
+     * @param out where to write the results
+     * @param batch true if the name of each file should be written before its results
+     * @param perChecker true if the results for each checker should be written
+     */
+    TextReportWriter(PrintStream out, boolean batch, boolean perChecker) {
+      super(out);
+      this.batch = batch;
+      this.perChecker = perChecker;
+    }
+
+    @Override
+    public void writeFile(String javaFile, List<String> ajavaFiles, AnnotationCounts counts) {
+      if (batch) {
+        out.println(javaFile + ":");
+      }
+      out.println();
+      counts.print(out, perChecker);
+    }
+
+    @Override
+    public void writeTotal(int fileCount, AnnotationCounts total) {
+      out.println();
+      out.println("Total:");
+      total.print(out, perChecker);
+    }
+  }
+
+  /**
+   * Writes the results as JSON Lines: one JSON object per line, first one for each file and then
+   * one for the total. For example:
+   *
+   * <pre>{@code
+   * {"type":"file","file":"src/Foo.java","checkers":["...NullnessChecker"],"annotations":[
+   *   {"annotation":"@NonNull","written":3,"ignored":0,"counted":3,"inferred":1,
+   *    "inferredBy":{"...NullnessChecker":1}}]}
+   * {"type":"total","files":1,"annotations":[...]}
+   * }</pre>
+   *
+   * (Each object is on a single line.)
+   */
+  private static final class JsonReportWriter extends ReportWriter {
+
+    /**
+     * Creates a JsonReportWriter.
+     *
+     * @param out where to write the results
+     */
+    JsonReportWriter(PrintStream out) {
+      super(out);
+    }
+
+    @Override
+    public void writeFile(String javaFile, List<String> ajavaFiles, AnnotationCounts counts) {
+      StringBuilder line = new StringBuilder();
+      line.append("{\"type\":\"file\",\"file\":");
+      appendString(line, javaFile);
+      line.append(",\"checkers\":[");
+      List<String> checkers = checkersOf(ajavaFiles);
+      for (int i = 0; i < checkers.size(); i++) {
+        if (i > 0) {
+          line.append(',');
+        }
+        appendString(line, checkers.get(i));
+      }
+      line.append("],");
+      appendAnnotations(line, counts);
+      line.append('}');
+      out.println(line);
+    }
+
+    @Override
+    public void writeTotal(int fileCount, AnnotationCounts total) {
+      StringBuilder line = new StringBuilder();
+      line.append("{\"type\":\"total\",\"files\":").append(fileCount).append(',');
+      appendAnnotations(line, total);
+      line.append('}');
+      out.println(line);
+    }
+
+    /**
+     * Appends the "annotations" member of a record.
+     *
+     * @param line the record
+     * @param counts the results to append
+     */
+    private static void appendAnnotations(StringBuilder line, AnnotationCounts counts) {
+      line.append("\"annotations\":[");
+      boolean first = true;
+      for (String anno : counts.getAnnotations()) {
+        if (!first) {
+          line.append(',');
+        }
+        first = false;
+        line.append("{\"annotation\":");
+        appendString(line, anno);
+        line.append(",\"written\":").append(counts.getWrittenCount(anno));
+        line.append(",\"ignored\":").append(counts.getIgnoredCount(anno));
+        line.append(",\"counted\":").append(counts.getTotalCount(anno));
+        line.append(",\"inferred\":").append(counts.getCorrectCount(anno));
+        line.append(",\"inferredBy\":{");
+        List<String> checkers = counts.getCheckers();
+        for (int i = 0; i < checkers.size(); i++) {
+          if (i > 0) {
+            line.append(',');
+          }
+          appendString(line, checkers.get(i));
+          line.append(':').append(counts.getInferredCount(checkers.get(i), anno));
+        }
+        line.append("}}");
+      }
+      line.append(']');
+    }
+
+    /**
+     * Appends a string as a JSON string literal.
+     *
+     * @param line where to append the literal
+     * @param string the string
+     */
+    private static void appendString(StringBuilder line, String string) {
+      line.append('"');
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        if (c == '"' || c == '\\') {
+          line.append('\\').append(c);
+        } else if (c < 0x20) {
+          line.append(String.format("\\u%04x", (int) c));
+        } else {
+          line.append(c);
+        }
+      }
+      line.append('"');
+    }
+  }
+
+  /**
+   * Writes the results as CSV, with one row per file and annotation, followed by one row per
+   * annotation for the total. The "scope" column is "file" or "total", and the "checkers" column
+   * lists the checkers of the .ajava files of the file, separated by semicolons. Each row is
+   * followed by one row per checker, with the name of the checker in the "checker" column and the
+   * number of annotations that the checker inferred in the "inferred" column; the "checker" column
+   * of the row for all checkers together is empty.
+   */
+  private static final class CsvReportWriter extends ReportWriter {
+
+    /**
+     * Creates a CsvReportWriter, and writes the header row.
+     *
+     * @param out where to write the results
+     */
+    CsvReportWriter(PrintStream out) {
+      super(out);
+      out.println("scope,file,annotation,checker,written,ignored,counted,inferred,checkers");
+    }
+
+    @Override
+    public void writeFile(String javaFile, List<String> ajavaFiles, AnnotationCounts counts) {
+      writeRows("file", javaFile, String.join(";", checkersOf(ajavaFiles)), counts);
+    }
+
+    @Override
+    public void writeTotal(int fileCount, AnnotationCounts total) {
+      writeRows("total", "", "", total);
+    }
+
+    /**
+     * Writes one row per annotation.
+     *
+     * @param scope the value of the "scope" column
+     * @param file the value of the "file" column
+     * @param checkers the value of the "checkers" column
+     * @param counts the results to write
+     */
+    private void writeRows(String scope, String file, String checkers, AnnotationCounts counts) {
+      for (String anno : counts.getAnnotations()) {
+        writeRow(scope, file, anno, "", counts.getCorrectCount(anno), checkers, counts);
+        for (String checker : counts.getCheckers()) {
+          int inferred = counts.getInferredCount(checker, anno);
+          writeRow(scope, file, anno, checker, inferred, checkers, counts);
+        }
+      }
+    }
+
+    /**
+     * Writes one row.
+     *
+     * @param scope the value of the "scope" column
+     * @param file the value of the "file" column
+     * @param anno the annotation
+     * @param checker the value of the "checker" column
+     * @param inferred the value of the "inferred" column
+     * @param checkers the value of the "checkers" column
+     * @param counts the results to write
+     */
+    private void writeRow(
+        String scope,
+        String file,
+        String anno,
+        String checker,
+        int inferred,
+        String checkers,
+        AnnotationCounts counts) {
+      out.println(
+          scope
+              + ","
+              + quote(file)
+              + ","
+              + quote(anno)
+              + ","
+              + quote(checker)
+              + ","
+              + counts.getWrittenCount(anno)
+              + ","
+              + counts.getIgnoredCount(anno)
+              + ","
+              + counts.getTotalCount(anno)
+              + ","
+              + inferred
+              + ","
+              + quote(checkers));
+    }
+
+    /**
+     * Quotes a CSV field if necessary.
+     *
+     * @param field a field
+     * @return the field, quoted if it contains a comma, quote, or line break
+     */
+    private static String quote(String field) {
+      if (field.indexOf(',') == -1
+          && field.indexOf('"') == -1
+          && field.indexOf('\n') == -1
+          && field.indexOf('\r') == -1) {
+        return field;
+      }
+      return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of the results for each human-written file, so that rerunning the inferred annos
+ * counter after a small change to the .ajava files only recomputes the results for the files that
+ * changed.
+ *
+ * <p>The cache is content-addressed: the key of an entry is a hash of the contents of the
+ * human-written file and of each of its .ajava files, the checker of each .ajava file (from its
+ * name), the type qualifiers being counted, the options that affect the results, and the version
+ * of the counter itself. A stale entry is therefore never used; it is simply not looked up again,
+ * and is eventually evicted. Entries are evicted least-recently-used first once the cache is
+ * larger than its size bound.
+ *
+ * <p>Errors while reading or writing the cache are not fatal: an entry that cannot be read is
+ * recomputed, and an entry that cannot be written is skipped.
+ */
+public class ResultCache {
+
+  /**
+   * A version number for the format of the entries. Changing it invalidates every existing entry.
+   */
+  private static final String FORMAT_VERSION = "3";
+
+  /** The directory that contains the entries, or null if caching is disabled. */
+  private final Path directory;
+
+  /** The maximum total size of the entries, in bytes. */
+  private final long maxBytes;
+
+  /**
+   * The digest of everything that the key of every entry depends on, other than the input files.
+   */
+  private final byte[] configurationDigest;
+
+  /**
+   * Creates a cache.
+   *
+   * @param directory the directory that contains the entries, or null if caching is disabled
+   * @param maxBytes the maximum total size of the entries, in bytes
+   * @param configurationDigest the digest of everything that the keys depend on, other than the
+   *     input files
+   */
+  private ResultCache(Path directory, long maxBytes, byte[] configurationDigest) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.configurationDigest = configurationDigest;
+  }
+
+  /**
+   * Opens the cache selected by the command-line options. If the options disable caching, the
+   * result never finds an entry and never stores one.
+   *
+   * @param options the command-line options
+   * @param checkerPackage the list of type qualifiers to count
+   * @return the cache
+   */
+  public static ResultCache open(CounterOptions options, List<String> checkerPackage) {
+    if (!options.cache) {
+      return new ResultCache(null, 0, new byte[0]);
+    }
+    MessageDigest digest = newDigest();
+    update(digest, FORMAT_VERSION);
+    update(digest, toolVersion());
+    update(digest, options.describeResultOptions());
+    update(digest, String.join("\n", checkerPackage));
+    return new ResultCache(
+        Paths.get(options.cacheDir), options.cacheSize * 1024L * 1024L, digest.digest());
+  }
+
+  /**
+   * Returns the results for a human-written file from the cache. If they are not in the cache, this
+   * method computes them and stores them in the cache.
+   *
+   * @param javaFile the path to the human-written file
+   * @param ajavaFiles the paths to the .ajava files for the human-written file
+   * @param compute computes the results for the file
+   * @return the results for the file
+   */
+  public AnnotationCounts computeIfAbsent(
+      String javaFile, List<String> ajavaFiles, Supplier<AnnotationCounts> compute) {
+    if (directory == null) {
+      return compute.get();
+    }
+    Path entry = entryFor(javaFile, ajavaFiles);
+    try {
+      AnnotationCounts counts = AnnotationCounts.fromLines(Files.readAllLines(entry, UTF_8));
+      // The modification time of an entry is the time it was last used.
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      return counts;
+    } catch (IOException | IllegalArgumentException e) {
+      // Not in the cache, or the entry is damaged: recompute it.
+    }
+    AnnotationCounts counts = compute.get();
+    store(entry, counts.toLines());
+    return counts;
+  }
+
+  /**
+   * Returns the path of the entry for a human-written file and its .ajava files. The entries are
+   * spread over 256 subdirectories, so that no directory has too many entries.
+   *
+   * @param javaFile the path to the human-written file
+   * @param ajavaFiles the paths to the .ajava files for the human-written file
+   * @return the path of the entry, which might not exist
+   */
+  private Path entryFor(String javaFile, List<String> ajavaFiles) {
+    MessageDigest digest = newDigest();
+    digest.update(configurationDigest);
+    updateWithFile(digest, javaFile);
+    for (String ajavaFile : ajavaFiles) {
+      // The results say which checker inferred each annotation, which comes from the file name.
+      update(digest, CheckerHits.checkerOf(ajavaFile));
+      updateWithFile(digest, ajavaFile);
+    }
+    String key = toHex(digest.digest());
+    String subdirectory = String.format("%02x", key.hashCode() & 0xFF);
+    return directory.resolve(subdirectory).resolve(key);
+  }
+
+  /**
+   * Stores an entry. The entry is written to a temporary file that is then renamed, so that other
+   * threads and processes never see a partially-written entry.
+   *
+   * @param entry the path of the entry
+   * @param lines the contents of the entry
+   */
+  private void store(Path entry, List<String> lines) {
+    try {
+      Files.createDirectories(entry.getParent());
+      Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+      try {
+        Files.write(temp, lines, UTF_8);
+        try {
+          Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      // The cache is only an optimization, so an entry that cannot be written is skipped.
+    }
+  }
+
+  /**
+   * Deletes the least-recently-used entries until the total size of the cache is within its bound.
+   * Call this once after all results have been computed.
+   */
+  public void evict() {
+    if (directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> entries;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      entries = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      return;
+    }
+    List<EntryInfo> infos = new ArrayList<>(entries.size());
+    long totalBytes = 0;
+    for (Path entry : entries) {
+      try {
+        EntryInfo info =
+            new EntryInfo(entry, Files.size(entry), Files.getLastModifiedTime(entry).toMillis());
+        infos.add(info);
+        totalBytes += info.size;
+      } catch (IOException e) {
+        // Another process deleted the entry.
+      }
+    }
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    infos.sort(Comparator.comparingLong(info -> info.lastUsed));
+    for (EntryInfo info : infos) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      try {
+        Files.delete(info.path);
+      } catch (NoSuchFileException e) {
+        // Another process deleted the entry.
+      } catch (IOException e) {
+        continue;
+      }
+      totalBytes -= info.size;
+    }
+  }
+
+  /** The size and last use of an entry, used to decide which entries to evict. */
+  private static class EntryInfo {
+    /** The path of the entry. */
+    final Path path;
+
+    /** The size of the entry, in bytes. */
+    final long size;
+
+    /** The time the entry was last used, in milliseconds since the epoch. */
+    final long lastUsed;
+
+    /**
+     * Creates an EntryInfo.
+     *
+     * @param path the path of the entry
+     * @param size the size of the entry, in bytes
+     * @param lastUsed the time the entry was last used, in milliseconds since the epoch
+     */
+    EntryInfo(Path path, long size, long lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  /**
+   * Returns a string that changes whenever the code of the inferred annos counter changes: a hash
+   * of the jar file or directory of class files that it was loaded from.
+   *
+   * @return the version of the inferred annos counter
+   */
+  private static String toolVersion() {
+    Path codeSource;
+    try {
+      URL location = InferredAnnosCounter.class.getProtectionDomain().getCodeSource().getLocation();
+      codeSource = Paths.get(location.toURI());
+    } catch (URISyntaxException | SecurityException | NullPointerException e) {
+      throw new RuntimeException("Could not find the classes of the inferred annos counter", e);
+    }
+    MessageDigest digest = newDigest();
+    if (Files.isDirectory(codeSource)) {
+      try (Stream<Path> paths = Files.walk(codeSource)) {
+        for (Path classFile :
+            paths
+                .filter(path -> path.toString().endsWith(".class"))
+                .sorted()
+                .collect(Collectors.toList())) {
+          update(digest, codeSource.relativize(classFile).toString());
+          updateWithFile(digest, classFile.toString());
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Could not read directory: " + codeSource, e);
+      }
+    } else {
+      updateWithFile(digest, codeSource.toString());
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Returns a new SHA-256 message digest.
+   *
+   * @return a new SHA-256 message digest
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new Error(e);
+    }
+  }
+
+  /**
+   * Adds a string to a digest, preceded by its length so that the boundaries between strings are
+   * part of the digest.
+   *
+   * @param digest the digest to update
+   * @param string the string to add
+   */
+  private static void update(MessageDigest digest, String string) {
+    byte[] bytes = string.getBytes(UTF_8);
+    update(digest, bytes);
+  }
+
+  /**
+   * Adds some bytes to a digest, preceded by their length so that the boundaries between them are
+   * part of the digest.
+   *
+   * @param digest the digest to update
+   * @param bytes the bytes to add
+   */
+  private static void update(MessageDigest digest, byte[] bytes) {
+    digest.update(Integer.toString(bytes.length).getBytes(UTF_8));
+    digest.update((byte) ':');
+    digest.update(bytes);
+  }
+
+  /**
+   * Adds the contents of a file to a digest.
+   *
+   * @param digest the digest to update
+   * @param filePath the file whose contents to add
+   */
+  private static void updateWithFile(MessageDigest digest, String filePath) {
+    try {
+      update(digest, Files.readAllBytes(Paths.get(filePath)));
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read file: " + filePath + ". Check that it exists?");
+    }
+  }
+
+  /**
+   * Returns the hexadecimal representation of some bytes.
+   *
+   * @param bytes some bytes
+   * @return the bytes in hexadecimal, two digits per byte
+   */
+  private static String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16));
+      result.append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,191 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * The dependencies between the source files of a project, as javac sees them: the top-level types
+ * that each source file declares, and those that it refers to. They are recorded while {@link
+ * WarmJavac} compiles the files, by a listener that scans each class once it has been analyzed, so
+ * they come from the compiler's own resolution of names rather than from the text of the files.
+ *
+ * <p>The {@link WpiDriver} uses them to recompile only the files whose results can change in the
+ * next iteration: those that declare a class whose .ajava files changed, and those that refer to
+ * such a class. A reference is any name that resolves to a member of the class or to the class
+ * itself, including references to inherited members. This is an approximation, e.g., a file that
+ * only depends on the class through a type that is inferred with var is missed, which is why the
+ * driver confirms the fixpoint with a compilation of the whole project.
+ */
+final class SourceDependencies {
+
+  /** The source file that declares each top-level type, by the type's qualified name. */
+  private final Map<String, File> sourceOfType = new HashMap<>();
+
+  /** The qualified names of the top-level types that each source file declares. */
+  private final Map<File, Set<String>> typesOfSource = new HashMap<>();
+
+  /** The qualified names of the top-level types that each source file refers to. */
+  private final Map<File, Set<String>> referencesOfSource = new HashMap<>();
+
+  /** The source files that refer to each top-level type, by the type's qualified name. */
+  private final Map<String, Set<File>> dependentsOfType = new HashMap<>();
+
+  /**
+   * Forgets what is known about some source files, before they are compiled again.
+   *
+   * @param sourceFiles the source files
+   */
+  void forget(Collection<File> sourceFiles) {
+    for (File sourceFile : sourceFiles) {
+      Set<String> types = typesOfSource.remove(sourceFile);
+      if (types != null) {
+        for (String type : types) {
+          sourceOfType.remove(type);
+        }
+      }
+      Set<String> references = referencesOfSource.remove(sourceFile);
+      if (references != null) {
+        for (String type : references) {
+          dependentsOfType.getOrDefault(type, new HashSet<>()).remove(sourceFile);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a listener that records the dependencies of the files that a compilation analyzes.
+   *
+   * @param task the compilation
+   * @return the listener to add to the compilation
+   */
+  TaskListener listenerFor(JavacTask task) {
+    Trees trees = Trees.instance(task);
+    return new TaskListener() {
+      @Override
+      public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null) {
+          return;
+        }
+        TreePath path = trees.getPath(e.getTypeElement());
+        if (path == null) {
+          return;
+        }
+        File sourceFile = new File(e.getSourceFile().toUri());
+        String type = e.getTypeElement().getQualifiedName().toString();
+        sourceOfType.put(type, sourceFile);
+        typesOfSource.computeIfAbsent(sourceFile, k -> new HashSet<>()).add(type);
+        Set<String> references =
+            referencesOfSource.computeIfAbsent(sourceFile, k -> new HashSet<>());
+        new ReferenceScanner(trees).scan(path, references);
+        for (String reference : references) {
+          dependentsOfType.computeIfAbsent(reference, k -> new HashSet<>()).add(sourceFile);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the source file that declares a top-level type.
+   *
+   * @param type the qualified name of the type
+   * @return the source file that declares it, or null if it is not declared in the project
+   */
+  File sourceOf(String type) {
+    return sourceOfType.get(type);
+  }
+
+  /**
+   * Returns the qualified names of the top-level types declared in some source files.
+   *
+   * @param sourceFiles the source files
+   * @return the types that they declare
+   */
+  Set<String> typesOf(Collection<File> sourceFiles) {
+    Set<String> types = new HashSet<>();
+    for (File sourceFile : sourceFiles) {
+      types.addAll(typesOfSource.getOrDefault(sourceFile, new HashSet<>()));
+    }
+    return types;
+  }
+
+  /**
+   * Returns the source files that may need to be compiled again because some types changed: the
+   * files that declare them and those that refer to them.
+   *
+   * @param types the qualified names of the top-level types that changed
+   * @return the source files affected by the change
+   */
+  Set<File> affectedBy(Collection<String> types) {
+    Set<File> affected = new HashSet<>();
+    for (String type : types) {
+      File sourceFile = sourceOfType.get(type);
+      if (sourceFile != null) {
+        affected.add(sourceFile);
+      }
+      affected.addAll(dependentsOfType.getOrDefault(type, new HashSet<>()));
+    }
+    return affected;
+  }
+
+  /** Collects the top-level types that the names in a tree refer to. */
+  private static final class ReferenceScanner extends TreePathScanner<Void, Set<String>> {
+
+    /** The trees of the compilation, which resolve names to elements. */
+    private final Trees trees;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param trees the trees of the compilation
+     */
+    ReferenceScanner(Trees trees) {
+      this.trees = trees;
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Set<String> references) {
+      addReference(references);
+      return super.visitIdentifier(tree, references);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Set<String> references) {
+      addReference(references);
+      return super.visitMemberSelect(tree, references);
+    }
+
+    /**
+     * Adds the top-level type of the element that the current name refers to, if any.
+     *
+     * @param references the set to which to add it
+     */
+    private void addReference(Set<String> references) {
+      Element element = trees.getElement(getCurrentPath());
+      while (element != null
+          && !(element instanceof TypeElement
+              && element.getEnclosingElement() != null
+              && (element.getEnclosingElement().getKind() == ElementKind.PACKAGE
+                  || element.getEnclosingElement().getKind() == ElementKind.MODULE))) {
+        element = element.getEnclosingElement();
+      }
+      if (element != null) {
+        references.add(((TypeElement) element).getQualifiedName().toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithAnnotations;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the annotations in a human-written file that should not be counted, because WPI is not
+ * expected to infer them. These are the annotations that RemoveAnnotationsForInference leaves in
+ * place: the annotations within the scope of a SuppressWarnings annotation for a checker, and the
+ * annotations within the scope of an {@literal @}Option or {@literal @}IgnoreInWholeProgramInference
+ * annotation.
+ *
+ * <p>The scopes are found by walking up the AST of the human-written file, so unlike running
+ * RemoveAnnotationsForInference itself, this needs neither a copy of the file nor another parse.
+ */
+public final class SuppressedAnnotations {
+
+  /**
+   * The SuppressWarnings keys that suppress the warnings of a checker. A key may also be followed
+   * by a colon and a message key, as in "nullness:argument". Other keys, such as "unchecked" or
+   * "deprecation", are for javac or other tools and do not prevent WPI from inferring anything.
+   */
+  private static final Set<String> CHECKER_KEYS =
+      new HashSet<>(
+          Arrays.asList(
+              "all",
+              "allcheckers",
+              "nullness",
+              "initialization",
+              "keyfor",
+              "interning",
+              "lock",
+              "index",
+              "upperbound",
+              "lowerbound",
+              "samelen",
+              "searchindex",
+              "substringindex",
+              "lessthan",
+              "value",
+              "regex",
+              "formatter",
+              "i18nformatter",
+              "signature",
+              "signedness",
+              "optional",
+              "calledmethods",
+              "builder",
+              "resourceleak",
+              "mustcall",
+              "returnsreceiver",
+              "initializedfields",
+              "fenum",
+              "tainting",
+              "units",
+              "aliasing",
+              "purity",
+              "compilermsgs",
+              "propkey",
+              "guieffect",
+              "reflection"));
+
+  /** The annotations, other than SuppressWarnings, whose scope WPI leaves alone. */
+  private static final Set<String> IGNORED_SCOPES =
+      new HashSet<>(Arrays.asList("Option", "IgnoreInWholeProgramInference"));
+
+  /** This class is not instantiable. */
+  private SuppressedAnnotations() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Counts the annotations in a compilation unit that should be ignored.
+   *
+   * @param cu the human-written compilation unit
+   * @param checkerPackage the list of type qualifiers to count, e.g., "@NonNull"
+   * @return a map from the name of each annotation to ignore to the number of them in the file
+   */
+  public static Map<String, Integer> count(CompilationUnit cu, Collection<String> checkerPackage) {
+    Map<String, Integer> listOfAnnoToIgnore = new HashMap<>();
+    for (AnnotationExpr anno : cu.findAll(AnnotationExpr.class)) {
+      String name = "@" + anno.getName().getIdentifier();
+      if (checkerPackage.contains(name) && isSuppressed(anno)) {
+        listOfAnnoToIgnore.put(name, listOfAnnoToIgnore.getOrDefault(name, 0) + 1);
+      }
+    }
+    return listOfAnnoToIgnore;
+  }
+
+  /**
+   * Returns true if the given annotation is within the scope of an annotation that makes WPI leave
+   * it alone. The scope of an annotation includes the other annotations on the same declaration.
+   *
+   * @param anno an annotation in the human-written file
+   * @return true if the annotation should be ignored
+   */
+  private static boolean isSuppressed(AnnotationExpr anno) {
+    for (Node node = anno.getParentNode().orElse(null);
+        node != null;
+        node = node.getParentNode().orElse(null)) {
+      if (!(node instanceof NodeWithAnnotations)) {
+        continue;
+      }
+      for (AnnotationExpr scope : ((NodeWithAnnotations<?>) node).getAnnotations()) {
+        String scopeName = scope.getName().getIdentifier();
+        if (IGNORED_SCOPES.contains(scopeName)
+            || (scopeName.equals("SuppressWarnings") && suppressesAChecker(scope))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the given SuppressWarnings annotation suppresses the warnings of a checker.
+   *
+   * @param suppressWarnings a SuppressWarnings annotation
+   * @return true if one of its keys is for a checker
+   */
+  private static boolean suppressesAChecker(AnnotationExpr suppressWarnings) {
+    for (StringLiteralExpr literal : suppressWarnings.findAll(StringLiteralExpr.class)) {
+      String key = literal.getValue();
+      int indexOfColon = key.indexOf(':');
+      if (indexOfColon != -1) {
+        key = key.substring(0, indexOfColon);
+      }
+      if (CHECKER_KEYS.contains(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,350 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.sun.source.util.JavacTask;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Replays a javac invocation of a project's build in the JVM of the {@link WpiDriver}, once per
+ * iteration of WPI, instead of running the build tool and a new javac JVM each time. Everything
+ * that can be shared between the iterations is created once: the compiler, its file manager (which
+ * caches the contents of the jar files on the class path), and the class loader of the annotation
+ * processors, so the Checker Framework is only loaded once and its code stays compiled by the JIT.
+ * Each iteration gets new instances of the processors.
+ *
+ * <p>The arguments are those captured by {@link JavacArguments}, except that WPI is always enabled
+ * ({@code -Ainfer=ajava}) and reads the results of the previous iteration from the directory given
+ * to the constructor ({@code -Aajava=...}).
+ *
+ * <p>With --incremental, an iteration may compile only some of the source files (see {@link
+ * #compileOnly}), and each compilation records the dependencies of the files that it compiles (see
+ * {@link SourceDependencies}).
+ */
+// The Index Checker cannot verify the indices of the values of options, which follow the options
+// in well-formed arguments. The Resource Leak Checker cannot verify that the file manager and the
+// class loader, which are kept for all iterations, are released by close.
+@SuppressWarnings({"index", "resourceleak"})
+final class WarmJavac {
+
+  /** The compiler. */
+  private final JavaCompiler compiler;
+
+  /** The file manager, which is shared by all iterations. */
+  private final StandardJavaFileManager fileManager;
+
+  /** The options of javac, other than those for the annotation processors' class path. */
+  private final List<String> options = new ArrayList<>();
+
+  /** The source files to compile. */
+  private final List<File> sourceFiles = new ArrayList<>();
+
+  /** The names of the classes to process with annotation processors, if any. */
+  private final List<String> classNames = new ArrayList<>();
+
+  /**
+   * The class loader of the annotation processors, or null if they are found by javac on the class
+   * path, as they are when the arguments have no processor path.
+   */
+  private final URLClassLoader processorLoader;
+
+  /** The names of the annotation processors to run, or empty to run all that are found. */
+  private final List<String> processorNames = new ArrayList<>();
+
+  /**
+   * The directory in which javac puts the class files (its -d option), or null if the arguments do
+   * not have one.
+   */
+  private final String classOutput;
+
+  /**
+   * The options of the JVM in which the build runs javac, i.e., its -J options without the "-J".
+   * The driver cannot apply them to its own JVM; see {@link #missingJvmOptions}.
+   */
+  private final List<String> jvmOptions = new ArrayList<>();
+
+  /**
+   * Prepares a javac invocation.
+   *
+   * @param args the arguments of javac, as captured from the build
+   * @param projectDir the directory of the project, against which relative source files are
+   *     resolved
+   * @param ajavaDir the directory from which WPI reads the results of the previous iteration
+   */
+  WarmJavac(List<String> args, Path projectDir, Path ajavaDir) {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new RuntimeException("--javac requires the driver to run on a JDK, not a JRE");
+    }
+    fileManager = compiler.getStandardFileManager(null, null, null);
+    String processorPath = null;
+    String classOutput = null;
+    for (int i = 0; i < args.size(); i++) {
+      String arg = args.get(i);
+      if (arg.equals("-processorpath") || arg.equals("--processor-path")) {
+        processorPath = args.get(++i);
+      } else if (arg.equals("-processor")) {
+        processorNames.addAll(Arrays.asList(args.get(++i).split(",")));
+      } else if (arg.startsWith("-Ainfer=") || arg.startsWith("-Aajava=")) {
+        // Replaced below.
+      } else if (arg.startsWith("-J")) {
+        jvmOptions.add(arg.substring(2));
+      } else if (arg.startsWith("-")) {
+        if (arg.equals("-d")) {
+          classOutput = args.get(i + 1);
+        }
+        options.add(arg);
+        int values = compiler.isSupportedOption(arg);
+        if (values == -1) {
+          values = fileManager.isSupportedOption(arg);
+        }
+        for (int j = 0; j < values; j++) {
+          options.add(args.get(++i));
+        }
+      } else if (arg.endsWith(".java")) {
+        sourceFiles.add(projectDir.resolve(arg).toAbsolutePath().normalize().toFile());
+      } else {
+        classNames.add(arg);
+      }
+    }
+    this.classOutput = classOutput;
+    options.add("-Ainfer=ajava");
+    options.add("-Aajava=" + ajavaDir);
+    if (processorPath == null) {
+      processorLoader = null;
+      if (!processorNames.isEmpty()) {
+        options.add("-processor");
+        options.add(String.join(",", processorNames));
+      }
+    } else {
+      processorLoader = newClassLoader(processorPath);
+    }
+  }
+
+  /**
+   * Creates the class loader of the annotation processors. Its parent is the platform class
+   * loader, which provides the compiler API but not the classes of the driver, so that the
+   * processors do not see the driver's version of checker-qual.
+   *
+   * @param processorPath the class path of the annotation processors
+   * @return a class loader for the class path
+   */
+  private static URLClassLoader newClassLoader(String processorPath) {
+    List<URL> urls = new ArrayList<>();
+    for (String entry : processorPath.split(File.pathSeparator)) {
+      if (entry.isEmpty()) {
+        continue;
+      }
+      try {
+        urls.add(new File(entry).toURI().toURL());
+      } catch (MalformedURLException e) {
+        throw new RuntimeException("Invalid entry in the processor path: " + entry, e);
+      }
+    }
+    return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+  }
+
+  /**
+   * Returns the options that the build gives the JVM of javac to export or open the packages of a
+   * module to the annotation processors (--add-exports and --add-opens, for ALL-UNNAMED), but that
+   * the JVM of the driver lacks. The Checker Framework uses the internals of javac, so without
+   * these options its checkers fail with an IllegalAccessError. Since the driver runs javac in its
+   * own JVM, they must be given to that JVM, e.g., with the jvmArgs of the wpi task. Other options
+   * of the JVM, such as its heap size, are replaced by those of the driver's JVM.
+   *
+   * @return the missing options, in the form "--add-exports=module/package=ALL-UNNAMED"
+   */
+  List<String> missingJvmOptions() {
+    Module processorModule =
+        processorLoader == null ? WarmJavac.class.getModule() : processorLoader.getUnnamedModule();
+    List<String> missing = new ArrayList<>();
+    for (int i = 0; i < jvmOptions.size(); i++) {
+      String option = jvmOptions.get(i);
+      String value;
+      if ((option.equals("--add-exports") || option.equals("--add-opens"))
+          && i + 1 < jvmOptions.size()) {
+        value = jvmOptions.get(++i);
+      } else if (option.startsWith("--add-exports=") || option.startsWith("--add-opens=")) {
+        value = option.substring(option.indexOf('=') + 1);
+        option = option.substring(0, option.indexOf('='));
+      } else {
+        continue;
+      }
+      // The value is "module/package=target,...".
+      int indexOfSlash = value.indexOf('/');
+      int indexOfEquals = value.indexOf('=');
+      if (indexOfSlash == -1 || indexOfEquals < indexOfSlash) {
+        continue;
+      }
+      List<String> targets = Arrays.asList(value.substring(indexOfEquals + 1).split(","));
+      if (!targets.contains("ALL-UNNAMED")) {
+        continue;
+      }
+      Module module = ModuleLayer.boot().findModule(value.substring(0, indexOfSlash)).orElse(null);
+      String packageName = value.substring(indexOfSlash + 1, indexOfEquals);
+      if (module == null) {
+        continue;
+      }
+      boolean granted =
+          option.equals("--add-exports")
+              ? module.isExported(packageName, processorModule)
+              : module.isOpen(packageName, processorModule);
+      if (!granted) {
+        missing.add(option + "=" + value);
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Returns the source files that this invocation compiles.
+   *
+   * @return the source files, as absolute paths
+   */
+  List<File> sourceFiles() {
+    return sourceFiles;
+  }
+
+  /**
+   * Compiles the project once, with WPI enabled. As with the build, errors do not stop WPI, so
+   * they are only reported.
+   *
+   * @param dependencies where to record the dependencies of the source files, or null if they are
+   *     not needed
+   * @return true if the compilation succeeded
+   */
+  boolean compile(SourceDependencies dependencies) {
+    return compile(sourceFiles, options, classNames, dependencies);
+  }
+
+  /**
+   * Compiles only those of the source files that are affected by the changes of the previous
+   * iteration, with WPI enabled. The class files of the other source files, from an earlier
+   * compilation, are read from the class output directory, which is put first on the class path.
+   * If the arguments have no class output directory, all the source files are compiled.
+   *
+   * @param affected the source files to compile, among others that this invocation does not
+   *     compile
+   * @param dependencies where to record the dependencies of the compiled source files
+   * @return the source files that were compiled
+   */
+  List<File> compileOnly(Set<File> affected, SourceDependencies dependencies) {
+    if (classOutput == null) {
+      compile(dependencies);
+      return sourceFiles;
+    }
+    List<File> toCompile = new ArrayList<>();
+    for (File sourceFile : sourceFiles) {
+      if (affected.contains(sourceFile)) {
+        toCompile.add(sourceFile);
+      }
+    }
+    if (toCompile.isEmpty()) {
+      return toCompile;
+    }
+    List<String> incrementalOptions = new ArrayList<>(options);
+    int indexOfClassPath = -1;
+    for (int i = 0; i < incrementalOptions.size() - 1; i++) {
+      String option = incrementalOptions.get(i);
+      if (option.equals("-classpath") || option.equals("-cp") || option.equals("--class-path")) {
+        indexOfClassPath = i + 1;
+      }
+    }
+    if (indexOfClassPath == -1) {
+      incrementalOptions.add("-classpath");
+      incrementalOptions.add(classOutput);
+    } else {
+      String classPath = incrementalOptions.get(indexOfClassPath);
+      incrementalOptions.set(
+          indexOfClassPath,
+          classPath.isEmpty() ? classOutput : classOutput + File.pathSeparator + classPath);
+    }
+    compile(toCompile, incrementalOptions, Collections.emptyList(), dependencies);
+    return toCompile;
+  }
+
+  /**
+   * Compiles some source files, with WPI enabled.
+   *
+   * @param files the source files
+   * @param javacOptions the options of javac
+   * @param processedClassNames the names of the classes to process with annotation processors
+   * @param dependencies where to record the dependencies of the source files, or null if they are
+   *     not needed
+   * @return true if the compilation succeeded
+   */
+  private boolean compile(
+      List<File> files,
+      List<String> javacOptions,
+      List<String> processedClassNames,
+      SourceDependencies dependencies) {
+    JavaCompiler.CompilationTask task =
+        compiler.getTask(
+            null,
+            fileManager,
+            null,
+            javacOptions,
+            processedClassNames.isEmpty() ? null : processedClassNames,
+            fileManager.getJavaFileObjectsFromFiles(files));
+    if (processorLoader != null) {
+      task.setProcessors(newProcessors());
+    }
+    if (dependencies != null) {
+      dependencies.forget(files);
+      JavacTask javacTask = (JavacTask) task;
+      javacTask.addTaskListener(dependencies.listenerFor(javacTask));
+    }
+    return task.call();
+  }
+
+  /**
+   * Creates new instances of the annotation processors: those named by -processor, or all those
+   * that are declared as services on the processor path.
+   *
+   * @return the annotation processors
+   */
+  private List<Processor> newProcessors() {
+    List<Processor> processors = new ArrayList<>();
+    if (processorNames.isEmpty()) {
+      for (Processor processor : ServiceLoader.load(Processor.class, processorLoader)) {
+        processors.add(processor);
+      }
+      return processors;
+    }
+    for (String name : processorNames) {
+      try {
+        processors.add(
+            (Processor)
+                Class.forName(name, true, processorLoader).getDeclaredConstructor().newInstance());
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        throw new RuntimeException("Could not create the annotation processor " + name, e);
+      }
+    }
+    return processors;
+  }
+
+  /** Releases the files that the compiler keeps open. */
+  void close() {
+    try {
+      fileManager.close();
+      if (processorLoader != null) {
+        processorLoader.close();
+      }
+    } catch (IOException e) {
+      // Only the resources of the driver's own JVM are left open.
+    }
+  }
+}
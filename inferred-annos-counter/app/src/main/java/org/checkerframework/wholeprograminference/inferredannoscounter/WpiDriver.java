@@ -0,0 +1,320 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the outer loop of whole-program inference on a project, as wpi-template.sh does: it builds
+ * the project with WPI enabled until an iteration infers the same annotations as the previous one.
+ * Run it with, e.g., {@code ./gradlew -q wpi --args="--project-dir=/path/to/project
+ * --build='./gradlew compileJava' --clean='./gradlew clean'"}; see {@link WpiOptions} for the
+ * options.
+ *
+ * <p>Instead of comparing the whole output tree of each iteration with that of the previous one
+ * ({@code diff -r}) and then replacing one with the other ({@code rm -rf} and {@code mv}), the
+ * driver keeps the digest of each file of the previous iteration (see {@link OutputDigests}).
+ * After each build, it only reads the new files once to compute their digests, and the iteration
+ * converged if no digest changed. Otherwise, only the files that changed are moved into the
+ * directory from which the next build reads them. The driver prints how many files changed in each
+ * iteration, and with --debug, which ones.
+ *
+ * <p>With --javac, the driver does not run the build in each iteration. It captures the arguments
+ * of the project's javac invocations once (see {@link JavacArguments}), and replays them in its own
+ * JVM (see {@link WarmJavac}), so that the iterations do not pay for starting the build tool and
+ * javac, or for loading the Checker Framework.
+ *
+ * <p>With --incremental as well, the first iteration compiles all the source files, and records
+ * which classes each of them refers to (see {@link SourceDependencies}). Each later iteration only
+ * compiles the source files of the classes whose results changed in the previous one, and of the
+ * classes that refer to them; the results of the other classes are kept. Once those results stop
+ * changing, one more iteration compiles all the source files, and the fixpoint is only reached if
+ * it changes nothing either.
+ *
+ * <p>With --per-checker, each checker runs in its own driver process instead, concurrently with the
+ * others, and stops at its own fixpoint (see {@link PerCheckerWpi}).
+ */
+public class WpiDriver {
+
+  /** The options of the driver. */
+  private final WpiOptions options;
+
+  /** Where the progress of the driver is reported. */
+  private final PrintStream out;
+
+  /**
+   * Creates a driver.
+   *
+   * @param options the options of the driver
+   * @param out where to report the progress of the driver
+   */
+  WpiDriver(WpiOptions options, PrintStream out) {
+    this.options = options;
+    this.out = out;
+  }
+
+  /**
+   * The main entry point. Runs WPI until it reaches a fixpoint, and exits with status 1 if it did
+   * not reach one within --max-iterations.
+   *
+   * @param args the command-line options; see {@link WpiOptions}
+   */
+  public static void main(String[] args) {
+    WpiOptions options = WpiOptions.parse(args);
+    if (!new WpiDriver(options, System.out).run()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs WPI until it reaches a fixpoint or the maximum number of iterations. At the end, the
+   * results of the last iteration are in {@link WpiOptions#tempDir}.
+   *
+   * @return true if WPI reached a fixpoint
+   */
+  boolean run() {
+    deleteRecursively(options.tempDir);
+    createDirectories(options.tempDir);
+    List<List<String>> invocations = new ArrayList<>();
+    if (options.javac) {
+      String captureCommand = options.captureCommand;
+      if (captureCommand.isEmpty() && !Files.exists(options.javacArgs)) {
+        captureCommand = JavacArguments.defaultCaptureCommand(options.projectDir);
+      }
+      invocations =
+          JavacArguments.readOrCapture(options.javacArgs, options.projectDir, captureCommand);
+    }
+    if (options.perChecker) {
+      return new PerCheckerWpi(options, out).run(invocations);
+    }
+    List<WarmJavac> compilations = new ArrayList<>();
+    for (List<String> args : invocations) {
+      compilations.add(new WarmJavac(args, options.projectDir, options.tempDir.toAbsolutePath()));
+    }
+    Set<String> missingJvmOptions = new LinkedHashSet<>();
+    for (WarmJavac compilation : compilations) {
+      missingJvmOptions.addAll(compilation.missingJvmOptions());
+    }
+    if (!missingJvmOptions.isEmpty()) {
+      out.println(
+          "warning: the build runs javac with JVM options that this JVM lacks, so the annotation"
+              + " processors may fail; pass them to the JVM of the driver: "
+              + String.join(" ", missingJvmOptions));
+    }
+    try {
+      return iterate(compilations);
+    } finally {
+      for (WarmJavac compilation : compilations) {
+        compilation.close();
+      }
+    }
+  }
+
+  /**
+   * Runs the iterations of WPI.
+   *
+   * @param compilations the javac invocations to replay in each iteration, or empty to run the
+   *     build command
+   * @return true if WPI reached a fixpoint
+   */
+  private boolean iterate(List<WarmJavac> compilations) {
+    SourceDependencies dependencies = options.incremental ? new SourceDependencies() : null;
+    OutputDigests previous = OutputDigests.EMPTY;
+    // The source files to compile in the next iteration, or null to compile all of them.
+    Set<File> affected = null;
+    for (int iteration = 1;
+        options.maxIterations == 0 || iteration <= options.maxIterations;
+        iteration++) {
+      if (options.debug) {
+        out.println("entering iteration " + iteration);
+      }
+      List<File> compiled = new ArrayList<>();
+      if (compilations.isEmpty()) {
+        runCommand(options.buildCommand);
+        runCommand(options.cleanCommand);
+      } else if (affected == null) {
+        for (WarmJavac compilation : compilations) {
+          compilation.compile(dependencies);
+        }
+      } else {
+        for (WarmJavac compilation : compilations) {
+          compiled.addAll(compilation.compileOnly(affected, dependencies));
+        }
+      }
+
+      long start = System.nanoTime();
+      OutputDigests current = OutputDigests.of(options.outDir);
+      if (affected != null) {
+        current = previous.updatedWith(current, dependencies.typesOf(compiled));
+      }
+      OutputDigests.Changes changes = current.changesSince(previous);
+      long millis = (System.nanoTime() - start) / 1_000_000;
+      out.println(
+          "iteration "
+              + iteration
+              + ": "
+              + (affected == null ? "" : "compiled " + compiled.size() + " source files, ")
+              + current.size()
+              + " files, "
+              + changes
+              + " (compared in "
+              + millis
+              + " ms)");
+      if (options.debug) {
+        printChanges(changes);
+      }
+      if (changes.isEmpty()) {
+        if (affected == null) {
+          out.println("reached a fixpoint after " + iteration + " iterations");
+          return true;
+        }
+        // The files that were not compiled may depend on the changes in ways that the dependencies
+        // do not show, so the fixpoint is only reached if compiling all of them changes nothing.
+        out.println("checking the fixpoint by compiling all source files");
+        affected = null;
+        deleteRecursively(options.outDir);
+        continue;
+      }
+      moveChanges(changes);
+      previous = current;
+      if (options.incremental) {
+        Set<String> changedTypes = new HashSet<>();
+        for (List<String> files : List.of(changes.added, changes.modified, changes.removed)) {
+          for (String file : files) {
+            changedTypes.add(OutputDigests.typeOf(file));
+          }
+        }
+        affected = dependencies.affectedBy(changedTypes);
+      }
+    }
+    out.println("did not reach a fixpoint after " + options.maxIterations + " iterations");
+    return false;
+  }
+
+  /**
+   * Prints the files that changed in an iteration.
+   *
+   * @param changes the files that changed
+   */
+  private void printChanges(OutputDigests.Changes changes) {
+    for (String file : changes.added) {
+      out.println("  added: " + file);
+    }
+    for (String file : changes.modified) {
+      out.println("  modified: " + file);
+    }
+    for (String file : changes.removed) {
+      out.println("  removed: " + file);
+    }
+  }
+
+  /**
+   * Makes the directory of the results of the previous iteration hold those of the iteration that
+   * just ended, and empties the output directory for the next iteration. The files that did not
+   * change are already in the former, so only the others are moved or deleted.
+   *
+   * @param changes the files that changed in the iteration that just ended
+   */
+  private void moveChanges(OutputDigests.Changes changes) {
+    try {
+      for (List<String> files : List.of(changes.added, changes.modified)) {
+        for (String file : files) {
+          Path target = options.tempDir.resolve(file);
+          Files.createDirectories(target.getParent());
+          moveFile(options.outDir.resolve(file), target);
+        }
+      }
+      for (String file : changes.removed) {
+        Files.deleteIfExists(options.tempDir.resolve(file));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(
+          "Could not move the results from " + options.outDir + " to " + options.tempDir, e);
+    }
+    deleteRecursively(options.outDir);
+  }
+
+  /**
+   * Moves a file, replacing the target if it exists, atomically if possible.
+   *
+   * @param source the file to move
+   * @param target where to move it
+   * @throws IOException if the file could not be moved
+   */
+  static void moveFile(Path source, Path target) throws IOException {
+    try {
+      Files.move(
+          source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      // The two directories are on different file systems.
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Runs a shell command in the directory of the project, and waits for it to finish. Its output
+   * goes to the output of the driver. A command that fails does not stop the driver, because a
+   * build with WPI enabled fails whenever the checkers issue errors, but it still writes its
+   * results.
+   *
+   * @param command the command, or the empty string to do nothing
+   */
+  void runCommand(String command) {
+    if (command.isEmpty()) {
+      return;
+    }
+    ProcessBuilder builder =
+        new ProcessBuilder("sh", "-c", command).directory(options.projectDir.toFile()).inheritIO();
+    try {
+      builder.start().waitFor();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not run command: " + command, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while running command: " + command, e);
+    }
+  }
+
+  /**
+   * Creates a directory and its parents, if they do not exist.
+   *
+   * @param dir the directory
+   */
+  static void createDirectories(Path dir) {
+    try {
+      Files.createDirectories(dir);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not create directory: " + dir, e);
+    }
+  }
+
+  /**
+   * Deletes a directory and everything in it, if it exists.
+   *
+   * @param dir the directory
+   */
+  static void deleteRecursively(Path dir) {
+    if (!Files.exists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not delete directory: " + dir, e);
+    }
+  }
+}
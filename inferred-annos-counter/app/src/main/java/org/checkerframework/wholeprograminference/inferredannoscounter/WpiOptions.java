@@ -0,0 +1,182 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The command-line options of the {@link WpiDriver}. Options are written as "--name=value", like
+ * those of the inferred annos counter (see {@link CounterOptions}), and mirror the variables at the
+ * top of wpi-template.sh. Relative paths are resolved against the directory of the project, except
+ * that with --javac the default --out-dir is in the working directory of the driver, where the
+ * Checker Framework then writes its results.
+ */
+public class WpiOptions {
+
+  /** The directory of the project on which to run WPI. */
+  public Path projectDir = Paths.get(".");
+
+  /** The command that compiles the project, with WPI enabled. It is run in {@link #projectDir}. */
+  public String buildCommand = "./gradlew compileJava";
+
+  /** The command that deletes the outputs of {@link #buildCommand}, or the empty string if none. */
+  public String cleanCommand = "./gradlew clean";
+
+  /**
+   * The directory that holds the results of the previous iteration, from which the build reads
+   * them (with -Aajava), and that holds the final results at the end. This is WPITEMPDIR in
+   * wpi-template.sh. It is deleted when the driver starts.
+   */
+  public Path tempDir = Paths.get("tmp");
+
+  /**
+   * The directory in which the Checker Framework puts the results of each iteration. This is
+   * WPIOUTDIR in wpi-template.sh.
+   */
+  public Path outDir = Paths.get("build", "whole-program-inference");
+
+  /**
+   * True if each iteration should replay the project's javac invocations in the driver's JVM (see
+   * {@link WarmJavac}) instead of running {@link #buildCommand} and {@link #cleanCommand}.
+   */
+  public boolean javac = false;
+
+  /**
+   * The file that stores the arguments of the project's javac invocations for {@link #javac}. If it
+   * does not exist, they are captured by running {@link #captureCommand}, and stored in it.
+   */
+  public Path javacArgs = Paths.get("javac-args.txt");
+
+  /**
+   * The command that builds the project and prints the arguments of javac, or the empty string for
+   * the default one of its build system. See {@link JavacArguments}.
+   */
+  public String captureCommand = "";
+
+  /**
+   * True if, with {@link #javac}, each iteration should only compile the source files that are
+   * affected by the results that changed in the previous iteration, until they stop changing. A
+   * compilation of all the source files then confirms the fixpoint. See {@link
+   * SourceDependencies}.
+   */
+  public boolean incremental = false;
+
+  /**
+   * True if, with {@link #javac}, each checker should run in its own driver process, concurrently
+   * with the others, until it reaches its own fixpoint. See {@link WpiDriver}.
+   */
+  public boolean perChecker = false;
+
+  /** The maximum number of iterations, or 0 to iterate until a fixpoint is reached. */
+  public int maxIterations = 0;
+
+  /** True if the names of the files that changed in each iteration should be printed. */
+  public boolean debug = false;
+
+  /**
+   * Parses the command-line arguments.
+   *
+   * @param args the command-line arguments
+   * @return the parsed options
+   */
+  public static WpiOptions parse(String[] args) {
+    WpiOptions options = new WpiOptions();
+    boolean outDirGiven = false;
+    for (String arg : args) {
+      int indexOfEquals = arg.indexOf('=');
+      String name = indexOfEquals == -1 ? arg : arg.substring(0, indexOfEquals);
+      String value = indexOfEquals == -1 ? null : arg.substring(indexOfEquals + 1);
+      switch (name) {
+        case "--project-dir":
+          options.projectDir = Paths.get(requireValue(name, value, "/path/to/project"));
+          break;
+        case "--build":
+          options.buildCommand = requireValue(name, value, "'mvn compile'");
+          break;
+        case "--clean":
+          options.cleanCommand = value == null ? "" : value;
+          break;
+        case "--temp-dir":
+          options.tempDir = Paths.get(requireValue(name, value, "/tmp/wpi-output"));
+          break;
+        case "--out-dir":
+          options.outDir = Paths.get(requireValue(name, value, "build/whole-program-inference"));
+          outDirGiven = true;
+          break;
+        case "--javac":
+          options.javac = true;
+          break;
+        case "--javac-args":
+          options.javacArgs = Paths.get(requireValue(name, value, "/path/to/javac-args.txt"));
+          break;
+        case "--capture-command":
+          options.captureCommand = requireValue(name, value, "'mvn -X clean compile'");
+          break;
+        case "--incremental":
+          options.incremental = true;
+          break;
+        case "--per-checker":
+          options.perChecker = true;
+          break;
+        case "--max-iterations":
+          options.maxIterations = parsePositiveInt(name, value);
+          break;
+        case "--debug":
+          options.debug = true;
+          break;
+        default:
+          throw new RuntimeException("Unknown option: " + arg);
+      }
+    }
+    if (options.incremental && !options.javac) {
+      throw new RuntimeException("--incremental requires --javac");
+    }
+    if (options.perChecker && !options.javac) {
+      throw new RuntimeException("--per-checker requires --javac");
+    }
+    options.tempDir = options.projectDir.resolve(options.tempDir);
+    options.javacArgs = options.projectDir.resolve(options.javacArgs);
+    if (options.javac && !outDirGiven) {
+      // The Checker Framework writes the results in the working directory of javac, which is now
+      // that of the driver.
+      options.outDir = options.outDir.toAbsolutePath();
+    } else {
+      options.outDir = options.projectDir.resolve(options.outDir);
+    }
+    return options;
+  }
+
+  /**
+   * Returns the value of an option that requires one.
+   *
+   * @param name the name of the option, used in error messages
+   * @param value the value of the option, or null if none was given
+   * @param example an example value, used in error messages
+   * @return the value
+   */
+  private static String requireValue(String name, String value, String example) {
+    if (value == null || value.isEmpty()) {
+      throw new RuntimeException(name + " requires a value, e.g., " + name + "=" + example);
+    }
+    return value;
+  }
+
+  /**
+   * Parses the value of an option that must be a positive integer.
+   *
+   * @param name the name of the option, used in error messages
+   * @param value the value of the option, or null if none was given
+   * @return the value as an integer
+   */
+  private static int parsePositiveInt(String name, String value) {
+    int result;
+    try {
+      result = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new RuntimeException(name + " requires a positive integer, e.g., " + name + "=4");
+    }
+    if (result <= 0) {
+      throw new RuntimeException(name + " requires a positive integer, e.g., " + name + "=4");
+    }
+    return result;
+  }
+}
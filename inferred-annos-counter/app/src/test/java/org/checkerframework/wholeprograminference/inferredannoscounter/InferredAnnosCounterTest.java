@@ -1,14 +1,24 @@
 package org.checkerframework.wholeprograminference.inferredannoscounter;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 public class InferredAnnosCounterTest {
 
@@ -17,6 +27,8 @@ public class InferredAnnosCounterTest {
 
   @Rule public final ExpectedException exception = ExpectedException.none();
 
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Before
   public void setUp() {
     System.setOut(new PrintStream(outputStreamCaptor));
@@ -102,6 +114,34 @@ public class InferredAnnosCounterTest {
     assertTrue(outputStreamCaptor.toString().trim().contains(line3));
   }
 
+  @Test
+  public void quotesInCharLiteralsAndEscapes() {
+    // The lines are split before each annotation, but not before an "@" in a string literal. A
+    // double quote in a character literal or after a backslash does not start or end a string
+    // literal. Earlier versions counted the double quotes before each word, so they did not split
+    // the last three lines.
+    List<String> lines =
+        Arrays.asList(
+            "String y = '\"' + \"@NonNull\";",
+            "Object z = c == '\"' ? (@NonNull Object) y : y;",
+            "String s = \"\\\"\" + x; @Nullable Object o;",
+            "foo('\"', \"@A\"); @B int x;");
+    List<?> formatted = InferredAnnosCounter.eachAnnotationInOneSingleLine(lines);
+    List<String> expected =
+        Arrays.asList(
+            "  String y = '\"' + \"@NonNull\";",
+            " Object z = c == '\"' ?(",
+            "@NonNull",
+            "  Object) y : y;",
+            " String s = \"\\\"\" + x;",
+            "@Nullable",
+            "  Object o;",
+            " foo('\"', \"@A\");",
+            "@B",
+            "  int x;");
+    assertTrue("Wrong lines: " + formatted, formatted.equals(expected));
+  }
+
   @Test
   public void annotationInMiddleOfADeclaration() {
     InferredAnnosCounter.main(
@@ -265,6 +305,20 @@ public class InferredAnnosCounterTest {
         outputStreamCaptor.toString().trim().isEmpty());
   }
 
+  @Test
+  public void annotationWithinWarningSuppressionsLegacy() {
+    InferredAnnosCounter.main(
+        new String[] {
+          "--legacy-ignore",
+          "testCases/AnnotationWithinWarningSuppression.java",
+          "testCases/AnnotationWithinWarningSuppression.ajava"
+        });
+    assertTrue(
+        "IAC should not count an annotation that is within a scope of SuppressWarnings "
+            + outputStreamCaptor,
+        outputStreamCaptor.toString().trim().isEmpty());
+  }
+
   @Test
   public void blankSpaceBeforePackage() {
     InferredAnnosCounter.main(new String[] {"testCases/BlankSpaceBeforePackage.java"});
@@ -302,4 +356,504 @@ public class InferredAnnosCounterTest {
             + outputStreamCaptor,
         outputStreamCaptor.toString().trim().contains(line2));
   }
+
+  @Test
+  public void batchMode() {
+    InferredAnnosCounter.main(
+        new String[] {
+          "--batch",
+          "../inputExamples/require-javadoc/human-written",
+          "../inputExamples/require-javadoc/generated"
+        });
+    String output = outputStreamCaptor.toString();
+    assertTrue(
+        "Batch mode didn't print the name of the file, got: " + output,
+        output.contains("RequireJavadoc.java:"));
+    int indexOfTotal = output.indexOf("Total:");
+    assertTrue("Batch mode didn't print the totals, got: " + output, indexOfTotal != -1);
+    String line = "@Nullable got 0/2";
+    assertTrue(
+        "Didn't find the correct number of @Nullable annotations for the file; expected 0/2, got: "
+            + output,
+        output.substring(0, indexOfTotal).contains(line));
+    assertTrue(
+        "Didn't find the correct total number of @Nullable annotations; expected 0/2, got: "
+            + output,
+        output.substring(indexOfTotal).contains(line));
+  }
+
+  @Test
+  public void batchModeCombinesFiles() {
+    InferredAnnosCounter.main(
+        new String[] {
+          "--batch",
+          "../inputExamples/RxNorm-explorer/human-written",
+          "../inputExamples/RxNorm-explorer/generated"
+        });
+    String output = outputStreamCaptor.toString();
+    int indexOfTotal = output.indexOf("Total:");
+    assertTrue("Batch mode didn't print the totals, got: " + output, indexOfTotal != -1);
+    assertTrue(
+        "Batch mode didn't print the results for CollectionUtils, got: " + output,
+        output.substring(0, indexOfTotal).contains("@NonNull got 0/10"));
+    String totals = output.substring(indexOfTotal).trim();
+    assertTrue(
+        "Didn't find the correct totals; expected @NonNull got 0/10 and @Nullable got 13/43, got: "
+            + totals,
+        totals.contentEquals("Total:\n@NonNull got 0/10\n@Nullable got 13/43"));
+  }
+
+  @Test
+  public void batchModeOutputDoesNotDependOnThreads() {
+    String[] roots = {
+      "../inputExamples/cache2k-api/human-written", "../inputExamples/cache2k-api/generated"
+    };
+    InferredAnnosCounter.main(new String[] {"--threads=1", "--batch", roots[0], roots[1]});
+    String sequentialOutput = outputStreamCaptor.toString();
+    outputStreamCaptor.reset();
+    InferredAnnosCounter.main(new String[] {"--threads=4", "--batch", roots[0], roots[1]});
+    String parallelOutput = outputStreamCaptor.toString();
+    assertTrue(
+        "Batch mode output depends on the number of threads.\nWith one thread: "
+            + sequentialOutput
+            + "\nWith four threads: "
+            + parallelOutput,
+        sequentialOutput.equals(parallelOutput));
+  }
+
+  @Test
+  public void batchModeOutputDoesNotDependOnMemoryLimit() {
+    String[] roots = {
+      "../inputExamples/cache2k-api/human-written", "../inputExamples/cache2k-api/generated"
+    };
+    InferredAnnosCounter.main(new String[] {"--no-cache", "--batch", roots[0], roots[1]});
+    String unlimitedOutput = outputStreamCaptor.toString();
+    outputStreamCaptor.reset();
+    // A limit of one megabyte is less than any file needs, so the files are processed one at a
+    // time.
+    InferredAnnosCounter.main(
+        new String[] {
+          "--no-cache", "--memory-limit=1", "--threads=4", "--batch", roots[0], roots[1]
+        });
+    String limitedOutput = outputStreamCaptor.toString();
+    assertTrue(
+        "Batch mode output depends on the memory limit.\nWithout a limit: "
+            + unlimitedOutput
+            + "\nWith a limit of 1 MB: "
+            + limitedOutput,
+        unlimitedOutput.equals(limitedOutput));
+  }
+
+  @Test
+  public void batchModePairsFilesInTheSamePackage() {
+    Path javaRoot = Paths.get("human-written");
+    Path ajavaRoot = Paths.get("generated");
+    List<Path> javaFiles =
+        Arrays.asList(
+            javaRoot.resolve("src/java/a/Foo.java"),
+            javaRoot.resolve("src/java/b/Foo.java"),
+            javaRoot.resolve("src/java/b/Bar.java"));
+    String nullness = "-org.checkerframework.checker.nullness.NullnessChecker.ajava";
+    String index = "-org.checkerframework.checker.index.IndexChecker.ajava";
+    List<Path> ajavaFiles =
+        Arrays.asList(
+            ajavaRoot.resolve("src/a/Foo" + nullness),
+            ajavaRoot.resolve("src/b/Bar" + index),
+            ajavaRoot.resolve("src/b/Foo" + index),
+            ajavaRoot.resolve("src/b/Foo" + nullness),
+            ajavaRoot.resolve("src/c/Bar" + nullness));
+    List<List<String>> expected =
+        Arrays.asList(
+            Arrays.asList(ajavaFiles.get(0).toString()),
+            Arrays.asList(ajavaFiles.get(2).toString(), ajavaFiles.get(3).toString()),
+            // There is only one Bar.java, so the .ajava files of any Bar are its own.
+            Arrays.asList(ajavaFiles.get(1).toString(), ajavaFiles.get(4).toString()));
+    List<List<String>> pairs = FilePairing.pair(javaRoot, javaFiles, ajavaRoot, ajavaFiles);
+    assertTrue("Wrong pairs: " + pairs, pairs.equals(expected));
+  }
+
+  @Test
+  public void throwsRunTimeExceptionForInvalidThreads() {
+    exception.expect(RuntimeException.class);
+    exception.expectMessage("--threads requires a positive integer");
+    InferredAnnosCounter.main(new String[] {"--threads=0", "testCases/OnlyOneJavaFile.java"});
+  }
+
+  @Test
+  public void astEngineMatchesFieldOnDifferentLine() {
+    String dir = "../inputExamples/cache2k-api/";
+    String[] files = {
+      dir + "human-written/main/java/org/cache2k/config/CustomizationReferenceSupplier.java",
+      dir
+          + "generated/org/cache2k/config/CustomizationReferenceSupplier-"
+          + "org.checkerframework.checker.nullness.NullnessChecker.ajava"
+    };
+    InferredAnnosCounter.main(new String[] {"--engine=ast", files[0], files[1]});
+    assertTrue(outputStreamCaptor.toString().contains("@NonNull got 1/3"));
+    outputStreamCaptor.reset();
+    // The line-based diff misses the annotation on the field, because the lines around it differ.
+    InferredAnnosCounter.main(new String[] {"--engine=diff", files[0], files[1]});
+    assertTrue(outputStreamCaptor.toString().contains("@NonNull got 0/3"));
+  }
+
+  @Test
+  public void throwsRunTimeExceptionForUnknownEngine() {
+    exception.expect(RuntimeException.class);
+    exception.expectMessage("--engine must be one of ast|diff");
+    InferredAnnosCounter.main(new String[] {"--engine=lcs", "testCases/OnlyOneJavaFile.java"});
+  }
+
+  @Test
+  public void jsonFormat() {
+    InferredAnnosCounter.main(
+        new String[] {
+          "--format=json",
+          "testCases/AnnotationWithinWarningSuppression.java",
+          "testCases/AnnotationWithinWarningSuppression.ajava"
+        });
+    String expected =
+        "{\"type\":\"file\",\"file\":\"testCases/AnnotationWithinWarningSuppression.java\","
+            + "\"checkers\":[\"\"],\"annotations\":[{\"annotation\":\"@NonNull\","
+            + "\"written\":1,\"ignored\":1,\"counted\":0,\"inferred\":0,\"inferredBy\":{\"\":0}}]}";
+    assertTrue(
+        outputStreamCaptor.toString(), outputStreamCaptor.toString().trim().equals(expected));
+  }
+
+  @Test
+  public void csvFormat() {
+    InferredAnnosCounter.main(
+        new String[] {
+          "--format=csv",
+          "--batch",
+          "../inputExamples/require-javadoc/human-written",
+          "../inputExamples/require-javadoc/generated"
+        });
+    String[] lines = outputStreamCaptor.toString().split("\\R");
+    assertTrue(
+        outputStreamCaptor.toString(),
+        lines[0].equals("scope,file,annotation,checker,written,ignored,counted,inferred,checkers"));
+    assertTrue(
+        outputStreamCaptor.toString(), Arrays.asList(lines).contains("total,,@Nullable,,2,0,2,0,"));
+    assertTrue(
+        outputStreamCaptor.toString(),
+        lines[lines.length - 1].equals(
+            "total,,@Nullable,org.checkerframework.common.returnsreceiver.ReturnsReceiverChecker,"
+                + "2,0,2,0,"));
+    assertTrue(
+        outputStreamCaptor.toString(),
+        lines[1].startsWith("file,../inputExamples/require-javadoc/human-written/"));
+  }
+
+  @Test
+  public void perCheckerResults() {
+    for (String engine : new String[] {"ast", "diff"}) {
+      outputStreamCaptor.reset();
+      InferredAnnosCounter.main(
+          new String[] {
+            "--no-cache",
+            "--engine=" + engine,
+            "--per-checker",
+            "--batch",
+            "../inputExamples/RxNorm-explorer/human-written",
+            "../inputExamples/RxNorm-explorer/generated"
+          });
+      String output = outputStreamCaptor.toString();
+      String total = String.join("\n", output.substring(output.indexOf("Total:")).split("\\R"));
+      assertTrue(
+          engine + ": " + total,
+          total.contains(
+              "@Nullable got 13/43\n"
+                  + "  KeyForSubchecker got 0/43\n"
+                  + "  NullnessChecker got 13/43"));
+    }
+  }
+
+  @Test
+  public void profileGoesToStandardError() {
+    PrintStream standardErr = System.err;
+    ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errorStreamCaptor));
+    try {
+      InferredAnnosCounter.main(
+          new String[] {
+            "--no-cache",
+            "--engine=diff",
+            "--profile=1",
+            "--batch",
+            "../inputExamples/require-javadoc/human-written",
+            "../inputExamples/require-javadoc/generated"
+          });
+    } finally {
+      System.setErr(standardErr);
+    }
+    String output = outputStreamCaptor.toString();
+    String profile = errorStreamCaptor.toString();
+    assertTrue(output, output.contains("@Nullable got 0/2") && !output.contains("Profile"));
+    assertTrue(profile, profile.contains("Profile of 1 files:"));
+    assertTrue(profile, profile.contains("RequireJavadoc.java (3 ajava files, "));
+  }
+
+  @Test
+  public void underscoreInAnnotationName() {
+    for (String engine : new String[] {"ast", "diff"}) {
+      outputStreamCaptor.reset();
+      InferredAnnosCounter.main(
+          new String[] {
+            "--no-cache",
+            "--engine=" + engine,
+            "testCases/UnderscoreInAnnotationName.java",
+            "testCases/UnderscoreInAnnotationName.ajava"
+          });
+      String output = outputStreamCaptor.toString();
+      assertTrue(engine + ": " + output, output.contains("@UB_TOP got 1/1"));
+    }
+  }
+
+  @Test
+  public void autoDiffAlgorithmMatchesMyers() {
+    String[] roots = {
+      "../inputExamples/cache2k-api/human-written", "../inputExamples/cache2k-api/generated"
+    };
+    InferredAnnosCounter.main(
+        new String[] {
+          "--no-cache", "--engine=diff", "--diff-algorithm=myers", "--batch", roots[0], roots[1]
+        });
+    String myersOutput = outputStreamCaptor.toString();
+    outputStreamCaptor.reset();
+    InferredAnnosCounter.main(
+        new String[] {
+          "--no-cache", "--engine=diff", "--diff-algorithm=auto", "--batch", roots[0], roots[1]
+        });
+    String autoOutput = outputStreamCaptor.toString();
+    assertTrue(
+        "The automatic diff algorithm differs from Myers.\nMyers: "
+            + myersOutput
+            + "\nAuto: "
+            + autoOutput,
+        myersOutput.equals(autoOutput));
+  }
+
+  @Test
+  public void everyDiffAlgorithmMatchesThreeAnnotations() {
+    for (String algorithm : new String[] {"myers", "histogram", "patience", "linear", "auto"}) {
+      outputStreamCaptor.reset();
+      InferredAnnosCounter.main(
+          new String[] {
+            "--no-cache",
+            "--engine=diff",
+            "--diff-algorithm=" + algorithm,
+            "testCases/MatchThreeAnnotations.java",
+            "testCases/MatchThreeAnnotations.ajava"
+          });
+      String output = outputStreamCaptor.toString();
+      assertTrue(algorithm + ": " + output, output.contains("@Pure got 1/1"));
+      assertTrue(algorithm + ": " + output, output.contains("@NonNull got 1/1"));
+      assertTrue(algorithm + ": " + output, output.contains("@SideEffectFree got 1/1"));
+    }
+  }
+
+  @Test
+  public void throwsRunTimeExceptionForUnknownDiffAlgorithm() {
+    exception.expect(RuntimeException.class);
+    exception.expectMessage("--diff-algorithm must be one of myers|histogram|patience|linear|auto");
+    InferredAnnosCounter.main(
+        new String[] {"--diff-algorithm=lcs", "testCases/OnlyOneJavaFile.java"});
+  }
+
+  @Test
+  public void subtypeMatchCountsInferredSubtypes() {
+    String[] files = {
+      "testCases/SubtypeOfHumanAnnotation.java", "testCases/SubtypeOfHumanAnnotation.ajava"
+    };
+    InferredAnnosCounter.main(new String[] {"--no-cache", files[0], files[1]});
+    String output = outputStreamCaptor.toString();
+    assertTrue(output, output.contains("@Nullable got 0/1"));
+    assertTrue(output, output.contains("@MonotonicNonNull got 0/1"));
+    outputStreamCaptor.reset();
+    InferredAnnosCounter.main(new String[] {"--no-cache", "--match=subtype", files[0], files[1]});
+    output = outputStreamCaptor.toString();
+    assertTrue(output, output.contains("@Nullable got 1/1"));
+    assertTrue(output, output.contains("@NonNull got 0/1"));
+    assertTrue(output, output.contains("@MonotonicNonNull got 1/1"));
+  }
+
+  @Test
+  public void throwsRunTimeExceptionForSubtypeMatchWithDiffEngine() {
+    exception.expect(RuntimeException.class);
+    exception.expectMessage("--match=subtype requires --engine=ast");
+    InferredAnnosCounter.main(
+        new String[] {"--engine=diff", "--match=subtype", "testCases/OnlyOneJavaFile.java"});
+  }
+
+  @Test
+  public void cachedResultsAreTheSame() {
+    File cacheDir = new File(tempFolder.getRoot(), "iac-cache");
+    String[] args = {
+      "--cache-dir=" + cacheDir,
+      "--batch",
+      "../inputExamples/RxNorm-explorer/human-written",
+      "../inputExamples/RxNorm-explorer/generated"
+    };
+    InferredAnnosCounter.main(args);
+    String firstOutput = outputStreamCaptor.toString();
+    assertTrue("The results were not cached", cacheDir.isDirectory());
+    outputStreamCaptor.reset();
+    InferredAnnosCounter.main(args);
+    String cachedOutput = outputStreamCaptor.toString();
+    assertTrue(
+        "The cached results differ.\nFirst run: " + firstOutput + "\nSecond run: " + cachedOutput,
+        firstOutput.equals(cachedOutput));
+  }
+
+  @Test
+  public void diffAlgorithmDoesNotInvalidateAstResults() throws Exception {
+    File cacheDir = new File(tempFolder.getRoot(), "iac-cache");
+    for (String diffAlgorithm : new String[] {"auto", "myers"}) {
+      InferredAnnosCounter.main(
+          new String[] {
+            "--cache-dir=" + cacheDir,
+            "--engine=ast",
+            "--diff-algorithm=" + diffAlgorithm,
+            "testCases/MatchThreeAnnotations.java",
+            "testCases/MatchThreeAnnotations.ajava"
+          });
+    }
+    // The second run read the entry of the first one, rather than adding one of its own.
+    try (Stream<Path> paths = Files.walk(cacheDir.toPath())) {
+      long entries = paths.filter(Files::isRegularFile).count();
+      assertTrue("Wrong number of cache entries: " + entries, entries == 1);
+    }
+  }
+
+  @Test
+  public void largeCacheSizeKeepsTheEntries() throws Exception {
+    // 2048MB does not fit in an int number of bytes.
+    File cacheDir = new File(tempFolder.getRoot(), "iac-cache");
+    InferredAnnosCounter.main(
+        new String[] {
+          "--cache-dir=" + cacheDir,
+          "--cache-size=2048",
+          "testCases/MatchThreeAnnotations.java",
+          "testCases/MatchThreeAnnotations.ajava"
+        });
+    try (Stream<Path> paths = Files.walk(cacheDir.toPath())) {
+      assertTrue("The entry was evicted", paths.anyMatch(Files::isRegularFile));
+    }
+  }
+
+  @Test
+  public void throwsRunTimeExceptionForTooLargeCacheSize() {
+    exception.expect(RuntimeException.class);
+    exception.expectMessage("--cache-size must be at most " + Integer.MAX_VALUE);
+    InferredAnnosCounter.main(
+        new String[] {"--cache-size=2147483648", "testCases/OnlyOneJavaFile.java"});
+  }
+
+  @Test
+  public void cacheDistinguishesCheckers() throws Exception {
+    // Two .ajava files with the same contents, from different checkers.
+    File cacheDir = new File(tempFolder.getRoot(), "iac-cache");
+    Path ajava = Paths.get("testCases/MatchThreeAnnotations.ajava");
+    for (String checker : new String[] {"FirstChecker", "SecondChecker"}) {
+      Path copy =
+          tempFolder.getRoot().toPath().resolve("MatchThreeAnnotations-" + checker + ".ajava");
+      Files.copy(ajava, copy);
+      outputStreamCaptor.reset();
+      InferredAnnosCounter.main(
+          new String[] {
+            "--cache-dir=" + cacheDir,
+            "--per-checker",
+            "testCases/MatchThreeAnnotations.java",
+            copy.toString()
+          });
+      String output = outputStreamCaptor.toString();
+      assertTrue(output, output.contains("  " + checker + " got 1/1"));
+      Files.delete(copy);
+    }
+  }
+
+  @Test
+  public void noCacheDoesNotWriteTheCache() {
+    File cacheDir = new File(tempFolder.getRoot(), "iac-cache");
+    InferredAnnosCounter.main(
+        new String[] {
+          "--no-cache",
+          "--cache-dir=" + cacheDir,
+          "testCases/MatchThreeAnnotations.java",
+          "testCases/MatchThreeAnnotations.ajava"
+        });
+    assertTrue("--no-cache wrote the cache", !cacheDir.exists());
+  }
+
+  @Test
+  public void serverAnswersEachRequest() throws Exception {
+    String[] args = {
+      "--no-cache", "testCases/MatchThreeAnnotations.java", "testCases/MatchThreeAnnotations.ajava"
+    };
+    InferredAnnosCounter.main(args);
+    String expectedOutput = outputStreamCaptor.toString();
+    String requests =
+        String.join("\t", args)
+            + "\n--no-cache\tmeaningless.java\n"
+            + CounterServer.SHUTDOWN
+            + "\n"
+            + String.join("\t", args)
+            + "\n";
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    new CounterServer(InferredAnnosCounter.readTypeQualifiers("type-qualifiers.txt"))
+        .serve(new ByteArrayInputStream(requests.getBytes(UTF_8)), responses);
+    // The answer to the first request, the error for the second one, and the answer to the
+    // shutdown request. The last request is never read.
+    String[] lines = responses.toString(UTF_8).split("\\R", -1);
+    String[] expectedLines = (expectedOutput + CounterServer.DONE).split("\\R", -1);
+    int n = expectedLines.length;
+    assertTrue(
+        "Unexpected responses from the server: " + responses,
+        lines.length == n + 3
+            && Arrays.equals(Arrays.copyOf(lines, n), expectedLines)
+            && lines[n].startsWith(CounterServer.ERROR + "Could not read file: meaningless.java.")
+            && lines[n + 1].equals(CounterServer.DONE)
+            && lines[n + 2].isEmpty());
+  }
+
+  @Test
+  public void projectSummary() throws Exception {
+    File humanWritten = tempFolder.newFile("Human-written.txt");
+    Files.write(
+        humanWritten.toPath(),
+        Arrays.asList(
+            "> Task :compileJava",
+            "Found annotations:",
+            "org.checkerframework.checker.nullness.qual.Nullable\t40",
+            "org.checkerframework.checker.nullness.qual.NonNull \t10",
+            "",
+            "BUILD SUCCESSFUL"),
+        UTF_8);
+    File generated = tempFolder.newFile("Generated.txt");
+    Files.write(
+        generated.toPath(),
+        Arrays.asList(
+            "====== COMBINED RESULTS =======",
+            "org.checkerframework.checker.nullness.qual.Nullable\t20",
+            "org.checkerframework.checker.nullness.qual.Nullable\t5",
+            "org.checkerframework.checker.nullness.qual.KeyFor\t3"),
+        UTF_8);
+    File summary = new File(tempFolder.getRoot(), "AnnotationStats_IAC_Output.csv");
+    InferredAnnosCounter.main(
+        new String[] {
+          "--summary=" + summary,
+          "--annotation-stats=" + humanWritten + "," + generated,
+          "--batch",
+          "../inputExamples/RxNorm-explorer/human-written",
+          "../inputExamples/RxNorm-explorer/generated"
+        });
+    List<String> expected =
+        Arrays.asList(
+            ProjectSummary.HEADER,
+            "org.checkerframework.checker.nullness.qual.KeyFor,0,3,0,",
+            "org.checkerframework.checker.nullness.qual.NonNull,10,0,0,0.00",
+            "org.checkerframework.checker.nullness.qual.Nullable,40,25,13,32.50");
+    List<String> lines = Files.readAllLines(summary.toPath(), UTF_8);
+    assertTrue("Wrong summary: " + lines, lines.equals(expected));
+  }
 }
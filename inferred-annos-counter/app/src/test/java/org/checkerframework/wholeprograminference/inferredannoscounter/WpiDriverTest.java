@@ -0,0 +1,503 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.ToolProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests the {@link WpiDriver} with builds that imitate WPI. */
+public class WpiDriverTest {
+
+  private final ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /**
+   * A build that "infers" one more annotation in each iteration for Foo, reading the results of the
+   * previous iteration from tmp, until it has inferred three, and always infers the same one for
+   * Bar.
+   */
+  private static final String BUILD =
+      "mkdir -p out/pkg"
+          + " && n=$(cat tmp/pkg/Foo-Checker.ajava 2>/dev/null || echo 0)"
+          + " && echo $(( n < 3 ? n + 1 : n )) > out/pkg/Foo-Checker.ajava"
+          + " && echo 1 > out/pkg/Bar-Checker.ajava";
+
+  /**
+   * An annotation processor that imitates WPI like {@link #BUILD} does, for the replayed
+   * compilations. It also counts how many times it was instantiated since its class was loaded.
+   */
+  private static final String PROCESSOR =
+      String.join(
+          "\n",
+          "import java.nio.file.*;",
+          "import java.util.*;",
+          "import javax.annotation.processing.*;",
+          "import javax.lang.model.SourceVersion;",
+          "import javax.lang.model.element.TypeElement;",
+          "@SupportedAnnotationTypes(\"*\")",
+          "@SupportedOptions({\"infer\", \"ajava\", \"out\"})",
+          "public class CountingProcessor extends AbstractProcessor {",
+          "  static int instances = 0;",
+          "  public CountingProcessor() { instances++; }",
+          "  public SourceVersion getSupportedSourceVersion() {",
+          "    return SourceVersion.latestSupported();",
+          "  }",
+          "  public boolean process(Set<? extends TypeElement> annos, RoundEnvironment env) {",
+          "    if (!env.processingOver()) return false;",
+          "    Map<String, String> options = processingEnv.getOptions();",
+          "    try {",
+          "      Path previous = Paths.get(options.get(\"ajava\"), \"A-Checker.ajava\");",
+          "      int n = 0;",
+          "      if (Files.exists(previous)) {",
+          "        n = Integer.parseInt(Files.readString(previous).trim());",
+          "      }",
+          "      Path out = Paths.get(options.get(\"out\"), \"A-Checker.ajava\");",
+          "      Files.createDirectories(out.getParent());",
+          "      Files.writeString(out, Math.min(n + 1, 3) + \"\\n\");",
+          "      Path counter = out.getParent().resolveSibling(\"instances\");",
+          "      Files.writeString(counter, String.valueOf(instances));",
+          "    } catch (Exception e) {",
+          "      throw new RuntimeException(e);",
+          "    }",
+          "    return false;",
+          "  }",
+          "}");
+
+  /**
+   * An annotation processor that uses the internals of javac, as the Checker Framework does, and
+   * imitates WPI like {@link #PROCESSOR} does, but always "infers" the same annotation.
+   */
+  private static final String INTERNALS_PROCESSOR =
+      String.join(
+          "\n",
+          "import com.sun.tools.javac.processing.JavacProcessingEnvironment;",
+          "import java.nio.file.*;",
+          "import java.util.*;",
+          "import javax.annotation.processing.*;",
+          "import javax.lang.model.SourceVersion;",
+          "import javax.lang.model.element.TypeElement;",
+          "@SupportedAnnotationTypes(\"*\")",
+          "@SupportedOptions({\"infer\", \"ajava\", \"out\"})",
+          "public class InternalsProcessor extends AbstractProcessor {",
+          "  public SourceVersion getSupportedSourceVersion() {",
+          "    return SourceVersion.latestSupported();",
+          "  }",
+          "  public boolean process(Set<? extends TypeElement> annos, RoundEnvironment env) {",
+          "    if (!env.processingOver()) return false;",
+          "    ((JavacProcessingEnvironment) processingEnv).getContext();",
+          "    try {",
+          "      String outDir = processingEnv.getOptions().get(\"out\");",
+          "      Path out = Paths.get(outDir, \"A-Checker.ajava\");",
+          "      Files.createDirectories(out.getParent());",
+          "      Files.writeString(out, \"1\\n\");",
+          "    } catch (Exception e) {",
+          "      throw new RuntimeException(e);",
+          "    }",
+          "    return false;",
+          "  }",
+          "}");
+
+  /**
+   * An annotation processor that imitates WPI for the classes A, B, and C: it "infers" one more
+   * annotation in each iteration for A, until it has inferred three, as many for B as it had
+   * inferred for A in the previous iteration, and always the same one for C. It logs the name of
+   * each class that it processes.
+   */
+  private static final String DEPENDENT_PROCESSOR =
+      String.join(
+          "\n",
+          "import java.nio.file.*;",
+          "import java.util.*;",
+          "import javax.annotation.processing.*;",
+          "import javax.lang.model.SourceVersion;",
+          "import javax.lang.model.element.*;",
+          "@SupportedAnnotationTypes(\"*\")",
+          "@SupportedOptions({\"infer\", \"ajava\", \"out\"})",
+          "public class DependentProcessor extends AbstractProcessor {",
+          "  public SourceVersion getSupportedSourceVersion() {",
+          "    return SourceVersion.latestSupported();",
+          "  }",
+          "  Path file(String option, String name) {",
+          "    return Paths.get(processingEnv.getOptions().get(option), name + \"-C.ajava\");",
+          "  }",
+          "  int previous(String name) throws Exception {",
+          "    Path file = file(\"ajava\", name);",
+          "    return Files.exists(file) ? Integer.parseInt(Files.readString(file).trim()) : 0;",
+          "  }",
+          "  public boolean process(Set<? extends TypeElement> annos, RoundEnvironment env) {",
+          "    try {",
+          "      for (Element e : env.getRootElements()) {",
+          "        String name = e.getSimpleName().toString();",
+          "        int n = name.equals(\"C\") ? 1 : previous(\"A\");",
+          "        if (name.equals(\"A\")) n = Math.min(n + 1, 3);",
+          "        Path out = file(\"out\", name);",
+          "        Files.createDirectories(out.getParent());",
+          "        Files.writeString(out, n + \"\\n\");",
+          "        Path log = out.getParent().resolveSibling(\"compiled\");",
+          "        Files.writeString(",
+          "            log, name + \"\\n\", StandardOpenOption.CREATE, StandardOpenOption.APPEND);",
+          "      }",
+          "    } catch (Exception e) {",
+          "      throw new RuntimeException(e);",
+          "    }",
+          "    return false;",
+          "  }",
+          "}");
+
+  /**
+   * Returns the source of a checker that imitates WPI like the Checker Framework does: it writes
+   * its results to build/whole-program-inference in its working directory. It "infers" one more
+   * annotation for A in each iteration, until it has inferred some number of them.
+   *
+   * @param name the name of the checker's class
+   * @param limit the number of annotations to infer
+   * @return the source of the checker
+   */
+  private static String checker(String name, int limit) {
+    return String.join(
+        "\n",
+        "import java.nio.file.*;",
+        "import java.util.*;",
+        "import javax.annotation.processing.*;",
+        "import javax.lang.model.SourceVersion;",
+        "import javax.lang.model.element.TypeElement;",
+        "@SupportedAnnotationTypes(\"*\")",
+        "@SupportedOptions({\"infer\", \"ajava\"})",
+        "public class " + name + " extends AbstractProcessor {",
+        "  public SourceVersion getSupportedSourceVersion() {",
+        "    return SourceVersion.latestSupported();",
+        "  }",
+        "  public boolean process(Set<? extends TypeElement> annos, RoundEnvironment env) {",
+        "    if (!env.processingOver()) return false;",
+        "    String file = \"A-\" + getClass().getName() + \".ajava\";",
+        "    try {",
+        "      Path previous = Paths.get(processingEnv.getOptions().get(\"ajava\"), file);",
+        "      int n = 0;",
+        "      if (Files.exists(previous)) {",
+        "        n = Integer.parseInt(Files.readString(previous).trim());",
+        "      }",
+        "      Path out = Paths.get(\"build\", \"whole-program-inference\", file);",
+        "      Files.createDirectories(out.getParent());",
+        "      Files.writeString(out, Math.min(n + 1, " + limit + ") + \"\\n\");",
+        "    } catch (Exception e) {",
+        "      throw new RuntimeException(e);",
+        "    }",
+        "    return false;",
+        "  }",
+        "}");
+  }
+
+  /**
+   * Compiles the source of an annotation processor.
+   *
+   * @param processorDir the directory in which to put the source and the class file
+   * @param name the name of the processor's class
+   * @param source the source of the processor
+   */
+  private static void compileProcessor(Path processorDir, String name, String source)
+      throws Exception {
+    Files.createDirectories(processorDir);
+    Path processorSource = processorDir.resolve(name + ".java");
+    Files.write(processorSource, source.getBytes(UTF_8));
+    int status =
+        ToolProvider.getSystemJavaCompiler()
+            .run(
+                null,
+                null,
+                null,
+                "--add-exports=jdk.compiler/com.sun.tools.javac.processing=ALL-UNNAMED",
+                "-d",
+                processorDir.toString(),
+                processorSource.toString());
+    assertTrue("Could not compile the processor", status == 0);
+  }
+
+  @Test
+  public void recompilesOnlyAffectedSources() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    Path processorDir = project.resolve("processor");
+    compileProcessor(processorDir, "DependentProcessor", DEPENDENT_PROCESSOR);
+    Files.createDirectories(project.resolve("src"));
+    Files.write(project.resolve("src/A.java"), "class A {}\n".getBytes(UTF_8));
+    Files.write(project.resolve("src/B.java"), "class B { A a; }\n".getBytes(UTF_8));
+    Files.write(project.resolve("src/C.java"), "class C {}\n".getBytes(UTF_8));
+    Files.createDirectories(project.resolve("classes"));
+    List<String> javacArgs =
+        Arrays.asList(
+            "-d",
+            project.resolve("classes").toString(),
+            "-processorpath",
+            processorDir.toString(),
+            "-processor",
+            "DependentProcessor",
+            "-Aout=" + project.resolve("out"),
+            "src/A.java",
+            "src/B.java",
+            "src/C.java");
+    JavacArguments.write(project.resolve("javac-args.txt"), Arrays.asList(javacArgs));
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--javac",
+              "--incremental",
+              "--temp-dir=tmp",
+              "--out-dir=out"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    List<String> expected =
+        Arrays.asList(
+            "iteration 1: 3 files, 3 added, 0 modified, 0 removed",
+            "iteration 2: compiled 3 source files, 3 files, 0 added, 2 modified, 0 removed",
+            "iteration 3: compiled 2 source files, 3 files, 0 added, 2 modified, 0 removed",
+            "iteration 4: compiled 2 source files, 3 files, 0 added, 1 modified, 0 removed",
+            "iteration 5: compiled 1 source files, 3 files, 0 added, 0 modified, 0 removed",
+            "checking the fixpoint by compiling all source files",
+            "iteration 6: 3 files, 0 added, 0 modified, 0 removed",
+            "reached a fixpoint after 6 iterations");
+    int from = 0;
+    for (String line : expected) {
+      int index = output.indexOf(line, from);
+      assertTrue("Expected \"" + line + "\" in order in:\n" + output, index != -1);
+      from = index + line.length();
+    }
+    assertTrue(output, converged);
+    List<String> result = Files.readAllLines(project.resolve("tmp/B-C.ajava"), UTF_8);
+    assertTrue("Wrong result: " + result, result.equals(Arrays.asList("3")));
+    // C does not depend on A or B, so it is only compiled when all the source files are.
+    List<String> compiled = Files.readAllLines(project.resolve("compiled"), UTF_8);
+    assertTrue("Wrong compilations: " + compiled, Collections.frequency(compiled, "A") == 5);
+    assertTrue("Wrong compilations: " + compiled, Collections.frequency(compiled, "B") == 6);
+    assertTrue("Wrong compilations: " + compiled, Collections.frequency(compiled, "C") == 3);
+  }
+
+  @Test
+  public void runsCheckersSeparately() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    Path processorDir = project.resolve("processor");
+    compileProcessor(processorDir, "FirstChecker", checker("FirstChecker", 1));
+    compileProcessor(processorDir, "SecondChecker", checker("SecondChecker", 3));
+    Files.createDirectories(project.resolve("src"));
+    Files.write(project.resolve("src/A.java"), "class A {}\n".getBytes(UTF_8));
+    List<String> javacArgs =
+        Arrays.asList(
+            "-d",
+            project.resolve("classes").toString(),
+            "-processorpath",
+            processorDir.toString(),
+            "-processor",
+            "FirstChecker,SecondChecker",
+            "src/A.java");
+    JavacArguments.write(project.resolve("javac-args.txt"), Arrays.asList(javacArgs));
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--javac",
+              "--per-checker",
+              "--temp-dir=tmp"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    assertTrue(output, converged);
+    // Each checker stops at its own fixpoint.
+    assertTrue(output, output.contains("FirstChecker: reached a fixpoint after 2 iterations"));
+    assertTrue(output, output.contains("SecondChecker: reached a fixpoint after 4 iterations"));
+    assertTrue(output, output.contains("reached a fixpoint for all 2 checkers"));
+    // Their results are merged in the temporary directory.
+    List<String> first = Files.readAllLines(project.resolve("tmp/A-FirstChecker.ajava"), UTF_8);
+    assertTrue("Wrong result: " + first, first.equals(Arrays.asList("1")));
+    List<String> second = Files.readAllLines(project.resolve("tmp/A-SecondChecker.ajava"), UTF_8);
+    assertTrue("Wrong result: " + second, second.equals(Arrays.asList("3")));
+    List<String> checkerArgs =
+        PerCheckerWpi.argumentsFor(javacArgs, "SecondChecker", project.resolve("out"));
+    assertTrue(
+        "Wrong arguments: " + checkerArgs,
+        checkerArgs.get(1).equals(project.resolve("out").toString())
+            && checkerArgs.get(5).equals("SecondChecker"));
+  }
+
+  @Test
+  public void replaysJavacInProcess() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    Path processorDir = project.resolve("processor");
+    compileProcessor(processorDir, "CountingProcessor", PROCESSOR);
+    Files.createDirectories(project.resolve("src"));
+    Files.write(project.resolve("src/A.java"), "class A {}\n".getBytes(UTF_8));
+    Files.createDirectories(project.resolve("classes"));
+    // The arguments as Maven prints them, with the options of WPI that the driver replaces.
+    String javacArgs =
+        String.join(
+            " ",
+            "-d",
+            project.resolve("classes").toString(),
+            "-processorpath",
+            processorDir.toString(),
+            "-processor",
+            "CountingProcessor",
+            "-Ainfer=jaifs",
+            "-Aajava=/nowhere",
+            "-Aout=" + project.resolve("out"),
+            project.resolve("src/A.java").toString());
+    String captureCommand =
+        "echo '[INFO] Compiling 1 source file'"
+            + " && echo '[DEBUG] Command line options:'"
+            + " && echo '[DEBUG] "
+            + javacArgs
+            + "'";
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--javac",
+              "--capture-command=" + captureCommand,
+              "--temp-dir=tmp",
+              "--out-dir=out"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    assertTrue(output, converged && output.contains("reached a fixpoint after 4 iterations"));
+    assertTrue("A was not compiled", Files.exists(project.resolve("classes/A.class")));
+    List<String> result = Files.readAllLines(project.resolve("tmp/A-Checker.ajava"), UTF_8);
+    assertTrue("Wrong result: " + result, result.equals(Arrays.asList("3")));
+    // The processor was loaded once, and instantiated in each iteration.
+    List<String> instances = Files.readAllLines(project.resolve("instances"), UTF_8);
+    assertTrue("Wrong instances: " + instances, instances.equals(Arrays.asList("4")));
+    // The arguments were captured once, and are read from the file in later runs.
+    List<String> captured = JavacArguments.read(project.resolve("javac-args.txt")).get(0);
+    assertTrue("Wrong arguments: " + captured, String.join(" ", captured).equals(javacArgs));
+  }
+
+  @Test
+  public void keepsEmptyJavacArguments() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    // Gradle does not quote its arguments, so the empty -sourcepath is between two spaces.
+    String captureCommand =
+        "echo '[DEBUG] Compiler arguments: -d classes -sourcepath  -proc:none -J-Xmx1g A.java'";
+    List<List<String>> captured = JavacArguments.capture(project, captureCommand);
+    List<String> expected =
+        Arrays.asList("-d", "classes", "-sourcepath", "", "-proc:none", "-J-Xmx1g", "A.java");
+    assertTrue("Wrong arguments: " + captured, captured.equals(Arrays.asList(expected)));
+    List<List<String>> invocations =
+        Arrays.asList(
+            expected,
+            Arrays.asList("-d", "", "-Afoo=\"a\\b\"", "two\nlines"),
+            Arrays.asList(""));
+    Path file = project.resolve("javac-args.txt");
+    JavacArguments.write(file, invocations);
+    List<List<String>> read = JavacArguments.read(file);
+    assertTrue("Wrong arguments: " + read, read.equals(invocations));
+  }
+
+  @Test
+  public void runsProcessorsThatUseJavacInternals() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    Path processorDir = project.resolve("processor");
+    compileProcessor(processorDir, "InternalsProcessor", INTERNALS_PROCESSOR);
+    Files.createDirectories(project.resolve("src"));
+    Files.write(project.resolve("src/A.java"), "class A {}\n".getBytes(UTF_8));
+    Files.createDirectories(project.resolve("classes"));
+    // The arguments as Gradle prints them. The JVM of the tests has the first export, as the JVM
+    // of the wpi task does, but not the second one.
+    String javacArgs =
+        String.join(
+            " ",
+            "-d",
+            project.resolve("classes").toString(),
+            "-processorpath",
+            processorDir.toString(),
+            "-processor",
+            "InternalsProcessor",
+            "-Aout=" + project.resolve("out"),
+            "-J--add-exports=jdk.compiler/com.sun.tools.javac.processing=ALL-UNNAMED",
+            "-J--add-opens",
+            "-Jjdk.compiler/com.sun.tools.javac.jvm=ALL-UNNAMED",
+            "-J-Xmx1g",
+            project.resolve("src/A.java").toString());
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--javac",
+              "--capture-command=echo '[DEBUG] Compiler arguments: " + javacArgs + "'",
+              "--temp-dir=tmp",
+              "--out-dir=out"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    assertTrue(output, converged && output.contains("reached a fixpoint"));
+    assertTrue(
+        output,
+        output.contains("--add-opens=jdk.compiler/com.sun.tools.javac.jvm=ALL-UNNAMED")
+            && !output.contains("javac.processing=ALL-UNNAMED")
+            && !output.contains("-Xmx1g"));
+    List<String> result = Files.readAllLines(project.resolve("tmp/A-Checker.ajava"), UTF_8);
+    assertTrue("Wrong result: " + result, result.equals(Arrays.asList("1")));
+  }
+
+  @Test
+  public void reachesFixpoint() throws Exception {
+    Path project = tempFolder.getRoot().toPath();
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--build=" + BUILD,
+              "--clean=",
+              "--temp-dir=tmp",
+              "--out-dir=out",
+              "--debug"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    List<String> expected =
+        Arrays.asList(
+            "iteration 1: 2 files, 2 added, 0 modified, 0 removed",
+            "  added: pkg/Bar-Checker.ajava",
+            "iteration 2: 2 files, 0 added, 1 modified, 0 removed",
+            "  modified: pkg/Foo-Checker.ajava",
+            "iteration 3: 2 files, 0 added, 1 modified, 0 removed",
+            "iteration 4: 2 files, 0 added, 0 modified, 0 removed",
+            "reached a fixpoint after 4 iterations");
+    int from = 0;
+    for (String line : expected) {
+      int index = output.indexOf(line, from);
+      assertTrue("Expected \"" + line + "\" in order in:\n" + output, index != -1);
+      from = index + line.length();
+    }
+    assertTrue(output, converged);
+    List<String> result = Files.readAllLines(project.resolve("tmp/pkg/Foo-Checker.ajava"), UTF_8);
+    assertTrue("Wrong result: " + result, result.equals(Arrays.asList("3")));
+  }
+
+  @Test
+  public void stopsAfterMaxIterations() {
+    Path project = tempFolder.getRoot().toPath();
+    WpiOptions options =
+        WpiOptions.parse(
+            new String[] {
+              "--project-dir=" + project,
+              "--build=" + BUILD,
+              "--clean=",
+              "--temp-dir=tmp",
+              "--out-dir=out",
+              "--max-iterations=2"
+            });
+    boolean converged = new WpiDriver(options, new PrintStream(outputStreamCaptor)).run();
+    String output = outputStreamCaptor.toString();
+    assertTrue(output, !converged);
+    assertTrue(output, output.contains("did not reach a fixpoint after 2 iterations"));
+  }
+}
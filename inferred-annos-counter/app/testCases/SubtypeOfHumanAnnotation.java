@@ -0,0 +1,5 @@
+public class SubtypeOfHumanAnnotation {
+  @Nullable String x;
+  @NonNull String y;
+  @MonotonicNonNull String z;
+}
@@ -0,0 +1,3 @@
+public class UnderscoreInAnnotationName {
+	public @UB_TOP int sample;
+}
\ No newline at end of file
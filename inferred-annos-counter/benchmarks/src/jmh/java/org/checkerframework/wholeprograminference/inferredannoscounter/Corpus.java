@@ -0,0 +1,144 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.javaparser.ast.CompilationUnit;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One of the corpora in inputExamples, with the intermediate results of each phase of the counter
+ * computed ahead of time, so that each benchmark measures only its own phase. The corpora are
+ * found under the directory given by the "iac.root" system property, which the build sets to the
+ * root of the Gradle project.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+  /** The name of the corpus, i.e., of its directory in inputExamples. */
+  @Param({"cache2k-api", "RxNorm-explorer", "icalavailable", "require-javadoc"})
+  public String name;
+
+  /** The type qualifiers to count, as read from app/type-qualifiers.txt. */
+  List<String> checkerPackage;
+
+  /** The subtyping relation between the type qualifiers in app/type-qualifiers.txt. */
+  QualifierHierarchy hierarchy;
+
+  /** The human-written Java files of the corpus, in alphabetical order. */
+  List<String> javaFiles;
+
+  /** For each of {@link #javaFiles}, the paths to its .ajava files. */
+  List<List<String>> ajavaFilesOfEachFile;
+
+  /** Every Java and .ajava file of the corpus. */
+  List<String> allFiles;
+
+  /** The parsed form of each of {@link #allFiles}. */
+  List<CompilationUnit> compilationUnits;
+
+  /** The contents of each of {@link #allFiles}, without comments. */
+  List<String> contents;
+
+  /** Each of {@link #contents} after {@link InferredAnnosCounter#annoMultiToSingle}. */
+  List<List<String>> singleLineAnnos;
+
+  /** The parsed human-written files. */
+  List<ParsedFile> parsedJavaFiles;
+
+  /**
+   * The pairs of files that the diff engine diffs: element 2i is the lines of a human-written file
+   * and element 2i+1 is the lines of one of its .ajava files. The lines of the human-written file
+   * are prepared in the same way as those of the .ajava files, which only differs from what the
+   * diff engine does for lines with annotations that have arguments.
+   */
+  List<InternedLines> diffPairs;
+
+  /** Reads and prepares the files of the corpus. */
+  @Setup(Level.Trial)
+  public void setUp() {
+    Path root = Paths.get(System.getProperty("iac.root", ".."));
+    checkerPackage =
+        InferredAnnosCounter.readTypeQualifiers(
+            root.resolve("app").resolve("type-qualifiers.txt").toString());
+    hierarchy =
+        QualifierHierarchy.read(root.resolve("app").resolve("type-qualifiers.txt").toString());
+    Path corpus = root.resolve("inputExamples").resolve(name);
+    Map<String, List<String>> ajavaFilesByClass = new HashMap<>();
+    List<String> ajavaFiles = findFiles(corpus.resolve("generated"), ".ajava");
+    for (String ajavaFile : ajavaFiles) {
+      String fileName = Paths.get(ajavaFile).getFileName().toString();
+      int indexOfDash = fileName.indexOf('-');
+      if (indexOfDash != -1) {
+        String className = fileName.substring(0, indexOfDash);
+        ajavaFilesByClass.computeIfAbsent(className, k -> new ArrayList<>()).add(ajavaFile);
+      }
+    }
+    javaFiles = findFiles(corpus.resolve("human-written"), ".java");
+    ajavaFilesOfEachFile = new ArrayList<>();
+    for (String javaFile : javaFiles) {
+      String fileName = Paths.get(javaFile).getFileName().toString();
+      String className = fileName.substring(0, fileName.length() - ".java".length());
+      ajavaFilesOfEachFile.add(ajavaFilesByClass.getOrDefault(className, new ArrayList<>()));
+    }
+
+    allFiles = new ArrayList<>(javaFiles);
+    allFiles.addAll(ajavaFiles);
+    compilationUnits = new ArrayList<>();
+    contents = new ArrayList<>();
+    singleLineAnnos = new ArrayList<>();
+    for (String file : allFiles) {
+      CompilationUnit cu = InferredAnnosCounter.parseJavaFile(file);
+      compilationUnits.add(cu);
+      contents.add(cu.toString());
+      singleLineAnnos.add(InferredAnnosCounter.annoMultiToSingle(cu.toString()));
+    }
+
+    parsedJavaFiles = new ArrayList<>();
+    diffPairs = new ArrayList<>();
+    for (int i = 0; i < javaFiles.size(); i++) {
+      ParsedFile original = ParsedFile.parse(javaFiles.get(i));
+      parsedJavaFiles.add(original);
+      InternedLines.SymbolTable symbolTable = new InternedLines.SymbolTable();
+      InternedLines originalLines =
+          symbolTable.intern(InferredAnnosCounter.linesToDiff(original.getNormalizedLines()));
+      for (String ajavaFile : ajavaFilesOfEachFile.get(i)) {
+        diffPairs.add(originalLines);
+        List<String> ajavaLines = ParsedFile.parse(ajavaFile).getNormalizedLines();
+        diffPairs.add(symbolTable.intern(InferredAnnosCounter.linesToDiff(ajavaLines)));
+      }
+    }
+  }
+
+  /**
+   * Returns the files in a directory tree whose names end with the given extension, in
+   * alphabetical order.
+   *
+   * @param root the root of the directory tree
+   * @param extension the file extension, such as ".java"
+   * @return the paths to the files
+   */
+  private static List<String> findFiles(Path root, String extension) {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(extension))
+          .filter(Files::isRegularFile)
+          .sorted()
+          .map(Path::toString)
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read directory: " + root + ". Check that it exists?");
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the distribution of the time it takes to run the whole counter on one human-written
+ * file and its .ajava files. Each operation processes the next file of the corpus, so the
+ * percentiles that JMH reports are over all of the files, and show how much the largest files
+ * dominate a batch run.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileLatencyBenchmark {
+
+  /** The position in the corpus of the thread that runs the benchmark. */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    /** The engine that matches the annotations. */
+    @Param({"ast", "diff"})
+    public String engine;
+
+    /** The options with which the counter is run. */
+    CounterOptions options;
+
+    /** The index in the corpus of the next file to process. */
+    int next = 0;
+
+    /** Creates the options for the engine. */
+    @Setup(Level.Trial)
+    public void setUp() {
+      options = CounterOptions.parse(new String[] {"--no-cache", "--engine=" + engine, "unused"});
+    }
+  }
+
+  /**
+   * Runs the counter on the next file of the corpus.
+   *
+   * @param corpus the corpus
+   * @param cursor the position in the corpus
+   * @return the results for the file
+   */
+  @Benchmark
+  public AnnotationCounts countNextFile(Corpus corpus, Cursor cursor) {
+    int i = cursor.next;
+    cursor.next = (i + 1) % corpus.javaFiles.size();
+    return InferredAnnosCounter.countFile(
+        corpus.javaFiles.get(i),
+        corpus.ajavaFilesOfEachFile.get(i),
+        corpus.checkerPackage,
+        cursor.options);
+  }
+}
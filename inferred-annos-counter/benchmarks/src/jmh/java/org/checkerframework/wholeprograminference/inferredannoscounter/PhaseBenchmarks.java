@@ -0,0 +1,150 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import com.github.javaparser.ast.CompilationUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of each phase of the inferred annos counter on a whole corpus: one
+ * operation processes every file of the corpus. Each phase starts from the output of the previous
+ * one, which {@link Corpus} computes ahead of time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmarks {
+
+  /**
+   * Parses each file and prints it without comments, which is how the counter strips comments.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void stripComments(Corpus corpus, Blackhole bh) {
+    for (String file : corpus.allFiles) {
+      bh.consume(InferredAnnosCounter.parseJavaFile(file).toString());
+    }
+  }
+
+  /**
+   * Joins the multi-line annotations of each file.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void annoMultiToSingle(Corpus corpus, Blackhole bh) {
+    for (String contents : corpus.contents) {
+      bh.consume(InferredAnnosCounter.annoMultiToSingle(contents));
+    }
+  }
+
+  /**
+   * Puts each annotation of each file on a line of its own.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void eachAnnotationInOneSingleLine(Corpus corpus, Blackhole bh) {
+    for (List<String> lines : corpus.singleLineAnnos) {
+      bh.consume(InferredAnnosCounter.eachAnnotationInOneSingleLine(lines));
+    }
+  }
+
+  /**
+   * Finds the annotations to ignore in each file, i.e., those within the scope of a
+   * SuppressWarnings annotation.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void ignoreList(Corpus corpus, Blackhole bh) {
+    for (CompilationUnit cu : corpus.compilationUnits) {
+      bh.consume(SuppressedAnnotations.count(cu, corpus.checkerPackage));
+    }
+  }
+
+  /**
+   * Diffs each human-written file with each of its .ajava files, with the default algorithm.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void diff(Corpus corpus, Blackhole bh) {
+    DiffAlgorithm algorithm = DiffAlgorithm.forName(CounterOptions.DiffAlgorithmName.AUTO);
+    for (int i = 0; i < corpus.diffPairs.size(); i += 2) {
+      bh.consume(algorithm.diff(corpus.diffPairs.get(i), corpus.diffPairs.get(i + 1)));
+    }
+  }
+
+  /**
+   * Matches the annotations of each parsed human-written file with those of its .ajava files by
+   * their position in the AST, and tallies the results. This includes parsing the .ajava files.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void tallyAst(Corpus corpus, Blackhole bh) {
+    for (int i = 0; i < corpus.parsedJavaFiles.size(); i++) {
+      bh.consume(
+          AstAnnotationMatcher.countFile(
+              corpus.parsedJavaFiles.get(i),
+              corpus.ajavaFilesOfEachFile.get(i),
+              corpus.checkerPackage));
+    }
+  }
+
+  /**
+   * Like {@link #tallyAst}, but also matches each annotation with the subtypes of it that WPI
+   * inferred, as {@code --match=subtype} does.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void tallyAstSubtype(Corpus corpus, Blackhole bh) {
+    for (int i = 0; i < corpus.parsedJavaFiles.size(); i++) {
+      bh.consume(
+          AstAnnotationMatcher.countFile(
+              corpus.parsedJavaFiles.get(i),
+              corpus.ajavaFilesOfEachFile.get(i),
+              corpus.checkerPackage,
+              corpus.hierarchy));
+    }
+  }
+
+  /**
+   * Runs the whole counter on each human-written file and its .ajava files, with the default
+   * options, as batch mode does without the cache.
+   *
+   * @param corpus the corpus
+   * @param bh consumes the results
+   */
+  @Benchmark
+  public void countFile(Corpus corpus, Blackhole bh) {
+    CounterOptions options = CounterOptions.parse(new String[] {"--no-cache", "unused"});
+    for (int i = 0; i < corpus.javaFiles.size(); i++) {
+      bh.consume(
+          InferredAnnosCounter.countFile(
+              corpus.javaFiles.get(i),
+              corpus.ajavaFilesOfEachFile.get(i),
+              corpus.checkerPackage,
+              options));
+    }
+  }
+}
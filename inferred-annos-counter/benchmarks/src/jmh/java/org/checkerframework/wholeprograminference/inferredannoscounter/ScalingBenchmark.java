@@ -0,0 +1,122 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the time to run the counter on one file grows with the size of the file, on files
+ * generated by {@link SyntheticCorpus}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark {
+
+  /** The approximate number of lines of the file. */
+  @Param({"1000", "10000"})
+  public int lines;
+
+  /** The engine that matches the annotations. */
+  @Param({"ast", "diff"})
+  public String engine;
+
+  /** The directory of the generated corpus. */
+  private Path dir;
+
+  /** The generated Java file. */
+  private String javaFile;
+
+  /** Its .ajava files. */
+  private List<String> ajavaFiles;
+
+  /** The type qualifiers to count. */
+  private List<String> checkerPackage;
+
+  /** The options with which the counter is run. */
+  private CounterOptions options;
+
+  /**
+   * Generates a corpus with a single file of the given size.
+   *
+   * @throws IOException if the corpus cannot be generated
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Path root = Paths.get(System.getProperty("iac.root", ".."));
+    checkerPackage =
+        InferredAnnosCounter.readTypeQualifiers(
+            root.resolve("app").resolve("type-qualifiers.txt").toString());
+    options = CounterOptions.parse(new String[] {"--no-cache", "--engine=" + engine, "unused"});
+    dir = Files.createTempDirectory("iac-scaling");
+    SyntheticCorpus generator = new SyntheticCorpus();
+    generator.files = 1;
+    generator.lines = lines;
+    generator.generate(dir);
+    javaFile = find(dir.resolve("human-written")).get(0);
+    ajavaFiles = find(dir.resolve("generated"));
+  }
+
+  /**
+   * Deletes the generated corpus.
+   *
+   * @throws IOException if the corpus cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(dir)) {
+      paths = walk.sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      Files.delete(path);
+    }
+  }
+
+  /**
+   * Runs the counter on the file.
+   *
+   * @return the results for the file
+   */
+  @Benchmark
+  public AnnotationCounts countFile() {
+    return InferredAnnosCounter.countFile(javaFile, ajavaFiles, checkerPackage, options);
+  }
+
+  /**
+   * Returns the regular files in a directory tree, in alphabetical order.
+   *
+   * @param root the root of the directory tree
+   * @return the paths to the files
+   * @throws IOException if the tree cannot be read
+   */
+  private static List<String> find(Path root) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      return walk.filter(Files::isRegularFile)
+          .map(Path::toString)
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package org.checkerframework.wholeprograminference.inferredannoscounter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates a synthetic corpus for the inferred annos counter, with the same layout as the corpora
+ * in inputExamples: a "human-written" tree of Java files and a "generated" tree with an .ajava file
+ * per file and checker. The size of the files, the density of the annotations, and the fraction
+ * of them that WPI "infers" are configurable, so that the counter can be run on files and trees
+ * much larger than those in inputExamples.
+ *
+ * <p>Each file is a class with fields and methods. Each field, method return type, and parameter
+ * is a site that the human annotates with some probability, with an annotation of the Nullness
+ * Checker or of the Index Checker. Some methods have a multi-line {@literal @}EnsuresNonNull
+ * annotation, some are within the scope of a {@literal @}SuppressWarnings annotation, and every
+ * method body has a string literal that contains annotations. The .ajava file of each checker has
+ * the annotations of that checker that it inferred, with their fully-qualified names, as WPI
+ * writes them, and a few annotations that the human did not write. As with WPI, the annotations
+ * within the scope of a {@literal @}SuppressWarnings annotation are in every .ajava file.
+ *
+ * <p>The generator also writes "expected.txt", with the totals that the counter should print for
+ * the corpus, in alphabetical order of the annotations.
+ *
+ * <p>Usage: {@code SyntheticCorpus [--files=N] [--lines=N] [--density=D] [--recall=R]
+ * [--suppress=S] [--seed=N] outputDirectory}
+ */
+public final class SyntheticCorpus {
+
+  /** The number of Java files to generate. */
+  int files = 100;
+
+  /** The approximate number of lines of each Java file. */
+  int lines = 1000;
+
+  /** The probability that the human annotates a site. */
+  double density = 0.3;
+
+  /** The probability that WPI infers an annotation that the human wrote. */
+  double recall = 0.6;
+
+  /** The probability that a method is within the scope of a SuppressWarnings annotation. */
+  double suppress = 0.05;
+
+  /** The seed of the random numbers, so that the same options always give the same corpus. */
+  long seed = 0;
+
+  /** The checkers that produce the .ajava files. */
+  private static final String[] CHECKERS = {
+    "org.checkerframework.checker.nullness.NullnessChecker",
+    "org.checkerframework.checker.index.IndexChecker"
+  };
+
+  /** The index in {@link #CHECKERS} of the Nullness Checker. */
+  private static final int NULLNESS = 0;
+
+  /** The index in {@link #CHECKERS} of the Index Checker. */
+  private static final int INDEX = 1;
+
+  /** The package of the qualifiers of each checker. */
+  private static final String[] QUAL_PACKAGES = {
+    "org.checkerframework.checker.nullness.qual.", "org.checkerframework.checker.index.qual."
+  };
+
+  /** The annotations that the human writes on sites of reference type, with their arguments. */
+  private static final String[] NULLNESS_ANNOTATIONS = {"Nullable", "NonNull"};
+
+  /** The annotations that the human writes on sites of type int, with their arguments. */
+  private static final String[] INDEX_ANNOTATIONS = {"NonNegative", "LTLengthOf(\"this.values\")"};
+
+  /** The number of methods per field. */
+  private static final int METHODS_PER_FIELD = 4;
+
+  /** The random numbers. */
+  private Random random;
+
+  /** The number of annotations of each kind written by the human. */
+  private final Map<String, Integer> written = new TreeMap<>();
+
+  /** The number of annotations of each kind within the scope of a SuppressWarnings annotation. */
+  private final Map<String, Integer> ignored = new TreeMap<>();
+
+  /** The number of annotations of each kind in at least one .ajava file. */
+  private final Map<String, Integer> inferred = new TreeMap<>();
+
+  /** The human-written file being generated. */
+  private StringBuilder human;
+
+  /** The .ajava file of each checker for the file being generated. */
+  private StringBuilder[] ajava;
+
+  /**
+   * Generates a corpus.
+   *
+   * @param args the command-line arguments; see the class documentation
+   */
+  public static void main(String[] args) {
+    SyntheticCorpus generator = new SyntheticCorpus();
+    Path out = null;
+    for (String arg : args) {
+      int indexOfEquals = arg.indexOf('=');
+      if (!arg.startsWith("--") || indexOfEquals == -1) {
+        out = Paths.get(arg);
+        continue;
+      }
+      String value = arg.substring(indexOfEquals + 1);
+      switch (arg.substring(0, indexOfEquals)) {
+        case "--files":
+          generator.files = Integer.parseInt(value);
+          break;
+        case "--lines":
+          generator.lines = Integer.parseInt(value);
+          break;
+        case "--density":
+          generator.density = Double.parseDouble(value);
+          break;
+        case "--recall":
+          generator.recall = Double.parseDouble(value);
+          break;
+        case "--suppress":
+          generator.suppress = Double.parseDouble(value);
+          break;
+        case "--seed":
+          generator.seed = Long.parseLong(value);
+          break;
+        default:
+          throw new RuntimeException("Unknown option: " + arg);
+      }
+    }
+    if (out == null) {
+      throw new RuntimeException("Provide the directory in which to generate the corpus");
+    }
+    generator.generate(out);
+  }
+
+  /**
+   * Generates the corpus in a directory, which gets the subdirectories "human-written" and
+   * "generated" and the file "expected.txt".
+   *
+   * @param out the directory
+   */
+  void generate(Path out) {
+    random = new Random(seed);
+    written.clear();
+    ignored.clear();
+    inferred.clear();
+    try {
+      for (int i = 0; i < files; i++) {
+        // At most 100 files per package, as in a real project.
+        String pkg = "synthetic.p" + (i / 100);
+        String className = "Synthetic" + i;
+        generateClass(pkg, className);
+        Path dir = Paths.get("synthetic", "p" + (i / 100));
+        Path humanDir = out.resolve("human-written").resolve(dir);
+        Path ajavaDir = out.resolve("generated").resolve(dir);
+        Files.createDirectories(humanDir);
+        Files.createDirectories(ajavaDir);
+        Files.write(humanDir.resolve(className + ".java"), human.toString().getBytes(UTF_8));
+        for (int c = 0; c < CHECKERS.length; c++) {
+          Path ajavaFile = ajavaDir.resolve(className + "-" + CHECKERS[c] + ".ajava");
+          Files.write(ajavaFile, ajava[c].toString().getBytes(UTF_8));
+        }
+      }
+      Files.write(out.resolve("expected.txt"), expectedTotals());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write the corpus to " + out, e);
+    }
+  }
+
+  /**
+   * Returns the totals that the inferred annos counter should print for the corpus, in the format
+   * "@Anno got correct/total".
+   *
+   * @return the lines of the totals
+   */
+  List<String> expectedTotals() {
+    List<String> result = new ArrayList<>();
+    for (Map.Entry<String, Integer> e : written.entrySet()) {
+      String anno = e.getKey();
+      int total = e.getValue() - ignored.getOrDefault(anno, 0);
+      if (total != 0) {
+        result.add(anno + " got " + inferred.getOrDefault(anno, 0) + "/" + total);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Generates the human-written file and the .ajava files of one class.
+   *
+   * @param pkg the package of the class
+   * @param className the name of the class
+   */
+  private void generateClass(String pkg, String className) {
+    human = new StringBuilder();
+    ajava = new StringBuilder[CHECKERS.length];
+    for (int c = 0; c < CHECKERS.length; c++) {
+      ajava[c] = new StringBuilder();
+    }
+    appendAll("package " + pkg + ";\n\n");
+    appendAll("import org.checkerframework.checker.index.qual.*;\n");
+    appendAll("import org.checkerframework.checker.nullness.qual.*;\n\n");
+    appendAll("/** A synthetic class. */\n");
+    appendAll("public class " + className + " {\n\n");
+    appendAll("  private int[] values = new int[10];\n\n");
+    // Each method has about 10 lines, and the body of each method takes the rest.
+    int methods = Math.max(1, lines / 12);
+    int bodyLines = Math.max(1, lines / methods - 8);
+    for (int m = 0; m < methods; m++) {
+      if (m % METHODS_PER_FIELD == 0) {
+        appendAll("  private ");
+        site(NULLNESS, false);
+        appendAll("String field" + m + ";\n\n");
+      }
+      generateMethod(m, bodyLines);
+    }
+    appendAll("}\n");
+  }
+
+  /**
+   * Generates a method.
+   *
+   * @param m the number of the method
+   * @param bodyLines the number of lines in the body of the method
+   */
+  private void generateMethod(int m, int bodyLines) {
+    boolean suppressed = random.nextDouble() < suppress;
+    appendAll("  /** Method " + m + ". */\n");
+    if (suppressed) {
+      appendAll("  @SuppressWarnings(\"nullness\")\n");
+    }
+    if (random.nextDouble() < density) {
+      // A declaration annotation that Google Java Format would split across lines.
+      String anno = "EnsuresNonNull";
+      String arguments = "({\n      \"this.field0\",\n      \"this.values\"\n  })";
+      String oneLine = "({\"this.field0\", \"this.values\"})";
+      annotation(NULLNESS, anno, arguments, oneLine, suppressed);
+      appendAll("\n");
+    }
+    appendAll("  public ");
+    site(NULLNESS, suppressed);
+    appendAll("String method" + m + "(");
+    site(NULLNESS, suppressed);
+    appendAll("String name, ");
+    site(INDEX, suppressed);
+    appendAll("int index) {\n");
+    appendAll("    String text = \"@Nullable and @NonNegative are not annotations here\";\n");
+    appendAll("    int total = index;\n");
+    for (int i = 0; i < bodyLines; i++) {
+      appendAll("    total += " + i + ";\n");
+    }
+    appendAll("    return text + name + total;\n");
+    appendAll("  }\n\n");
+  }
+
+  /**
+   * Generates the annotation of a site, if the human writes one. If not, the .ajava file of the
+   * checker sometimes has an annotation there anyway.
+   *
+   * @param checker the index of the checker whose annotations go on the site
+   * @param suppressed true if the site is within the scope of a SuppressWarnings annotation
+   */
+  private void site(int checker, boolean suppressed) {
+    String[] annotations = checker == NULLNESS ? NULLNESS_ANNOTATIONS : INDEX_ANNOTATIONS;
+    String anno = annotations[random.nextInt(annotations.length)];
+    if (random.nextDouble() < density) {
+      int indexOfParen = anno.indexOf('(');
+      String arguments = indexOfParen == -1 ? "" : anno.substring(indexOfParen);
+      String name = indexOfParen == -1 ? anno : anno.substring(0, indexOfParen);
+      annotation(checker, name, arguments, arguments, suppressed);
+      appendAll(" ");
+    } else if (random.nextDouble() < density) {
+      // An annotation that WPI inferred but that the human did not write.
+      ajava[checker].append("@" + QUAL_PACKAGES[checker] + anno + " ");
+    }
+  }
+
+  /**
+   * Generates an annotation written by the human, and adds it to the .ajava files that have it.
+   *
+   * @param checker the index of the checker of the annotation
+   * @param name the simple name of the annotation
+   * @param humanArguments the arguments of the annotation in the human-written file, if any
+   * @param ajavaArguments the arguments of the annotation in the .ajava files, if any
+   * @param suppressed true if the annotation is within the scope of a SuppressWarnings annotation
+   */
+  private void annotation(
+      int checker, String name, String humanArguments, String ajavaArguments, boolean suppressed) {
+    String key = "@" + name;
+    written.put(key, written.getOrDefault(key, 0) + 1);
+    if (suppressed) {
+      ignored.put(key, ignored.getOrDefault(key, 0) + 1);
+    }
+    human.append("@" + name + humanArguments);
+    String ajavaAnnotation = "@" + QUAL_PACKAGES[checker] + name + ajavaArguments;
+    if (suppressed) {
+      // WPI leaves the annotations within the scope of a SuppressWarnings annotation alone, so
+      // they are in the .ajava files of all checkers.
+      inferred.put(key, inferred.getOrDefault(key, 0) + 1);
+      for (StringBuilder file : ajava) {
+        file.append(ajavaAnnotation);
+      }
+    } else if (random.nextDouble() < recall) {
+      inferred.put(key, inferred.getOrDefault(key, 0) + 1);
+      ajava[checker].append(ajavaAnnotation);
+    }
+  }
+
+  /**
+   * Appends the same text to the human-written file and to every .ajava file.
+   *
+   * @param text the text
+   */
+  private void appendAll(String text) {
+    human.append(text);
+    for (StringBuilder file : ajava) {
+      file.append(text);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+# A client for the server mode of the inferred annos counter (see CounterServer.java), so that
+# scripts that run the counter many times only start one JVM.
+#
+# If the environment variable IAC_SOCKET is set, the client talks to the server listening on that
+# Unix domain socket, and starts one in the background if there is none yet; the server keeps
+# running for later clients until it is sent a shutdown request. Otherwise, the client starts a
+# server of its own that reads requests from its standard input and that stops when the client
+# exits.
+#
+# As a script, it runs one request and prints the results, e.g.:
+#   python3 iac_client.py --batch /path/to/human-written /path/to/generated
+#   python3 iac_client.py --shutdown
+import os
+import socket
+import subprocess
+import sys
+import time
+
+ROOT_IAC_DIR = os.path.dirname(os.path.abspath(__file__))
+
+# The last line of a successful response, and the start of the line of a failed one.
+DONE = "#done"
+ERROR = "#error "
+
+# The request that stops the server.
+SHUTDOWN = "--shutdown"
+
+# How long to wait for a server started in the background to create its socket, in seconds.
+STARTUP_TIMEOUT = 120
+
+
+class IacError(Exception):
+    pass
+
+
+class IacClient:
+    def __init__(self, socket_path=os.environ.get("IAC_SOCKET"), start=True):
+        self.process = None
+        self.sock = None
+        if socket_path:
+            self.sock = self._connect(socket_path, start)
+            self.requests, self.responses = self.sock.makefile("w"), self.sock.makefile("r")
+        else:
+            self.process = subprocess.Popen(
+                ["./gradlew", "-q", "run", "--args=--server"],
+                cwd=ROOT_IAC_DIR,
+                stdin=subprocess.PIPE,
+                stdout=subprocess.PIPE,
+                text=True,
+            )
+            self.requests, self.responses = self.process.stdin, self.process.stdout
+
+    # Connects to the server on the socket. If there is none, starts one if start is true, and
+    # fails otherwise.
+    def _connect(self, socket_path, start):
+        deadline = None
+        while True:
+            sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+            try:
+                sock.connect(socket_path)
+                return sock
+            except (FileNotFoundError, ConnectionRefusedError):
+                sock.close()
+                if not start:
+                    raise IacError("No server is listening on " + socket_path)
+            if deadline is None:
+                subprocess.Popen(
+                    ["./gradlew", "-q", "run", "--args=--server=" + os.path.abspath(socket_path)],
+                    cwd=ROOT_IAC_DIR,
+                    stdin=subprocess.DEVNULL,
+                    start_new_session=True,
+                )
+                deadline = time.time() + STARTUP_TIMEOUT
+            elif time.time() > deadline:
+                raise IacError("The server did not start listening on " + socket_path)
+            time.sleep(0.5)
+
+    # Runs the counter with the given command-line arguments, and returns the lines that it
+    # printed. The server runs in another directory, so the paths are made absolute.
+    def run(self, args):
+        args = [a if a.startswith("--") else os.path.abspath(a) for a in args]
+        self.requests.write("\t".join(args) + "\n")
+        self.requests.flush()
+        lines = []
+        for line in self.responses:
+            line = line.rstrip("\r\n")
+            if line == DONE:
+                return lines
+            if line.startswith(ERROR):
+                raise IacError(line[len(ERROR):])
+            lines.append(line)
+        raise IacError("The server stopped before answering")
+
+    def shutdown(self):
+        self.requests.write(SHUTDOWN + "\n")
+        self.requests.flush()
+        self.responses.readline()
+
+    def close(self):
+        self.requests.close()
+        self.responses.close()
+        if self.sock is not None:
+            self.sock.close()
+        if self.process is not None:
+            self.process.wait()
+
+
+if __name__ == "__main__":
+    shutdown = sys.argv[1:] == [SHUTDOWN]
+    try:
+        client = IacClient(start=not shutdown)
+        try:
+            if shutdown:
+                client.shutdown()
+            else:
+                for line in client.run(sys.argv[1:]):
+                    print(line)
+        finally:
+            client.close()
+    except IacError as e:
+        print(e, file=sys.stderr)
+        sys.exit(1)
@@ -1,12 +1,18 @@
 #!/bin/bash
 
-# This script invokes the InferredAnnosCounter repeatedly on each java file
+# This script invokes the InferredAnnosCounter in batch mode on each java file
 # and its corresponding ajava files in the given pair of similarly-structured
-# directories.
+# directories. All of the files are processed in a single JVM, and the combined
+# results for the whole source tree are printed at the end.
 
 # inputs:
 # $1: the absolute path to the root source directory of the Java files
 # $2: the absolute path to the root source directory of the generated ajava files
+#
+# If the environment variable IAC_SOCKET is set, the counter runs as a server
+# listening on that Unix domain socket, which is started by the first run and
+# reused by later ones, so that they do not pay for starting a JVM. Stop it
+# with: python3 iac_client.py --shutdown
 
 ROOT_IAC_DIR=$( cd -- "$( dirname -- "${BASH_SOURCE[0]}" )" &> /dev/null && pwd )
 
@@ -19,22 +25,15 @@ popd () {
     command popd "$@" > /dev/null
 }
 
-# this runs the IAC, passing a single java file and then the list of ajava files as the arguments
+# this runs the IAC, passing the arguments through to it
 run_iac () {
     pushd "${ROOT_IAC_DIR}" || exit
     ./gradlew -q run --args="$*"
     popd || exit
 }
 
-JAVA_FILES=$(find "${1}" -name "*.java")
-
-for file in ${JAVA_FILES}; do
-    echo "${file}:"
-    filenodirname="${file##*/}"
-    filebasename="${filenodirname%.*}"
-    AJAVA_FILES=$(find "${2}" -name "${filebasename}-*.ajava")
-    AJAVA_SPACE=$(echo "${AJAVA_FILES}" | tr "\n" " ")
-    run_iac "${file}" "${AJAVA_SPACE}"
-done
-
-# TODO: combine the outputs
+if [ -n "${IAC_SOCKET}" ]; then
+    python3 "${ROOT_IAC_DIR}/iac_client.py" --batch "${1}" "${2}"
+else
+    run_iac --batch "${1}" "${2}"
+fi
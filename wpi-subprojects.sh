@@ -10,6 +10,21 @@
 # 3. Set -Ajava=${env.WPITEMPDIR} in the pom.xml.
 # 4. Run this script using the `source` command.
 
+# WPI runs on several subprojects at the same time, in the background, so the
+# builds of different subprojects must not interfere with each other. The name
+# of the subproject is passed to wpi.sh as "$3", so that its BUILD_CMD can build
+# only that subproject (e.g., `mvn compile -pl "$3"`), and its CLEAN_CMD can
+# clean only that subproject (e.g., `./gradlew :"$3":clean` or
+# `mvn clean -pl "$3"`); the default CLEAN_CMD cleans the whole project, which
+# deletes the output of the runs on the other subprojects. Note that concurrent
+# builds in the same root project may still wait for each other: Gradle builds
+# in one project share its daemon and take locks on its caches. If they do,
+# set MAX_JOBS to 1. The output of each run is
+# in ${PROJECT_TEMP_ROOT}/logs, and a summary of the runs, with the number of
+# iterations and the time of each one, is printed at the end and saved in
+# ${PROJECT_TEMP_ROOT}/summary.txt. If WPI fails on a subproject, it is skipped
+# on the subprojects that depend on it, which are marked as skipped there.
+
 # Other changes (to this script, the wpi.sh script, the project's 
 # build system, or any combination of the former) may also 
 # be required, to account for project-specific complexity.
@@ -23,12 +38,35 @@ SUBPROJECTS=(
 # Add the subdirectory names here.
 )
 
+# The subprojects that each subproject depends on. WPI only starts on a
+# subproject once it is done on those, so that a subproject is not built while
+# the subprojects that it depends on are. Subprojects that do not depend on each
+# other run in parallel.
+declare -A DEPENDENCIES=()
+# Add the dependencies here, e.g.:
+# DEPENDENCIES[cli]="core util"
+
+# The maximum number of subprojects on which WPI runs at the same time. Set it
+# to 1 to run them one after another.
+MAX_JOBS=$(nproc 2>/dev/null || echo 1)
+
+# The memory, in megabytes, that each run may use. It is the maximum heap size
+# of the JVMs that the run starts (through JAVA_TOOL_OPTIONS), and no more runs
+# happen at the same time than fit in the memory that is available when this
+# script starts. Set it to 0 to not limit the memory.
+# JAVA_TOOL_OPTIONS applies to every JVM that a run starts, e.g., the Gradle
+# wrapper, the Gradle daemon, and javac if it is forked, and each of them may
+# use this much heap, plus memory outside the heap. So a run can use several
+# times JOB_MEMORY_MB, and the number of runs that fit is an overestimate; lower
+# MAX_JOBS if the machine runs out of memory.
+JOB_MEMORY_MB=4096
+
 # No changes needed below this point
 PROJECT_SPACE=$(realpath .)
 PROJECT_NAME=$(basename "${PROJECT_SPACE}")
 PROJECT_TEMP_ROOT="${TOP_LEVEL}"/"${PROJECT_NAME}"
 
-mkdir "${PROJECT_TEMP_ROOT}"
+mkdir -p "${PROJECT_TEMP_ROOT}"/logs
 
 for subProject in "${SUBPROJECTS[@]}"
 do
@@ -39,10 +77,163 @@ do
     fi 
 done 
 
+declare -A WPI_KNOWN=()
 for subProject in "${SUBPROJECTS[@]}"
 do
-    mkdir -p "${PROJECT_TEMP_ROOT}"/"${subProject}"
-    WPITEMPDIR="${PROJECT_TEMP_ROOT}"/"${subProject}"
-    WPIOUTDIR="$PROJECT_SPACE/$subProject/build/"
-    ./$WPI_SCRIPT_NAME $WPITEMPDIR $WPIOUTDIR
+    WPI_KNOWN[$subProject]=1
+done
+for subProject in "${!DEPENDENCIES[@]}"
+do
+    for dependency in ${DEPENDENCIES[$subProject]}
+    do
+        if [[ -z "${WPI_KNOWN[$dependency]}" || -z "${WPI_KNOWN[$subProject]}" ]]
+        then
+            echo "DEPENDENCIES[$subProject] refers to a subproject that is not in SUBPROJECTS.";
+            return
+        fi
+    done
 done
+
+WPI_JOBS=${MAX_JOBS}
+if [[ ${JOB_MEMORY_MB} -gt 0 ]]
+then
+    AVAILABLE_MB=$(awk '/^MemAvailable:/ { print int($2 / 1024) }' /proc/meminfo 2>/dev/null)
+    if [[ -n "${AVAILABLE_MB}" ]]
+    then
+        MEMORY_JOBS=$(( AVAILABLE_MB / JOB_MEMORY_MB ))
+        (( MEMORY_JOBS >= 1 )) || MEMORY_JOBS=1
+        (( MEMORY_JOBS >= WPI_JOBS )) || WPI_JOBS=${MEMORY_JOBS}
+    fi
+fi
+echo "running WPI on ${#SUBPROJECTS[@]} subprojects, at most ${WPI_JOBS} at a time"
+
+# The state of each subproject: pending, running, done, or skipped.
+declare -A WPI_STATE=() WPI_PID=() WPI_START=() WPI_SECONDS=() WPI_STATUS=() WPI_ITERATIONS=()
+
+# The log of the run on a subproject.
+wpi_log() {
+    echo "${PROJECT_TEMP_ROOT}/logs/${1//\//_}.log"
+}
+
+# Succeeds if WPI succeeded on all the subprojects that a subproject depends on.
+wpi_ready() {
+    local dependency
+    for dependency in ${DEPENDENCIES[$1]}
+    do
+        [[ "${WPI_STATE[$dependency]}" == done && "${WPI_STATUS[$dependency]}" == 0 ]] || return 1
+    done
+}
+
+# Skips the pending subprojects that depend on a subproject on which WPI failed
+# or was skipped, since they would be built against its broken or missing
+# output.
+wpi_skip_dependents() {
+    local subProject dependency skipped=1
+    while (( skipped ))
+    do
+        skipped=0
+        for subProject in "${SUBPROJECTS[@]}"
+        do
+            [[ "${WPI_STATE[$subProject]}" == pending ]] || continue
+            for dependency in ${DEPENDENCIES[$subProject]}
+            do
+                if [[ "${WPI_STATE[$dependency]}" == skipped \
+                      || ( "${WPI_STATE[$dependency]}" == done && "${WPI_STATUS[$dependency]}" != 0 ) ]]
+                then
+                    WPI_STATE[$subProject]=skipped
+                    WPI_STATUS[$subProject]=skipped
+                    WPI_ITERATIONS[$subProject]=-
+                    WPI_SECONDS[$subProject]=-
+                    (( WPI_REMAINING-- ))
+                    skipped=1
+                    echo "skipped WPI on ${subProject}, because it depends on ${dependency}"
+                    break
+                fi
+            done
+        done
+    done
+}
+
+# Starts WPI on a subproject in the background.
+wpi_start() {
+    local subProject=$1
+    local WPITEMPDIR="${PROJECT_TEMP_ROOT}"/"${subProject}"
+    local WPIOUTDIR="$PROJECT_SPACE/$subProject/build/"
+    mkdir -p "${WPITEMPDIR}"
+    if [[ ${JOB_MEMORY_MB} -gt 0 ]]
+    then
+        JAVA_TOOL_OPTIONS="${JAVA_TOOL_OPTIONS} -Xmx${JOB_MEMORY_MB}m" \
+            ./$WPI_SCRIPT_NAME "$WPITEMPDIR" "$WPIOUTDIR" "$subProject" > "$(wpi_log "$subProject")" 2>&1 &
+    else
+        ./$WPI_SCRIPT_NAME "$WPITEMPDIR" "$WPIOUTDIR" "$subProject" > "$(wpi_log "$subProject")" 2>&1 &
+    fi
+    WPI_PID[$subProject]=$!
+    WPI_START[$subProject]=$(date +%s)
+    WPI_STATE[$subProject]=running
+    echo "started WPI on ${subProject}"
+}
+
+# Records the outcome of the run on a subproject, which has ended. The number of
+# iterations is that of the last iteration in the log: wpi.sh prints
+# "entering iteration N" in debug mode, and the WPI driver "iteration N: ...".
+wpi_finish() {
+    local subProject=$1
+    wait "${WPI_PID[$subProject]}"
+    WPI_STATUS[$subProject]=$?
+    WPI_SECONDS[$subProject]=$(( $(date +%s) - WPI_START[$subProject] ))
+    WPI_ITERATIONS[$subProject]=$(grep -oE '^(entering )?iteration [0-9]+' "$(wpi_log "$subProject")" \
+        | tail -n 1 | grep -oE '[0-9]+$')
+    WPI_STATE[$subProject]=done
+    echo "finished WPI on ${subProject} (exit status ${WPI_STATUS[$subProject]}," \
+        "${WPI_ITERATIONS[$subProject]:-?} iterations, ${WPI_SECONDS[$subProject]} s)"
+}
+
+for subProject in "${SUBPROJECTS[@]}"
+do
+    WPI_STATE[$subProject]=pending
+done
+WPI_RUNNING=0
+WPI_REMAINING=${#SUBPROJECTS[@]}
+while (( WPI_REMAINING > 0 ))
+do
+    wpi_skip_dependents
+    (( WPI_REMAINING > 0 )) || break
+    for subProject in "${SUBPROJECTS[@]}"
+    do
+        if [[ "${WPI_STATE[$subProject]}" == pending ]] && (( WPI_RUNNING < WPI_JOBS )) \
+               && wpi_ready "$subProject"
+        then
+            wpi_start "$subProject"
+            (( WPI_RUNNING++ ))
+        fi
+    done
+    if (( WPI_RUNNING == 0 ))
+    then
+        echo "The DEPENDENCIES of these subprojects are circular:"
+        for subProject in "${SUBPROJECTS[@]}"
+        do
+            [[ "${WPI_STATE[$subProject]}" == pending ]] && echo "  ${subProject}"
+        done
+        return
+    fi
+    # Wait for a run to end; the ones that ended are those whose process is gone.
+    wait -n 2> /dev/null
+    for subProject in "${SUBPROJECTS[@]}"
+    do
+        if [[ "${WPI_STATE[$subProject]}" == running ]] && ! kill -0 "${WPI_PID[$subProject]}" 2> /dev/null
+        then
+            wpi_finish "$subProject"
+            (( WPI_RUNNING-- ))
+            (( WPI_REMAINING-- ))
+        fi
+    done
+done
+
+{
+    printf "%-40s %8s %12s %10s\n" "subproject" "status" "iterations" "seconds"
+    for subProject in "${SUBPROJECTS[@]}"
+    do
+        printf "%-40s %8s %12s %10s\n" "${subProject}" "${WPI_STATUS[$subProject]}" \
+            "${WPI_ITERATIONS[$subProject]:-?}" "${WPI_SECONDS[$subProject]}"
+    done
+} | tee "${PROJECT_TEMP_ROOT}"/summary.txt
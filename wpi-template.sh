@@ -7,6 +7,12 @@
 
 
 # The compile and clean commands for the project's build system.
+# If you are using the subprojects script, which runs this script on several
+# subprojects at the same time, "$3" is the name of the subproject, so that they
+# can build and clean only that subproject. The clean command must not clean the
+# whole project, or it deletes the output of the runs on the other subprojects:
+#   BUILD_CMD="./gradlew :$3:compileJava"   CLEAN_CMD="./gradlew :$3:clean"
+#   BUILD_CMD="mvn compile -pl $3"          CLEAN_CMD="mvn clean -pl $3"
 BUILD_CMD="./gradlew compileJava"
 CLEAN_CMD="./gradlew clean"
 ${BUILD_CMD} # Compile the program so that WPIOUTDIR is created.
@@ -39,8 +45,31 @@ WPIOUTDIR=~/.gradle/workers/build/whole-program-inference
 # (Note that these files are overwritten if they already exist.)
 DEBUG=1
 
+# The path to the inferred-annos-counter directory of this repository. If it is
+# set, the WPI driver in inferred-annos-counter runs the loop below instead of
+# this script. Rather than diffing and moving the whole output directory in each
+# iteration, the driver compares the digests of the files that WPI wrote and only
+# moves the files that changed; it prints how many files changed in each
+# iteration (and, in debug mode, which ones) instead of saving the diffs.
+WPI_DRIVER=
+# More options for the WPI driver. For example, "--javac" makes it capture the
+# project's javac arguments once and then compile the project in its own JVM in
+# each iteration, instead of running BUILD_CMD and CLEAN_CMD.
+WPI_DRIVER_OPTIONS=
+
 # End of variables. You probably don't need to make changes below this line.
 
+if [[ -n "${WPI_DRIVER}" ]]; then
+    DRIVER_ARGS="--project-dir='$(realpath .)' --build='${BUILD_CMD}' --clean='${CLEAN_CMD}'"
+    DRIVER_ARGS="${DRIVER_ARGS} --temp-dir='$(realpath -m "${WPITEMPDIR}")'"
+    DRIVER_ARGS="${DRIVER_ARGS} --out-dir='$(realpath -m "${WPIOUTDIR}")'"
+    if [[ ${DEBUG} == 1 ]]; then
+	DRIVER_ARGS="${DRIVER_ARGS} --debug"
+    fi
+    DRIVER_ARGS="${DRIVER_ARGS} ${WPI_DRIVER_OPTIONS}"
+    exec "${WPI_DRIVER}"/gradlew -q -p "${WPI_DRIVER}" wpi --args="${DRIVER_ARGS}"
+fi
+
 rm -rf ${WPITEMPDIR}
 mkdir -p ${WPITEMPDIR}
 